@@ -0,0 +1,725 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import components.map.Map;
+import components.map.MapSecondary;
+
+/**
+ * {@code Map} from {@code String} keys represented, like {@code Map4}, as a
+ * hash table of chained buckets, but with every key packed into one shared
+ * byte array (the arena) instead of being kept as a {@code String} object.
+ * Each key takes one byte per character if all its characters are below 256
+ * (Latin-1), and two bytes per character otherwise; each entry is a row of
+ * parallel arrays (arena offset, length, hash code, chain link, value). Keys
+ * are compared against the arena directly, so lookups may use any
+ * {@code CharSequence} (a {@code StringBuilder} being filled by a tokenizer,
+ * for instance) without first building a {@code String}.
+ *
+ * @param <V>
+ *            type of {@code Map} range (associated value) entries
+ * @convention <pre>
+ * [|$this.buckets| is a power of 2]  and
+ * $this.size <= |$this.values| = |$this.offsets| = |$this.lengths| =
+ *   |$this.hashes| = |$this.next|  and
+ * [entries 0 through $this.size - 1, and only those, are linked through
+ *  $this.next into the chains headed by $this.buckets, ending in -1]  and
+ * [every entry i is in chain indexFor($this.hashes[i])]  and
+ * [the key of entry i is encoded in $this.arena starting at $this.offsets[i],
+ *  with (lengths[i] & ~WIDE) characters of 1 byte, or of 2 if
+ *  (lengths[i] & WIDE) /= 0]  and
+ * [$this.hashes[i] is the String hash code of the key of entry i]  and
+ * $this.garbage = $this.arenaEnd - [bytes used by the keys of the entries]
+ * </pre>
+ * @correspondence <pre>
+ * this = {(k, v) where (there exists i: integer (0 <= i < $this.size  and
+ *            k = [key of entry i]  and  v = $this.values[i]))}
+ * </pre>
+ */
+public class ArenaMap4<V> extends MapSecondary<String, V> {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Number of buckets of a new table.
+     */
+    private static final int DEFAULT_BUCKETS = 128;
+
+    /**
+     * Number of bytes of a new arena.
+     */
+    private static final int DEFAULT_ARENA_SIZE = 1024;
+
+    /**
+     * Maximum ratio of entries to buckets.
+     */
+    private static final double MAX_LOAD_FACTOR = 0.75;
+
+    /**
+     * Flag in a stored key length marking two-byte characters.
+     */
+    private static final int WIDE = 1 << 31;
+
+    /**
+     * Index of the first entry of each chain, or -1.
+     */
+    private int[] buckets;
+
+    /**
+     * Index of the next entry of the chain of each entry, or -1.
+     */
+    private int[] next;
+
+    /**
+     * Arena offset of the key of each entry.
+     */
+    private int[] offsets;
+
+    /**
+     * Character count of the key of each entry, with {@code WIDE} set for
+     * two-byte characters.
+     */
+    private int[] lengths;
+
+    /**
+     * Hash code of the key of each entry.
+     */
+    private int[] hashes;
+
+    /**
+     * Value of each entry.
+     */
+    private Object[] values;
+
+    /**
+     * Number of entries.
+     */
+    private int size;
+
+    /**
+     * The encoded keys.
+     */
+    private byte[] arena;
+
+    /**
+     * Number of bytes of the arena in use, including garbage.
+     */
+    private int arenaEnd;
+
+    /**
+     * Number of bytes of the arena left behind by removed keys.
+     */
+    private int garbage;
+
+    /**
+     * Returns the {@code String} hash code of {@code key}: the hash code the
+     * key would have as a {@code String}.
+     *
+     * @param key
+     *            the key
+     * @return the String hash code of key
+     */
+    private static int hashOf(CharSequence key) {
+        if (key instanceof String) {
+            return key.hashCode();
+        }
+        int h = 0;
+        for (int i = 0; i < key.length(); i++) {
+            h = 31 * h + key.charAt(i);
+        }
+        return h;
+    }
+
+    /**
+     * Returns the bucket of a key whose hash code is {@code h}.
+     *
+     * @param h
+     *            the key's hash code
+     * @return the index of the bucket for the key
+     */
+    private int indexFor(int h) {
+        return (h ^ (h >>> 16)) & (this.buckets.length - 1);
+    }
+
+    /**
+     * Returns the number of arena bytes the key of entry {@code i} takes.
+     *
+     * @param i
+     *            the entry
+     * @return the number of bytes of the key of entry i
+     */
+    private int keyBytes(int i) {
+        int n = this.lengths[i] & ~WIDE;
+        if ((this.lengths[i] & WIDE) != 0) {
+            n = 2 * n;
+        }
+        return n;
+    }
+
+    /**
+     * Reports whether the key of entry {@code i} is {@code key}.
+     *
+     * @param i
+     *            the entry
+     * @param key
+     *            the key
+     * @return true iff the key of entry i has the characters of key
+     */
+    private boolean keyEquals(int i, CharSequence key) {
+        int stored = this.lengths[i];
+        int n = key.length();
+        if ((stored & ~WIDE) != n) {
+            return false;
+        }
+        int at = this.offsets[i];
+        boolean same = true;
+        if ((stored & WIDE) == 0) {
+            for (int j = 0; same && j < n; j++) {
+                same = (this.arena[at + j] & 0xFF) == key.charAt(j);
+            }
+        } else {
+            for (int j = 0; same && j < n; j++) {
+                char c = (char) (((this.arena[at + 2 * j] & 0xFF) << 8)
+                        | (this.arena[at + 2 * j + 1] & 0xFF));
+                same = c == key.charAt(j);
+            }
+        }
+        return same;
+    }
+
+    /**
+     * Returns the key of entry {@code i} as a {@code String}.
+     *
+     * @param i
+     *            the entry
+     * @return the key of entry i
+     */
+    private String keyAt(int i) {
+        int stored = this.lengths[i];
+        int n = stored & ~WIDE;
+        int at = this.offsets[i];
+        if ((stored & WIDE) == 0) {
+            return new String(this.arena, at, n, StandardCharsets.ISO_8859_1);
+        }
+        char[] chars = new char[n];
+        for (int j = 0; j < n; j++) {
+            chars[j] = (char) (((this.arena[at + 2 * j] & 0xFF) << 8)
+                    | (this.arena[at + 2 * j + 1] & 0xFF));
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Returns the entry whose key is {@code key}, or -1 if there is none.
+     *
+     * @param key
+     *            the key
+     * @param h
+     *            the String hash code of key
+     * @return the entry of key, or -1
+     */
+    private int find(CharSequence key, int h) {
+        int i = this.buckets[this.indexFor(h)];
+        while (i >= 0 && !(this.hashes[i] == h && this.keyEquals(i, key))) {
+            i = this.next[i];
+        }
+        return i;
+    }
+
+    /**
+     * Appends the encoding of {@code key} to the arena.
+     *
+     * @param key
+     *            the key
+     * @param wide
+     *            whether to use two bytes per character
+     * @return the arena offset of the encoding
+     * @updates this.arena, this.arenaEnd
+     */
+    private int appendKey(CharSequence key, boolean wide) {
+        int n = key.length();
+        int bytes = n;
+        if (wide) {
+            bytes = 2 * n;
+        }
+        if (this.arena.length - this.arenaEnd < bytes) {
+            long wanted = Math.max(2L * this.arena.length,
+                    (long) this.arenaEnd + bytes);
+            this.arena = Arrays.copyOf(this.arena,
+                    (int) Math.min(Integer.MAX_VALUE - 8, wanted));
+        }
+        int at = this.arenaEnd;
+        if (wide) {
+            for (int j = 0; j < n; j++) {
+                char c = key.charAt(j);
+                this.arena[at + 2 * j] = (byte) (c >>> 8);
+                this.arena[at + 2 * j + 1] = (byte) c;
+            }
+        } else {
+            for (int j = 0; j < n; j++) {
+                this.arena[at + j] = (byte) key.charAt(j);
+            }
+        }
+        this.arenaEnd += bytes;
+        return at;
+    }
+
+    /**
+     * Doubles the number of buckets and of entry slots, relinking the entries
+     * using their stored hash codes.
+     *
+     * @updates this
+     * @ensures this = #this
+     */
+    private void grow() {
+        int capacity = 2 * this.values.length;
+        this.next = Arrays.copyOf(this.next, capacity);
+        this.offsets = Arrays.copyOf(this.offsets, capacity);
+        this.lengths = Arrays.copyOf(this.lengths, capacity);
+        this.hashes = Arrays.copyOf(this.hashes, capacity);
+        this.values = Arrays.copyOf(this.values, capacity);
+        this.buckets = new int[2 * this.buckets.length];
+        Arrays.fill(this.buckets, -1);
+        for (int i = 0; i < this.size; i++) {
+            int b = this.indexFor(this.hashes[i]);
+            this.next[i] = this.buckets[b];
+            this.buckets[b] = i;
+        }
+    }
+
+    /**
+     * Copies the keys of the entries into a new arena without the garbage
+     * left by removed keys.
+     *
+     * @updates this.arena, this.arenaEnd, this.garbage, this.offsets
+     * @ensures this = #this  and  this.garbage = 0
+     */
+    private void compactArena() {
+        byte[] compact = new byte[Math.max(DEFAULT_ARENA_SIZE,
+                2 * (this.arenaEnd - this.garbage))];
+        int end = 0;
+        for (int i = 0; i < this.size; i++) {
+            int bytes = this.keyBytes(i);
+            System.arraycopy(this.arena, this.offsets[i], compact, end, bytes);
+            this.offsets[i] = end;
+            end += bytes;
+        }
+        this.arena = compact;
+        this.arenaEnd = end;
+        this.garbage = 0;
+    }
+
+    /**
+     * Removes entry {@code i}, filling its slot with the last entry.
+     *
+     * @param i
+     *            the entry
+     * @return the key and value of the removed entry
+     * @updates this
+     * @requires 0 <= i < this.size
+     */
+    @SuppressWarnings("unchecked")
+    private Pair<String, V> removeEntry(int i) {
+        Pair<String, V> result = new SimplePair<>(this.keyAt(i),
+                (V) this.values[i]);
+        this.unlink(i);
+        this.garbage += this.keyBytes(i);
+        int last = this.size - 1;
+        if (i != last) {
+            this.unlink(last);
+            this.offsets[i] = this.offsets[last];
+            this.lengths[i] = this.lengths[last];
+            this.hashes[i] = this.hashes[last];
+            this.values[i] = this.values[last];
+            int b = this.indexFor(this.hashes[i]);
+            this.next[i] = this.buckets[b];
+            this.buckets[b] = i;
+        }
+        this.values[last] = null;
+        this.size = last;
+        if (this.garbage > DEFAULT_ARENA_SIZE
+                && this.garbage > this.arenaEnd / 2) {
+            this.compactArena();
+        }
+        return result;
+    }
+
+    /**
+     * Removes entry {@code i} from its chain.
+     *
+     * @param i
+     *            the entry
+     * @updates this.buckets, this.next
+     */
+    private void unlink(int i) {
+        int b = this.indexFor(this.hashes[i]);
+        if (this.buckets[b] == i) {
+            this.buckets[b] = this.next[i];
+        } else {
+            int j = this.buckets[b];
+            while (this.next[j] != i) {
+                j = this.next[j];
+            }
+            this.next[j] = this.next[i];
+        }
+    }
+
+    /**
+     * Creator of initial representation.
+     */
+    private void createNewRep() {
+        this.buckets = new int[DEFAULT_BUCKETS];
+        Arrays.fill(this.buckets, -1);
+        int capacity = (int) (DEFAULT_BUCKETS * MAX_LOAD_FACTOR);
+        this.next = new int[capacity];
+        this.offsets = new int[capacity];
+        this.lengths = new int[capacity];
+        this.hashes = new int[capacity];
+        this.values = new Object[capacity];
+        this.size = 0;
+        this.arena = new byte[DEFAULT_ARENA_SIZE];
+        this.arenaEnd = 0;
+        this.garbage = 0;
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * No-argument constructor.
+     */
+    public ArenaMap4() {
+        this.createNewRep();
+    }
+
+    /*
+     * Standard methods -------------------------------------------------------
+     */
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public final Map<String, V> newInstance() {
+        try {
+            return this.getClass().getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new AssertionError(
+                    "Cannot construct object of type " + this.getClass());
+        }
+    }
+
+    @Override
+    public final void clear() {
+        this.createNewRep();
+    }
+
+    @Override
+    public final void transferFrom(Map<String, V> source) {
+        assert source != null : "Violation of: source is not null";
+        assert source != this : "Violation of: source is not this";
+        assert source instanceof ArenaMap4<?> : ""
+                + "Violation of: source is of dynamic type ArenaMap4<?>";
+        /*
+         * This cast cannot fail since the assert above would have stopped
+         * execution in that case: source must be of dynamic type ArenaMap4<?>,
+         * and the ? must be V or the call would not have compiled.
+         */
+        ArenaMap4<V> localSource = (ArenaMap4<V>) source;
+        this.buckets = localSource.buckets;
+        this.next = localSource.next;
+        this.offsets = localSource.offsets;
+        this.lengths = localSource.lengths;
+        this.hashes = localSource.hashes;
+        this.values = localSource.values;
+        this.size = localSource.size;
+        this.arena = localSource.arena;
+        this.arenaEnd = localSource.arenaEnd;
+        this.garbage = localSource.garbage;
+        localSource.createNewRep();
+    }
+
+    /*
+     * Kernel methods ---------------------------------------------------------
+     */
+
+    @Override
+    public final void add(String key, V value) {
+        this.add((CharSequence) key, value);
+    }
+
+    @Override
+    public final Pair<String, V> remove(String key) {
+        assert key != null : "Violation of: key is not null";
+        assert this.hasKey(key) : "Violation of: key is in DOMAIN(this)";
+
+        return this.removeEntry(this.find(key, hashOf(key)));
+    }
+
+    @Override
+    public final Pair<String, V> removeAny() {
+        assert this.size() > 0 : "Violation of: this /= empty_set";
+
+        return this.removeEntry(this.size - 1);
+    }
+
+    @Override
+    public final V value(String key) {
+        assert key != null : "Violation of: key is not null";
+        assert this.hasKey(key) : "Violation of: key is in DOMAIN(this)";
+
+        return this.valueOrNull(key);
+    }
+
+    @Override
+    public final boolean hasKey(String key) {
+        return this.hasKey((CharSequence) key);
+    }
+
+    @Override
+    public final int size() {
+        return this.size;
+    }
+
+    @Override
+    public final Iterator<Pair<String, V>> iterator() {
+        return new ArenaMap4Iterator();
+    }
+
+    /*
+     * Other methods ----------------------------------------------------------
+     */
+
+    /**
+     * Adds the pair ({@code key}, {@code value}) to {@code this}, copying the
+     * characters of {@code key} into the arena.
+     *
+     * @param key
+     *            the key to be added
+     * @param value
+     *            the associated value to be added
+     * @updates this
+     * @requires key is not null  and  value is not null  and
+     *           [the characters of key] is not in DOMAIN(this)
+     * @ensures this = #this union {([the characters of key], value)}
+     */
+    public final void add(CharSequence key, V value) {
+        assert key != null : "Violation of: key is not null";
+        assert value != null : "Violation of: value is not null";
+        assert !this.hasKey(key) : "Violation of: key is not in DOMAIN(this)";
+
+        if (this.size == this.values.length) {
+            this.grow();
+        }
+        boolean wide = false;
+        for (int j = 0; !wide && j < key.length(); j++) {
+            wide = key.charAt(j) > 0xFF;
+        }
+        int h = hashOf(key);
+        int i = this.size;
+        this.offsets[i] = this.appendKey(key, wide);
+        this.lengths[i] = key.length();
+        if (wide) {
+            this.lengths[i] |= WIDE;
+        }
+        this.hashes[i] = h;
+        this.values[i] = value;
+        int b = this.indexFor(h);
+        this.next[i] = this.buckets[b];
+        this.buckets[b] = i;
+        this.size++;
+    }
+
+    /**
+     * Reports whether {@code this} has a key with the characters of
+     * {@code key}.
+     *
+     * @param key
+     *            the key to be checked
+     * @return true iff [the characters of key] is in DOMAIN(this)
+     * @requires key is not null
+     */
+    public final boolean hasKey(CharSequence key) {
+        assert key != null : "Violation of: key is not null";
+
+        return this.find(key, hashOf(key)) >= 0;
+    }
+
+    /**
+     * Reports the value associated with the characters of {@code key}, or
+     * {@code null} if they are not a key of {@code this}.
+     *
+     * @param key
+     *            the key whose associated value is to be reported
+     * @return the value associated with key, or null
+     * @requires key is not null
+     */
+    @SuppressWarnings("unchecked")
+    public final V valueOrNull(CharSequence key) {
+        assert key != null : "Violation of: key is not null";
+
+        int i = this.find(key, hashOf(key));
+        if (i < 0) {
+            return null;
+        }
+        return (V) this.values[i];
+    }
+
+    /**
+     * Replaces the value associated with the characters of {@code key} by
+     * {@code value}, in place.
+     *
+     * @param key
+     *            the key whose associated value is replaced
+     * @param value
+     *            the new value
+     * @return the old value
+     * @updates this
+     * @requires key is not null  and  value is not null  and
+     *           [the characters of key] is in DOMAIN(this)
+     */
+    @SuppressWarnings("unchecked")
+    public final V replaceValue(CharSequence key, V value) {
+        assert key != null : "Violation of: key is not null";
+        assert value != null : "Violation of: value is not null";
+        assert this.hasKey(key) : "Violation of: key is in DOMAIN(this)";
+
+        int i = this.find(key, hashOf(key));
+        V old = (V) this.values[i];
+        this.values[i] = value;
+        return old;
+    }
+
+    @Override
+    public final V replaceValue(String key, V value) {
+        return this.replaceValue((CharSequence) key, value);
+    }
+
+    /**
+     * Reports the number of bytes of the arena in use, including those left
+     * by removed keys that have not been reclaimed yet.
+     *
+     * @return the number of arena bytes in use
+     */
+    public final int arenaBytes() {
+        return this.arenaEnd;
+    }
+
+    /**
+     * Simple implementation of {@code Pair}.
+     *
+     * @param <K>
+     *            type of key
+     * @param <V>
+     *            type of value
+     */
+    private static final class SimplePair<K, V> implements Pair<K, V> {
+
+        /**
+         * The key.
+         */
+        private final K key;
+
+        /**
+         * The value.
+         */
+        private final V value;
+
+        /**
+         * Constructor.
+         *
+         * @param key
+         *            the key
+         * @param value
+         *            the value
+         */
+        SimplePair(K key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override
+        public K key() {
+            return this.key;
+        }
+
+        @Override
+        public V value() {
+            return this.value;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this) {
+                return true;
+            }
+            if (!(obj instanceof Pair<?, ?>)) {
+                return false;
+            }
+            Pair<?, ?> p = (Pair<?, ?>) obj;
+            return this.key.equals(p.key()) && this.value.equals(p.value());
+        }
+
+        @Override
+        public int hashCode() {
+            return this.key.hashCode() + this.value.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return "(" + this.key + "," + this.value + ")";
+        }
+
+    }
+
+    /**
+     * Implementation of {@code Iterator} interface for {@code ArenaMap4}.
+     */
+    private final class ArenaMap4Iterator implements Iterator<Pair<String, V>> {
+
+        /**
+         * Next entry to be returned.
+         */
+        private int nextEntry;
+
+        /**
+         * No-argument constructor.
+         */
+        ArenaMap4Iterator() {
+            this.nextEntry = 0;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.nextEntry < ArenaMap4.this.size;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public Pair<String, V> next() {
+            assert this.hasNext() : "Violation of: ~this.unseen /= <>";
+            if (!this.hasNext()) {
+                /*
+                 * Exception is supposed to be thrown in this case, but with
+                 * assertion-checking enabled it cannot happen because of assert
+                 * above.
+                 */
+                throw new NoSuchElementException();
+            }
+            int i = this.nextEntry;
+            this.nextEntry++;
+            return new SimplePair<>(ArenaMap4.this.keyAt(i),
+                    (V) ArenaMap4.this.values[i]);
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException(
+                    "remove operation not supported");
+        }
+
+    }
+
+}
@@ -0,0 +1,529 @@
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import components.array.Array;
+import components.array.Array1L;
+import components.map.Map;
+import components.map.Map1L;
+import components.map.MapSecondary;
+
+/**
+ * {@code Map} represented as a hash table using {@code Map}s for the buckets,
+ * like {@code Map4}, but safe to share among threads. The buckets are divided
+ * into stripes, each guarded by its own read-write lock, and the size is kept
+ * in a striped counter, so operations on keys in different stripes do not
+ * contend with each other.
+ *
+ * <p>
+ * Each kernel method is atomic. Preconditions that depend on the contents of
+ * the map (such as {@code key is not in DOMAIN(this)} for {@code add}) are
+ * checked while holding the bucket's lock, so callers racing on the same key
+ * should use {@code addIfAbsent} instead of {@code hasKey} followed by
+ * {@code add}. Iterators are weakly consistent: they never fail, and they
+ * reflect each bucket as it was when the iterator reached it.
+ *
+ * @param <K>
+ *            type of {@code Map} domain (key) entries
+ * @param <V>
+ *            type of {@code Map} range (associated value) entries
+ * @convention <pre>
+ * [same as Map4, with $this.size replaced by $this.count.sum()]  and
+ * |$this.locks| > 0  and
+ * [$this.sequence differs from that of every other instance]  and
+ * [bucket i is only read while holding a lock on $this.locks[i mod |locks|]
+ *  and only modified while holding its write lock]
+ * </pre>
+ * @correspondence <pre>
+ * this = union i: integer, pf: PARTIAL_FUNCTION
+ *            where (0 <= i  and  i < |$this.hashTable.entries|  and
+ *                   <pf> = $this.hashTable.entries[i, i+1))
+ *          (pf)
+ * </pre>
+ *
+ * @author Put your name here
+ *
+ */
+public class ConcurrentMap4<K, V> extends MapSecondary<K, V> {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Default size of hash table.
+     */
+    private static final int DEFAULT_HASH_TABLE_SIZE = 1009;
+
+    /**
+     * Maximum number of lock stripes.
+     */
+    private static final int MAX_STRIPES = 64;
+
+    /**
+     * Source of the sequence numbers of the instances.
+     */
+    private static final AtomicLong INSTANCES = new AtomicLong();
+
+    /**
+     * Sequence number of this instance, unique among all instances, which
+     * orders the locking of two maps in {@code transferFrom}.
+     */
+    private final long sequence = INSTANCES.getAndIncrement();
+
+    /**
+     * Buckets for hashing; the table itself never changes after construction,
+     * only the contents of the buckets.
+     */
+    private final Array<Map<K, V>> hashTable;
+
+    /**
+     * Locks guarding the buckets; bucket i is guarded by
+     * {@code locks[i % locks.length]}.
+     */
+    private final ReadWriteLock[] locks;
+
+    /**
+     * Total size of abstract {@code this}.
+     */
+    private final LongAdder count;
+
+    /**
+     * Bucket at which the next {@code removeAny} starts looking, so that
+     * concurrent callers spread out over the table.
+     */
+    private final AtomicInteger removeAnyCursor;
+
+    /**
+     * Computes {@code a} mod {@code b} as % should have been defined to work.
+     *
+     * @param a
+     *            the number being reduced
+     * @param b
+     *            the modulus
+     * @return the result of a mod b, which satisfies 0 <= {@code mod} < b
+     * @requires b > 0
+     * @ensures <pre>
+     * 0 <= mod  and  mod < b  and
+     * there exists k: integer (a = k * b + mod)
+     * </pre>
+     */
+    private static int mod(int a, int b) {
+        assert b > 0 : "Violation of: b > 0";
+
+        int c = a % b;
+        if (a < 0 && c != 0) {
+            c = c + b;
+        }
+        return c;
+    }
+
+    /**
+     * Returns the bucket index of {@code key}.
+     *
+     * @param key
+     *            the key
+     * @return the bucket of key
+     */
+    private int bucketOf(K key) {
+        return mod(key.hashCode(), this.hashTable.length());
+    }
+
+    /**
+     * Returns the lock guarding bucket {@code bucket}.
+     *
+     * @param bucket
+     *            the bucket index
+     * @return the lock of the bucket
+     */
+    private ReadWriteLock lockOf(int bucket) {
+        return this.locks[bucket % this.locks.length];
+    }
+
+    /**
+     * Acquires the write locks of every stripe, in index order.
+     */
+    private void lockAll() {
+        for (ReadWriteLock lock : this.locks) {
+            lock.writeLock().lock();
+        }
+    }
+
+    /**
+     * Releases the write locks of every stripe.
+     */
+    private void unlockAll() {
+        for (int i = this.locks.length - 1; i >= 0; i--) {
+            this.locks[i].writeLock().unlock();
+        }
+    }
+
+    /**
+     * Empties every bucket and resets the size; the caller holds all write
+     * locks.
+     *
+     * @ensures this = {}
+     */
+    private void emptyAllBuckets() {
+        for (int i = 0; i < this.hashTable.length(); i++) {
+            this.hashTable.entry(i).clear();
+        }
+        this.count.reset();
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * No-argument constructor.
+     */
+    public ConcurrentMap4() {
+        this(DEFAULT_HASH_TABLE_SIZE);
+    }
+
+    /**
+     * Constructor resulting in a hash table of size {@code hashTableSize}.
+     *
+     * @param hashTableSize
+     *            size of hash table
+     * @requires hashTableSize > 0
+     * @ensures this = {}
+     */
+    public ConcurrentMap4(int hashTableSize) {
+        assert hashTableSize > 0 : "Violation of: hashTableSize > 0";
+
+        this.hashTable = new Array1L<Map<K, V>>(hashTableSize);
+        for (int i = 0; i < hashTableSize; i++) {
+            this.hashTable.setEntry(i, new Map1L<K, V>());
+        }
+        int stripes = Math.min(MAX_STRIPES,
+                Math.min(hashTableSize,
+                        4 * Runtime.getRuntime().availableProcessors()));
+        this.locks = new ReadWriteLock[stripes];
+        for (int i = 0; i < stripes; i++) {
+            this.locks[i] = new ReentrantReadWriteLock();
+        }
+        this.count = new LongAdder();
+        this.removeAnyCursor = new AtomicInteger();
+    }
+
+    /*
+     * Standard methods -------------------------------------------------------
+     */
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public final Map<K, V> newInstance() {
+        try {
+            return this.getClass().getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new AssertionError(
+                    "Cannot construct object of type " + this.getClass());
+        }
+    }
+
+    @Override
+    public final void clear() {
+        this.lockAll();
+        try {
+            this.emptyAllBuckets();
+        } finally {
+            this.unlockAll();
+        }
+    }
+
+    @Override
+    public final void transferFrom(Map<K, V> source) {
+        assert source != null : "Violation of: source is not null";
+        assert source != this : "Violation of: source is not this";
+        assert source instanceof ConcurrentMap4<?, ?> : ""
+                + "Violation of: source is of dynamic type ConcurrentMap4<?,?>";
+        /*
+         * This cast cannot fail since the assert above would have stopped
+         * execution in that case: source must be of dynamic type
+         * ConcurrentMap4<?,?>, and the ?,? must be K,V or the call would not
+         * have compiled. The table is final, so entries are moved one at a
+         * time rather than by swapping representations.
+         */
+        ConcurrentMap4<K, V> localSource = (ConcurrentMap4<K, V>) source;
+        ConcurrentMap4<K, V> first = this;
+        ConcurrentMap4<K, V> second = localSource;
+        if (first.sequence > second.sequence) {
+            first = localSource;
+            second = this;
+        }
+        first.lockAll();
+        second.lockAll();
+        try {
+            this.emptyAllBuckets();
+            for (int i = 0; i < localSource.hashTable.length(); i++) {
+                Map<K, V> bucket = localSource.hashTable.entry(i);
+                while (bucket.size() > 0) {
+                    Pair<K, V> p = bucket.removeAny();
+                    this.hashTable.entry(this.bucketOf(p.key())).add(p.key(),
+                            p.value());
+                    this.count.increment();
+                }
+            }
+            localSource.count.reset();
+        } finally {
+            second.unlockAll();
+            first.unlockAll();
+        }
+    }
+
+    /*
+     * Kernel methods ---------------------------------------------------------
+     */
+
+    @Override
+    public final void add(K key, V value) {
+        assert key != null : "Violation of: key is not null";
+        assert value != null : "Violation of: value is not null";
+
+        boolean added = this.addIfAbsent(key, value);
+        assert added : "Violation of: key is not in DOMAIN(this)";
+    }
+
+    @Override
+    public final Pair<K, V> remove(K key) {
+        assert key != null : "Violation of: key is not null";
+
+        int bucket = this.bucketOf(key);
+        ReadWriteLock lock = this.lockOf(bucket);
+        lock.writeLock().lock();
+        try {
+            Map<K, V> rep = this.hashTable.entry(bucket);
+            assert rep.hasKey(key) : "Violation of: key is in DOMAIN(this)";
+            Pair<K, V> element = rep.remove(key);
+            this.count.decrement();
+            return element;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public final Pair<K, V> removeAny() {
+        int length = this.hashTable.length();
+        int start = mod(this.removeAnyCursor.get(), length);
+        /*
+         * Another thread may empty a bucket between our size check and our
+         * lock, so keep sweeping until an entry is found or the map is seen
+         * to be empty.
+         */
+        while (true) {
+            for (int k = 0; k < length; k++) {
+                int bucket = (start + k) % length;
+                ReadWriteLock lock = this.lockOf(bucket);
+                lock.writeLock().lock();
+                try {
+                    Map<K, V> rep = this.hashTable.entry(bucket);
+                    if (rep.size() > 0) {
+                        Pair<K, V> element = rep.removeAny();
+                        this.count.decrement();
+                        this.removeAnyCursor.set(bucket);
+                        return element;
+                    }
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+            assert this.size() > 0 : "Violation of: this /= empty_set";
+            if (this.size() == 0) {
+                /*
+                 * Exception is supposed to be thrown in this case, but with
+                 * assertion-checking enabled it cannot happen because of assert
+                 * above.
+                 */
+                throw new NoSuchElementException();
+            }
+        }
+    }
+
+    @Override
+    public final V value(K key) {
+        assert key != null : "Violation of: key is not null";
+
+        int bucket = this.bucketOf(key);
+        ReadWriteLock lock = this.lockOf(bucket);
+        lock.readLock().lock();
+        try {
+            Map<K, V> rep = this.hashTable.entry(bucket);
+            assert rep.hasKey(key) : "Violation of: key is in DOMAIN(this)";
+            return rep.value(key);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public final boolean hasKey(K key) {
+        assert key != null : "Violation of: key is not null";
+
+        int bucket = this.bucketOf(key);
+        ReadWriteLock lock = this.lockOf(bucket);
+        lock.readLock().lock();
+        try {
+            return this.hashTable.entry(bucket).hasKey(key);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public final int size() {
+        return (int) this.count.sum();
+    }
+
+    @Override
+    public final Iterator<Pair<K, V>> iterator() {
+        return new ConcurrentMap4Iterator();
+    }
+
+    /*
+     * Other methods ----------------------------------------------------------
+     */
+
+    /**
+     * Atomically adds the pair ({@code key}, {@code value}) unless {@code key}
+     * is already in {@code this}.
+     *
+     * @param key
+     *            the key to be added
+     * @param value
+     *            the associated value to be added
+     * @return true iff the pair was added
+     * @updates this
+     * @requires key is not null  and  value is not null
+     * @ensures <pre>
+     * if key is in DOMAIN(#this)
+     * then this = #this  and  not addIfAbsent
+     * else this = #this union {(key, value)}  and  addIfAbsent
+     * </pre>
+     */
+    public final boolean addIfAbsent(K key, V value) {
+        assert key != null : "Violation of: key is not null";
+        assert value != null : "Violation of: value is not null";
+
+        int bucket = this.bucketOf(key);
+        ReadWriteLock lock = this.lockOf(bucket);
+        lock.writeLock().lock();
+        try {
+            Map<K, V> rep = this.hashTable.entry(bucket);
+            if (rep.hasKey(key)) {
+                return false;
+            }
+            rep.add(key, value);
+            this.count.increment();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public final V replaceValue(K key, V value) {
+        assert key != null : "Violation of: key is not null";
+        assert value != null : "Violation of: value is not null";
+
+        int bucket = this.bucketOf(key);
+        ReadWriteLock lock = this.lockOf(bucket);
+        lock.writeLock().lock();
+        try {
+            Map<K, V> rep = this.hashTable.entry(bucket);
+            assert rep.hasKey(key) : "Violation of: key is in DOMAIN(this)";
+            return rep.replaceValue(key, value);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Weakly consistent implementation of {@code Iterator} interface for
+     * {@code ConcurrentMap4}: each bucket is copied under its read lock when
+     * the iterator reaches it.
+     */
+    private final class ConcurrentMap4Iterator
+            implements Iterator<Pair<K, V>> {
+
+        /**
+         * Pairs of the current bucket not yet returned.
+         */
+        private final List<Pair<K, V>> pending;
+
+        /**
+         * Position in {@code pending} of the next pair.
+         */
+        private int position;
+
+        /**
+         * Next bucket to copy.
+         */
+        private int nextBucket;
+
+        /**
+         * No-argument constructor.
+         */
+        ConcurrentMap4Iterator() {
+            this.pending = new ArrayList<>();
+            this.position = 0;
+            this.nextBucket = 0;
+        }
+
+        /**
+         * Copies buckets until a non-empty one is found or the table is
+         * exhausted.
+         */
+        private void fill() {
+            Array<Map<K, V>> table = ConcurrentMap4.this.hashTable;
+            while (this.position == this.pending.size()
+                    && this.nextBucket < table.length()) {
+                this.pending.clear();
+                this.position = 0;
+                ReadWriteLock lock = ConcurrentMap4.this
+                        .lockOf(this.nextBucket);
+                lock.readLock().lock();
+                try {
+                    for (Pair<K, V> p : table.entry(this.nextBucket)) {
+                        this.pending.add(p);
+                    }
+                } finally {
+                    lock.readLock().unlock();
+                }
+                this.nextBucket++;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            this.fill();
+            return this.position < this.pending.size();
+        }
+
+        @Override
+        public Pair<K, V> next() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Pair<K, V> p = this.pending.get(this.position);
+            this.position++;
+            return p;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException(
+                    "remove operation not supported");
+        }
+
+    }
+
+}
@@ -1,15 +1,26 @@
+import java.security.SecureRandom;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import components.array.Array;
 import components.array.Array1L;
 import components.map.Map;
-import components.map.Map1L;
 import components.map.MapSecondary;
 
 /**
  * {@code Map} represented as a hash table using {@code Map}s for the buckets,
- * with implementations of primary methods.
+ * with implementations of primary methods. Each bucket is a chain of nodes
+ * that cache their key's hash code, so rehashing never calls
+ * {@code hashCode} and most non-matching keys are rejected without calling
+ * {@code equals}.
  *
  * @param <K>
  *            type of {@code Map} domain (key) entries
@@ -17,12 +28,32 @@ import components.map.MapSecondary;
  *            type of {@code Map} range (associated value) entries
  * @convention <pre>
  * |$this.hashTable.entries| > 0  and
+ * ($this.powerOfTwo  implies  [|$this.hashTable.entries| is a power of 2])
+ *   and
+ * $this.maxLoadFactor > 0  and
+ * ($this.growThreshold =
+ *     floor(|$this.hashTable.entries| * $this.maxLoadFactor)  or
+ *  [the table has reached its maximum size])  and
+ * $this.size <= $this.growThreshold  and
  * for all i: integer, pf: PARTIAL_FUNCTION, x: K
  *     where (0 <= i  and  i < |$this.hashTable.entries|  and
  *            <pf> = $this.hashTable.entries[i, i+1)  and
  *            x is in DOMAIN(pf))
- *   ([computed result of x.hashCode()] mod |$this.hashTable.entries| = i))  and
+ *   ($this.indexFor([computed result of x.hashCode()]) = i  and
+ *    [the node holding x caches the computed result of x.hashCode()])  and
+ * (not $this.hardened  implies  [no bucket is a TreeBucket])  and
  * |$this.hashTable.examinableIndices| = |$this.hashTable.entries|  and
+ * for all i: integer
+ *     where (0 <= i  and  i < |$this.hashTable.entries|)
+ *   ([bit i of $this.occupied is set] =
+ *    ($this.hashTable.entries[i, i+1) /= <{}>))  and
+ * 0 <= $this.removeAnyCursor < |$this.hashTable.entries|  and
+ * ($this.tableEpoch /= $this.epoch  implies
+ *  [$this.hashTable and $this.occupied may be shared with a snapshot])  and
+ * for all i: integer
+ *     where (0 <= i  and  i < |$this.hashTable.entries|)
+ *   ([bucket i].epoch /= $this.epoch  implies
+ *    [bucket i and its nodes may be shared with a snapshot])  and
  * $this.size = sum i: integer, pf: PARTIAL_FUNCTION
  *     where (0 <= i  and  i < |$this.hashTable.entries|  and
  *            <pf> = $this.hashTable.entries[i, i+1))
@@ -49,16 +80,158 @@ public class Map4<K, V> extends MapSecondary<K, V> {
      */
     private static final int DEFAULT_HASH_TABLE_SIZE = 101;
 
+    /**
+     * Largest hash table the map will grow to.
+     */
+    private static final int MAX_HASH_TABLE_SIZE = 1 << 30;
+
+    /**
+     * Default maximum ratio of entries to buckets before the table grows.
+     */
+    private static final double DEFAULT_MAX_LOAD_FACTOR = 0.75;
+
+    /**
+     * The table shrinks when its load factor drops below the maximum load
+     * factor divided by this number (only with {@link Option#SHRINK}).
+     */
+    private static final int SHRINK_DIVISOR = 4;
+
+    /**
+     * In hardened mode, a bucket holding more than this many entries is
+     * converted to a {@code TreeBucket} (if its keys are mutually comparable).
+     */
+    private static final int TREEIFY_THRESHOLD = 8;
+
+    /**
+     * A {@code TreeBucket} shrinking to this many entries is converted back to
+     * an ordinary bucket.
+     */
+    private static final int UNTREEIFY_THRESHOLD = 6;
+
+    /**
+     * Source of the per-instance seeds of hardened maps.
+     */
+    private static final Random SEED_SOURCE = new SecureRandom();
+
     /**
      * Buckets for hashing.
      */
-    private Array<Map<K, V>> hashTable;
+    private Array<Bucket<K, V>> hashTable;
 
     /**
      * Total size of abstract {@code this}.
      */
     private int size;
 
+    /**
+     * Bit set of non-empty buckets: bit {@code i % 64} of
+     * {@code occupied[i / 64]} is set iff bucket {@code i} is non-empty.
+     */
+    private long[] occupied;
+
+    /**
+     * Bucket from which {@code removeAny} resumes looking for an entry.
+     */
+    private int removeAnyCursor;
+
+    /**
+     * Size of the hash table this was constructed with; the table never
+     * shrinks below it, and {@code clear} restores it.
+     */
+    private final int initialSize;
+
+    /**
+     * Maximum ratio of {@code size} to the number of buckets.
+     */
+    private final double maxLoadFactor;
+
+    /**
+     * Whether the table shrinks after heavy removal.
+     */
+    private final boolean shrink;
+
+    /**
+     * Whether hash codes are mixed with {@code seed} and long buckets are
+     * converted to trees.
+     */
+    private final boolean hardened;
+
+    /**
+     * Whether the table size is a power of 2, so that buckets are selected by
+     * masking instead of {@code mod}.
+     */
+    private final boolean powerOfTwo;
+
+    /**
+     * Number of snapshots taken so far. Buckets, and the table and bit set,
+     * are tagged with the value this had when they were created; those
+     * tagged with an earlier value may be shared with a snapshot and are
+     * copied before being modified.
+     */
+    private int epoch;
+
+    /**
+     * Value of {@code epoch} when {@code hashTable} and {@code occupied} were
+     * created.
+     */
+    private int tableEpoch;
+
+    /**
+     * Statistics kept with {@link Option#STATISTICS}, or null.
+     */
+    private final Map4Statistics statistics;
+
+    /**
+     * Random value mixed into every hash code in hardened mode, chosen anew
+     * for each table so bucket positions cannot be predicted from outside.
+     */
+    private int seed;
+
+    /**
+     * Size above which the table is rehashed into a larger one.
+     */
+    private int growThreshold;
+
+    /**
+     * Size below which the table is rehashed into a smaller one (0 when
+     * shrinking is disabled or the table is already at its initial size).
+     */
+    private int shrinkThreshold;
+
+    /**
+     * Optional behaviors for a {@code Map4}.
+     */
+    public enum Option {
+        /**
+         * Rehash into a smaller table when removals bring the load factor well
+         * below the maximum, never going below the initial table size.
+         */
+        SHRINK,
+
+        /**
+         * Defend against inputs crafted so that many keys land in one bucket:
+         * mix every hash code with a random per-instance seed, and store any
+         * bucket that still grows long (because its keys have equal hash
+         * codes) as a balanced tree ordered by {@code compareTo}, provided its
+         * keys are {@code Comparable}.
+         */
+        HARDENED,
+
+        /**
+         * Round the table size up to a power of 2 and select buckets by
+         * spreading the high bits of the hash code into the low ones and
+         * masking, instead of by {@code mod} with a prime table size.
+         */
+        POWER_OF_TWO,
+
+        /**
+         * Keep a {@code Map4Statistics} describing the shape of the hash
+         * table, the cost of lookups, and the cost of rehashing, available
+         * from {@code statistics}.
+         */
+        STATISTICS
+    }
+
     /**
      * Computes {@code a} mod {@code b} as % should have been defined to work.
      *
@@ -85,6 +258,396 @@ public class Map4<K, V> extends MapSecondary<K, V> {
         return c;
     }
 
+    /**
+     * Scrambles the bits of {@code h} so that every input bit affects every
+     * output bit (the finalizer of MurmurHash3).
+     *
+     * @param h
+     *            the value to mix
+     * @return the mixed value
+     */
+    private static int mix(int h) {
+        int x = h;
+        x ^= x >>> 16;
+        x *= 0x85ebca6b;
+        x ^= x >>> 13;
+        x *= 0xc2b2ae35;
+        x ^= x >>> 16;
+        return x;
+    }
+
+    /**
+     * Returns the bucket, in the current table, of a key whose
+     * {@code hashCode} is {@code h}.
+     *
+     * @param h
+     *            the key's hash code
+     * @return the index of the bucket for the key
+     * @ensures 0 <= indexFor < |this.hashTable.entries|
+     */
+    private int indexFor(int h) {
+        return indexFor(h, this.hashTable.length(), this.hardened,
+                this.powerOfTwo, this.seed);
+    }
+
+    /**
+     * Returns the bucket of a key whose {@code hashCode} is {@code h}, in a
+     * table of {@code length} buckets hashed as the remaining arguments say.
+     *
+     * @param h
+     *            the key's hash code
+     * @param length
+     *            the number of buckets
+     * @param hardened
+     *            whether hash codes are mixed with seed
+     * @param powerOfTwo
+     *            whether buckets are selected by masking
+     * @param seed
+     *            the seed of a hardened table
+     * @return the index of the bucket for the key
+     * @requires length > 0  and  (powerOfTwo implies [length is a power of 2])
+     * @ensures 0 <= indexFor < length
+     */
+    private static int indexFor(int h, int length, boolean hardened,
+            boolean powerOfTwo, int seed) {
+        int t = h;
+        if (hardened) {
+            t = mix(h ^ seed);
+        }
+        if (powerOfTwo) {
+            if (!hardened) {
+                t ^= t >>> 16;
+            }
+            return t & (length - 1);
+        }
+        return mod(t, length);
+    }
+
+    /**
+     * Returns {@code bucket} after tagging it as created in the current
+     * epoch.
+     *
+     * @param bucket
+     *            a newly created bucket
+     * @return bucket
+     * @updates bucket.epoch
+     * @ensures bucket.epoch = this.epoch
+     */
+    private Bucket<K, V> tag(Bucket<K, V> bucket) {
+        bucket.epoch = this.epoch;
+        return bucket;
+    }
+
+    /**
+     * Makes sure {@code hashTable} and {@code occupied} are not shared with a
+     * snapshot, copying them (but not the buckets) if they are.
+     *
+     * @updates this.hashTable, this.occupied
+     * @ensures this = #this  and  this.tableEpoch = this.epoch
+     */
+    private void ensureTableWritable() {
+        if (this.tableEpoch != this.epoch) {
+            int length = this.hashTable.length();
+            Array<Bucket<K, V>> copy = new Array1L<Bucket<K, V>>(length);
+            for (int i = 0; i < length; i++) {
+                copy.setEntry(i, this.hashTable.entry(i));
+            }
+            this.hashTable = copy;
+            this.occupied = this.occupied.clone();
+            this.tableEpoch = this.epoch;
+        }
+    }
+
+    /**
+     * Returns bucket {@code bucket}, after copying it (and the table) if it
+     * is shared with a snapshot, so that it may be modified.
+     *
+     * @param bucket
+     *            the index of the bucket
+     * @return the bucket, which no snapshot shares
+     * @updates this.hashTable, this.occupied
+     * @ensures this = #this
+     */
+    private Bucket<K, V> writableBucket(int bucket) {
+        this.ensureTableWritable();
+        Bucket<K, V> rep = this.hashTable.entry(bucket);
+        if (rep.epoch != this.epoch) {
+            rep = this.tag(rep.copy());
+            this.hashTable.setEntry(bucket, rep);
+        }
+        return rep;
+    }
+
+    /**
+     * Adds {@code node} to the bucket its cached hash code selects,
+     * converting the bucket between chain and tree form as hardened mode
+     * requires.
+     *
+     * @param node
+     *            the node to add
+     * @updates this.hashTable, this.occupied
+     * @requires node.key is not in DOMAIN(this)
+     */
+    private void addNode(Node<K, V> node) {
+        int bucket = this.indexFor(node.hash);
+        Bucket<K, V> rep = this.writableBucket(bucket);
+        if (rep instanceof TreeBucket<?, ?>
+                && !((TreeBucket<K, V>) rep).accepts(node.key)) {
+            rep = rep.moveAllTo(this.tag(new Chain<K, V>()));
+            this.hashTable.setEntry(bucket, rep);
+        }
+        rep.insert(node);
+        if (this.statistics != null) {
+            this.statistics.bucketResized(rep.size() - 1, rep.size());
+        }
+        if (this.hardened && rep.size() == TREEIFY_THRESHOLD + 1
+                && !(rep instanceof TreeBucket<?, ?>)) {
+            Class<?> keyClass = TreeBucket.commonComparableClass(rep);
+            if (keyClass != null) {
+                this.hashTable.setEntry(bucket, rep.moveAllTo(
+                        this.tag(new TreeBucket<K, V>(keyClass))));
+            }
+        }
+        this.markOccupied(bucket);
+    }
+
+    /**
+     * Converts bucket {@code bucket} back to chain form if it is a tree that
+     * has become short.
+     *
+     * @param bucket
+     *            the index of the bucket
+     * @updates this.hashTable
+     * @requires [bucket is not shared with a snapshot]
+     */
+    private void untreeifyIfShort(int bucket) {
+        Bucket<K, V> rep = this.hashTable.entry(bucket);
+        if (rep instanceof TreeBucket<?, ?>
+                && rep.size() <= UNTREEIFY_THRESHOLD) {
+            this.hashTable.setEntry(bucket,
+                    rep.moveAllTo(this.tag(new Chain<K, V>())));
+        }
+    }
+
+    /**
+     * Returns the smallest prime number that is at least {@code n}.
+     *
+     * @param n
+     *            the lower bound
+     * @return the smallest prime >= n
+     * @requires n > 0
+     * @ensures nextPrime >= n  and  [nextPrime is prime]  and
+     *          [no prime p satisfies n <= p < nextPrime]
+     */
+    private static int nextPrime(int n) {
+        assert n > 0 : "Violation of: n > 0";
+
+        int candidate = Math.max(n, 2);
+        boolean prime = false;
+        while (!prime) {
+            prime = true;
+            for (int d = 2; prime && (long) d * d <= candidate; d++) {
+                if (candidate % d == 0) {
+                    prime = false;
+                }
+            }
+            if (!prime) {
+                candidate++;
+            }
+        }
+        return candidate;
+    }
+
+    /**
+     * Returns the smallest power of 2 that is at least {@code n}.
+     *
+     * @param n
+     *            the lower bound
+     * @return the smallest power of 2 >= n
+     * @requires 0 < n <= MAX_HASH_TABLE_SIZE
+     * @ensures [powerOfTwoAtLeast is a power of 2]  and
+     *          n <= powerOfTwoAtLeast < 2 * n
+     */
+    private static int powerOfTwoAtLeast(int n) {
+        assert 0 < n && n <= MAX_HASH_TABLE_SIZE : ""
+                + "Violation of: 0 < n <= MAX_HASH_TABLE_SIZE";
+
+        int p = 1;
+        while (p < n) {
+            p <<= 1;
+        }
+        return p;
+    }
+
+    /**
+     * Returns the smallest valid table size that is at least {@code n}: a
+     * power of 2 in power-of-two mode, and a prime otherwise.
+     *
+     * @param n
+     *            the lower bound
+     * @return the smallest valid table size >= n
+     * @requires 0 < n <= MAX_HASH_TABLE_SIZE
+     */
+    private int tableSizeAtLeast(int n) {
+        if (this.powerOfTwo) {
+            return powerOfTwoAtLeast(n);
+        }
+        return nextPrime(n);
+    }
+
+    /**
+     * Recomputes the grow and shrink thresholds for the current table length.
+     *
+     * @updates this.growThreshold, this.shrinkThreshold
+     * @ensures <pre>
+     * this.growThreshold =
+     *   floor(|this.hashTable.entries| * this.maxLoadFactor)  and
+     * [this.growThreshold = Integer.MAX_VALUE if the table cannot grow]  and
+     * this.shrinkThreshold = [growThreshold / SHRINK_DIVISOR if shrinking is
+     *   enabled and the table is larger than initialSize, else 0]
+     * </pre>
+     */
+    private void updateThresholds() {
+        int length = this.hashTable.length();
+        this.growThreshold = (int) Math.min(Integer.MAX_VALUE,
+                (long) (length * this.maxLoadFactor));
+        if (length >= MAX_HASH_TABLE_SIZE) {
+            this.growThreshold = Integer.MAX_VALUE;
+        }
+        this.shrinkThreshold = 0;
+        if (this.shrink && length > this.initialSize) {
+            this.shrinkThreshold = this.growThreshold / SHRINK_DIVISOR;
+        }
+    }
+
+    /**
+     * Returns an empty bit set with room for {@code n} bits.
+     *
+     * @param n
+     *            the number of bits
+     * @return a bit set of n clear bits
+     */
+    private static long[] newBitSet(int n) {
+        return new long[(n + Long.SIZE - 1) / Long.SIZE];
+    }
+
+    /**
+     * Records that bucket {@code bucket} is non-empty.
+     *
+     * @param bucket
+     *            the bucket index
+     * @updates this.occupied
+     */
+    private void markOccupied(int bucket) {
+        this.occupied[bucket >>> 6] |= 1L << bucket;
+    }
+
+    /**
+     * Records that bucket {@code bucket} is empty if it is.
+     *
+     * @param bucket
+     *            the bucket index
+     * @updates this.occupied
+     */
+    private void unmarkIfEmpty(int bucket) {
+        if (this.hashTable.entry(bucket).size() == 0) {
+            this.occupied[bucket >>> 6] &= ~(1L << bucket);
+        }
+    }
+
+    /**
+     * Returns the first non-empty bucket at or after {@code from}, or -1 if
+     * there is none. Skips 64 empty buckets per step.
+     *
+     * @param from
+     *            the first bucket to consider
+     * @return the index of the next non-empty bucket, or -1
+     * @requires from >= 0
+     * @ensures <pre>
+     * if there exists i: integer (from <= i < |this.hashTable.entries|  and
+     *                             this.hashTable.entries[i, i+1) /= <{}>)
+     * then nextOccupied = [the smallest such i]
+     * else nextOccupied = -1
+     * </pre>
+     */
+    private int nextOccupied(int from) {
+        return nextSetBit(this.occupied, from);
+    }
+
+    /**
+     * Returns the index of the first set bit of {@code bitSet} at or after
+     * {@code from}, or -1 if there is none.
+     *
+     * @param bitSet
+     *            the bit set
+     * @param from
+     *            the first bit to consider
+     * @return the index of the next set bit, or -1
+     * @requires from >= 0
+     */
+    private static int nextSetBit(long[] bitSet, int from) {
+        int word = from >>> 6;
+        if (word >= bitSet.length) {
+            return -1;
+        }
+        long bits = bitSet[word] & (-1L << from);
+        while (bits == 0) {
+            word++;
+            if (word == bitSet.length) {
+                return -1;
+            }
+            bits = bitSet[word];
+        }
+        return word * Long.SIZE + Long.numberOfTrailingZeros(bits);
+    }
+
+    /**
+     * Moves every entry of {@code this} into a new hash table of
+     * {@code newTableSize} buckets, reusing the nodes and their cached hash
+     * codes.
+     *
+     * @param newTableSize
+     *            the number of buckets of the new table
+     * @updates this.hashTable
+     * @requires newTableSize > 0
+     * @ensures |this.hashTable.entries| = newTableSize  and  this = #this
+     */
+    private void rehash(int newTableSize) {
+        long start = System.nanoTime();
+        Array<Bucket<K, V>> oldTable = this.hashTable;
+        long[] oldOccupied = this.occupied;
+        this.hashTable = new Array1L<Bucket<K, V>>(newTableSize);
+        for (int i = 0; i < newTableSize; i++) {
+            this.hashTable.setEntry(i, this.tag(new Chain<K, V>()));
+        }
+        this.occupied = newBitSet(newTableSize);
+        this.tableEpoch = this.epoch;
+        this.removeAnyCursor = 0;
+        if (this.statistics != null) {
+            this.statistics.tableBuilt(newTableSize);
+        }
+        for (int word = 0; word < oldOccupied.length; word++) {
+            long bits = oldOccupied[word];
+            while (bits != 0) {
+                int i = word * Long.SIZE + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                Bucket<K, V> oldBucket = oldTable.entry(i);
+                if (oldBucket.epoch != this.epoch) {
+                    oldBucket = oldBucket.copy();
+                }
+                Node<K, V> node = oldBucket.poll();
+                while (node != null) {
+                    this.addNode(node);
+                    node = oldBucket.poll();
+                }
+            }
+        }
+        this.updateThresholds();
+        if (this.statistics != null) {
+            this.statistics.rehashed(System.nanoTime() - start);
+        }
+    }
+
     /**
      * Creator of initial representation.
      *
@@ -97,17 +660,127 @@ public class Map4<K, V> extends MapSecondary<K, V> {
      *     where (0 <= i  and  i < |$this.hashTable.entries|)
      *   ($this.hashTable.entries[i, i+1) = <{}>  and
      *    i is in $this.hashTable.examinableIndices)  and
-     * $this.size = 0
+     * $this.size = 0  and
+     * [all bits of $this.occupied are clear]
      * </pre>
      */
     private void createNewRep(int hashTableSize) {
 
-        this.hashTable = new Array1L<Map<K, V>>(hashTableSize);
+        this.hashTable = new Array1L<Bucket<K, V>>(hashTableSize);
         this.size = 0;
         for (int i = 0; i < hashTableSize; i++) {
-            Map<K, V> ele = new Map1L<>();
+            Bucket<K, V> ele = this.tag(new Chain<>());
             this.hashTable.setEntry(i, ele);
         }
+        this.occupied = newBitSet(hashTableSize);
+        this.tableEpoch = this.epoch;
+        this.removeAnyCursor = 0;
+        if (this.hardened) {
+            this.seed = SEED_SOURCE.nextInt();
+        }
+        this.updateThresholds();
+        if (this.statistics != null) {
+            this.statistics.tableBuilt(hashTableSize);
+        }
+    }
+
+    /**
+     * Rehashes into a table about half as large if shrinking is enabled and
+     * the load factor has dropped below the shrink threshold.
+     *
+     * @updates this.hashTable
+     * @ensures this = #this
+     */
+    private void shrinkIfSparse() {
+        if (this.size < this.shrinkThreshold) {
+            int newTableSize = Math.max(this.initialSize,
+                    this.tableSizeAtLeast(this.hashTable.length() / 2));
+            this.rehash(newTableSize);
+        }
+    }
+
+    /**
+     * Returns the number of buckets needed to hold {@code expectedSize}
+     * entries without exceeding {@code loadFactor}, before rounding to a valid
+     * table size.
+     *
+     * @param expectedSize
+     *            the number of entries
+     * @param loadFactor
+     *            the maximum load factor
+     * @return max(1, ceiling(expectedSize / loadFactor)), capped at
+     *         MAX_HASH_TABLE_SIZE
+     * @requires expectedSize >= 0  and  loadFactor > 0
+     */
+    private static int bucketsFor(int expectedSize, double loadFactor) {
+        double buckets = Math.ceil(expectedSize / loadFactor);
+        return (int) Math.max(1, Math.min(MAX_HASH_TABLE_SIZE, buckets));
+    }
+
+    /**
+     * Rehashes, if necessary, into a table large enough to hold
+     * {@code expectedSize} entries without growing again.
+     *
+     * @param expectedSize
+     *            the number of entries the table must hold
+     * @updates this.hashTable
+     * @ensures this = #this  and
+     *          [expectedSize entries fit without rehashing, unless the table
+     *           is at its maximum size]
+     */
+    private void ensureCapacity(int expectedSize) {
+        if (expectedSize > this.growThreshold) {
+            this.rehash(this.tableSizeAtLeast(
+                    bucketsFor(expectedSize, this.maxLoadFactor)));
+        }
+    }
+
+    /**
+     * Returns the node holding {@code key}, or {@code null} if {@code key} is
+     * not in {@code this}, and records the lookup in {@code this.statistics}.
+     *
+     * @param key
+     *            the key
+     * @return the node of key, or null
+     * @updates this.statistics
+     */
+    private Node<K, V> findNode(K key) {
+        int h = key.hashCode();
+        Bucket<K, V> bucket = this.hashTable.entry(this.indexFor(h));
+        Node<K, V> node = bucket.find(key, h);
+        if (this.statistics != null) {
+            this.statistics.lookedUp(bucket.probes(node));
+        }
+        return node;
+    }
+
+    /**
+     * Reports whether {@code key} is in {@code this} without recording a
+     * lookup, so that checking a precondition does not change the statistics.
+     *
+     * @param key
+     *            the key
+     * @return true iff key is in DOMAIN(this)
+     */
+    private boolean contains(K key) {
+        int h = key.hashCode();
+        return this.hashTable.entry(this.indexFor(h)).find(key, h) != null;
+    }
+
+    /**
+     * Recomputes the table shape recorded in {@code this.statistics} from the
+     * current table.
+     *
+     * @updates this.statistics
+     */
+    private void recountStatistics() {
+        this.statistics.tableBuilt(this.hashTable.length());
+        int bucket = this.nextOccupied(0);
+        while (bucket >= 0) {
+            this.statistics.bucketResized(0,
+                    this.hashTable.entry(bucket).size());
+            bucket = this.nextOccupied(bucket + 1);
+        }
     }
 
     /*
@@ -118,9 +791,7 @@ public class Map4<K, V> extends MapSecondary<K, V> {
      * No-argument constructor.
      */
     public Map4() {
-
-        this.createNewRep(DEFAULT_HASH_TABLE_SIZE);
-
+        this(DEFAULT_HASH_TABLE_SIZE);
     }
 
     /**
@@ -132,8 +803,97 @@ public class Map4<K, V> extends MapSecondary<K, V> {
      * @ensures this = {}
      */
     public Map4(int hashTableSize) {
+        this(hashTableSize, DEFAULT_MAX_LOAD_FACTOR);
+    }
+
+    /**
+     * Constructor resulting in a hash table of initial size
+     * {@code hashTableSize} (rounded up to a power of 2 with
+     * {@link Option#POWER_OF_TWO}) that grows whenever the number of entries
+     * exceeds {@code maxLoadFactor} times the number of buckets.
+     *
+     * @param hashTableSize
+     *            initial size of hash table
+     * @param maxLoadFactor
+     *            maximum ratio of entries to buckets
+     * @param options
+     *            optional behaviors
+     * @requires 0 < hashTableSize <= 2^30  and  maxLoadFactor > 0
+     * @ensures this = {}
+     */
+    public Map4(int hashTableSize, double maxLoadFactor, Option... options) {
+        assert 0 < hashTableSize
+                && hashTableSize <= MAX_HASH_TABLE_SIZE : ""
+                        + "Violation of: 0 < hashTableSize <= 2^30";
+        assert maxLoadFactor > 0 : "Violation of: maxLoadFactor > 0";
 
-        this.createNewRep(hashTableSize);
+        this.maxLoadFactor = maxLoadFactor;
+        boolean shrinkOption = false;
+        boolean hardenedOption = false;
+        boolean powerOfTwoOption = false;
+        boolean statisticsOption = false;
+        for (Option option : options) {
+            if (option == Option.SHRINK) {
+                shrinkOption = true;
+            } else if (option == Option.HARDENED) {
+                hardenedOption = true;
+            } else if (option == Option.POWER_OF_TWO) {
+                powerOfTwoOption = true;
+            } else if (option == Option.STATISTICS) {
+                statisticsOption = true;
+            }
+        }
+        this.shrink = shrinkOption;
+        this.hardened = hardenedOption;
+        this.powerOfTwo = powerOfTwoOption;
+        if (statisticsOption) {
+            this.statistics = new Map4Statistics();
+        } else {
+            this.statistics = null;
+        }
+        if (this.powerOfTwo) {
+            this.initialSize = powerOfTwoAtLeast(hashTableSize);
+        } else {
+            this.initialSize = hashTableSize;
+        }
+        this.createNewRep(this.initialSize);
+    }
+
+    /**
+     * Returns an empty {@code Map4} whose initial hash table holds
+     * {@code expectedSize} entries without exceeding {@code maxLoadFactor}, so
+     * that adding that many entries never rehashes.
+     *
+     * @param <K>
+     *            type of {@code Map} domain (key) entries
+     * @param <V>
+     *            type of {@code Map} range (associated value) entries
+     * @param expectedSize
+     *            number of entries the map is expected to hold
+     * @param maxLoadFactor
+     *            maximum ratio of entries to buckets
+     * @param options
+     *            optional behaviors
+     * @return the new map
+     * @requires expectedSize >= 0  and  maxLoadFactor > 0
+     * @ensures withExpectedSize = {}
+     */
+    public static <K, V> Map4<K, V> withExpectedSize(int expectedSize,
+            double maxLoadFactor, Option... options) {
+        assert expectedSize >= 0 : "Violation of: expectedSize >= 0";
+        assert maxLoadFactor > 0 : "Violation of: maxLoadFactor > 0";
+
+        int buckets = bucketsFor(expectedSize, maxLoadFactor);
+        boolean powerOfTwoOption = false;
+        for (Option option : options) {
+            if (option == Option.POWER_OF_TWO) {
+                powerOfTwoOption = true;
+            }
+        }
+        if (!powerOfTwoOption && buckets < MAX_HASH_TABLE_SIZE) {
+            buckets = Math.min(MAX_HASH_TABLE_SIZE, nextPrime(buckets));
+        }
+        return new Map4<K, V>(buckets, maxLoadFactor, options);
     }
 
     /*
@@ -153,7 +913,7 @@ public class Map4<K, V> extends MapSecondary<K, V> {
 
     @Override
     public final void clear() {
-        this.createNewRep(DEFAULT_HASH_TABLE_SIZE);
+        this.createNewRep(this.initialSize);
     }
 
     @Override
@@ -170,7 +930,28 @@ public class Map4<K, V> extends MapSecondary<K, V> {
         Map4<K, V> localSource = (Map4<K, V>) source;
         this.hashTable = localSource.hashTable;
         this.size = localSource.size;
-        localSource.createNewRep(DEFAULT_HASH_TABLE_SIZE);
+        this.occupied = localSource.occupied;
+        this.removeAnyCursor = localSource.removeAnyCursor;
+        this.epoch = localSource.epoch;
+        this.tableEpoch = localSource.tableEpoch;
+        this.updateThresholds();
+        if (this.hardened == localSource.hardened
+                && this.powerOfTwo == localSource.powerOfTwo) {
+            this.seed = localSource.seed;
+        } else {
+            /*
+             * The entries were placed with the other map's bucket function, so
+             * place them again with this one's.
+             */
+            if (this.hardened) {
+                this.seed = SEED_SOURCE.nextInt();
+            }
+            this.rehash(this.tableSizeAtLeast(this.hashTable.length()));
+        }
+        if (this.statistics != null) {
+            this.recountStatistics();
+        }
+        localSource.createNewRep(localSource.initialSize);
     }
 
     /*
@@ -181,25 +962,32 @@ public class Map4<K, V> extends MapSecondary<K, V> {
     public final void add(K key, V value) {
         assert key != null : "Violation of: key is not null";
         assert value != null : "Violation of: value is not null";
-        assert !this.hasKey(key) : "Violation of: key is not in DOMAIN(this)";
+        assert !this.contains(key) : ""
+                + "Violation of: key is not in DOMAIN(this)";
 
-        int hashCode = key.hashCode();
-        int bucket = mod(hashCode, this.hashTable.length());
-        Map<K, V> rep = this.hashTable.entry(bucket);
-        rep.add(key, value);
-        this.hashTable.setEntry(bucket, rep);
+        this.addNode(new Node<K, V>(key, value, key.hashCode()));
         this.size++;
+        if (this.size > this.growThreshold) {
+            this.rehash(this.tableSizeAtLeast(2 * this.hashTable.length()));
+        }
     }
 
     @Override
     public final Pair<K, V> remove(K key) {
         assert key != null : "Violation of: key is not null";
-        assert this.hasKey(key) : "Violation of: key is in DOMAIN(this)";
+        assert this.contains(key) : "Violation of: key is in DOMAIN(this)";
 
-        int hashCode = key.hashCode();
-        int bucket = mod(hashCode, this.hashTable.length());
-        Map.Pair<K, V> element = this.hashTable.entry(bucket).remove(key);
+        int h = key.hashCode();
+        int bucket = this.indexFor(h);
+        Node<K, V> element = this.writableBucket(bucket).delete(key, h);
+        if (this.statistics != null) {
+            int length = this.hashTable.entry(bucket).size();
+            this.statistics.bucketResized(length + 1, length);
+        }
+        this.untreeifyIfShort(bucket);
+        this.unmarkIfEmpty(bucket);
         this.size--;
+        this.shrinkIfSparse();
 
         // This line added just to make the component compilable.
         return element;
@@ -208,13 +996,21 @@ public class Map4<K, V> extends MapSecondary<K, V> {
     @Override
     public final Pair<K, V> removeAny() {
         assert this.size() > 0 : "Violation of: this /= empty_set";
-        int bucket = 0;
-        while (this.hashTable.entry(bucket).size() == 0) {
-            bucket++;
+        int bucket = this.nextOccupied(this.removeAnyCursor);
+        if (bucket < 0) {
+            bucket = this.nextOccupied(0);
         }
+        this.removeAnyCursor = bucket;
 
-        Map.Pair<K, V> element = this.hashTable.entry(bucket).removeAny();
+        Node<K, V> element = this.writableBucket(bucket).poll();
+        if (this.statistics != null) {
+            int length = this.hashTable.entry(bucket).size();
+            this.statistics.bucketResized(length + 1, length);
+        }
+        this.untreeifyIfShort(bucket);
+        this.unmarkIfEmpty(bucket);
         this.size--;
+        this.shrinkIfSparse();
 
         // This line added just to make the component compilable.
         return element;
@@ -224,23 +1020,18 @@ public class Map4<K, V> extends MapSecondary<K, V> {
     @Override
     public final V value(K key) {
         assert key != null : "Violation of: key is not null";
-        assert this.hasKey(key) : "Violation of: key is in DOMAIN(this)";
-
-        int bucket = mod(key.hashCode(), this.hashTable.length());
+        assert this.contains(key) : "Violation of: key is in DOMAIN(this)";
 
         // This line added just to make the component compilable.
-        return this.hashTable.entry(bucket).value(key);
+        return this.findNode(key).value;
     }
 
     @Override
     public final boolean hasKey(K key) {
         assert key != null : "Violation of: key is not null";
 
-        int bucket = mod(key.hashCode(), this.hashTable.length());
-
         // This line added just to make the component compilable.
-        return this.hashTable.entry(bucket).hasKey(key)
-                && this.hashTable.mayBeExamined(bucket);
+        return this.findNode(key) != null;
     }
 
     @Override
@@ -255,6 +1046,1056 @@ public class Map4<K, V> extends MapSecondary<K, V> {
         return new Map4Iterator();
     }
 
+    /**
+     * Returns a {@code Spliterator} over the entries of {@code this} that
+     * splits by ranges of buckets, so that a parallel stream processes
+     * different parts of the hash table on different threads. {@code this}
+     * must not be modified while the spliterator is in use.
+     *
+     * @return a spliterator over the pairs of this
+     */
+    @Override
+    public final Spliterator<Pair<K, V>> spliterator() {
+        return new Map4Spliterator(0, this.hashTable.length(), this.size,
+                true);
+    }
+
+    /*
+     * Other methods ----------------------------------------------------------
+     */
+
+    /**
+     * Calls {@code action} once with the key and value of each entry of
+     * {@code this}, in no particular order, without allocating anything per
+     * entry.
+     *
+     * @param action
+     *            the action to call
+     * @requires action does not modify this
+     */
+    public final void forEach(BiConsumer<? super K, ? super V> action) {
+        assert action != null : "Violation of: action is not null";
+
+        int bucket = this.nextOccupied(0);
+        while (bucket >= 0) {
+            Bucket<K, V> rep = this.hashTable.entry(bucket);
+            for (Node<K, V> n = rep.first(); n != null; n = rep.successor(n)) {
+                action.accept(n.key, n.value);
+            }
+            bucket = this.nextOccupied(bucket + 1);
+        }
+    }
+
+    /**
+     * Returns a new {@code Cursor} positioned before the first entry of
+     * {@code this}. A cursor may be reused for any number of traversals (see
+     * {@link Cursor#reset}), which allocate nothing.
+     *
+     * @return a cursor over this
+     */
+    public final Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Returns a sequential {@code Stream} of the entries of {@code this}.
+     * {@code this} must not be modified while the stream is in use.
+     *
+     * @return a stream of the pairs of this
+     */
+    public final Stream<Pair<K, V>> stream() {
+        return StreamSupport.stream(this.spliterator(), false);
+    }
+
+    /**
+     * Returns a parallel {@code Stream} of the entries of {@code this}, split
+     * across threads by ranges of buckets. {@code this} must not be modified
+     * while the stream is in use.
+     *
+     * @return a parallel stream of the pairs of this
+     */
+    public final Stream<Pair<K, V>> parallelStream() {
+        return StreamSupport.stream(this.spliterator(), true);
+    }
+
+    /**
+     * Adds every (key, value) pair of {@code entries} to {@code this}. When
+     * {@code entries} is a {@code Map}, the table is sized for the combined
+     * number of entries once, up front.
+     *
+     * @param entries
+     *            the pairs to add
+     * @updates this
+     * @requires <pre>
+     * [the keys of entries are distinct and not null]  and
+     * [the values of entries are not null]  and
+     * [no key of entries is in DOMAIN(this)]  and
+     * entries is not this
+     * </pre>
+     * @ensures this = #this union [the pairs of entries]
+     */
+    public final void addAll(Iterable<? extends Pair<K, V>> entries) {
+        assert entries != null : "Violation of: entries is not null";
+        assert entries != this : "Violation of: entries is not this";
+
+        if (entries instanceof Map<?, ?>) {
+            long total = (long) this.size + ((Map<?, ?>) entries).size();
+            this.ensureCapacity((int) Math.min(Integer.MAX_VALUE, total));
+        }
+        for (Pair<K, V> p : entries) {
+            this.add(p.key(), p.value());
+        }
+    }
+
+    /**
+     * Adds the pairs ({@code keys[i]}, {@code values[i]}) to {@code this},
+     * sizing the table for them once, up front.
+     *
+     * @param keys
+     *            the keys to add
+     * @param values
+     *            the values to add, parallel to keys
+     * @updates this
+     * @requires <pre>
+     * |keys| = |values|  and
+     * [the entries of keys are distinct and not null]  and
+     * [the entries of values are not null]  and
+     * [no entry of keys is in DOMAIN(this)]
+     * </pre>
+     * @ensures <pre>
+     * this = #this union
+     *   {(keys[i], values[i]) where (0 <= i  and  i < |keys|)}
+     * </pre>
+     */
+    public final void addAll(K[] keys, V[] values) {
+        assert keys != null : "Violation of: keys is not null";
+        assert values != null : "Violation of: values is not null";
+        assert keys.length == values.length : ""
+                + "Violation of: |keys| = |values|";
+
+        long total = (long) this.size + keys.length;
+        this.ensureCapacity((int) Math.min(Integer.MAX_VALUE, total));
+        for (int i = 0; i < keys.length; i++) {
+            this.add(keys[i], values[i]);
+        }
+    }
+
+    /**
+     * Reports the value associated with {@code key}, or {@code null} if
+     * {@code key} is not in {@code this}. Unlike {@code hasKey} followed by
+     * {@code value}, this computes the hash code once and searches the bucket
+     * once.
+     *
+     * @param key
+     *            the key whose associated value is to be reported
+     * @return the value associated with key, or null
+     * @requires key is not null
+     * @ensures <pre>
+     * if key is in DOMAIN(this)
+     * then (key, valueOrNull) is in this
+     * else valueOrNull = null
+     * </pre>
+     */
+    public final V valueOrNull(K key) {
+        assert key != null : "Violation of: key is not null";
+
+        Node<K, V> node = this.findNode(key);
+        if (node == null) {
+            return null;
+        }
+        return node.value;
+    }
+
+    /**
+     * Returns an immutable view of {@code this} as it is now, in constant
+     * time. The view shares the hash table with {@code this}; afterwards,
+     * {@code this} copies the table, and each bucket, the first time it
+     * modifies them, so that the view never changes. A snapshot may be read
+     * by any number of threads (including while {@code this} is being
+     * modified by its own thread) once it has been handed to them.
+     *
+     * @return a snapshot of this
+     * @ensures snapshot = this
+     */
+    public final Snapshot<K, V> snapshot() {
+        Snapshot<K, V> result = new Snapshot<K, V>(this.hashTable,
+                this.occupied, this.size, this.hardened, this.powerOfTwo,
+                this.seed);
+        this.epoch++;
+        return result;
+    }
+
+    /**
+     * Returns the statistics of {@code this}, which the map keeps up to date
+     * as it runs.
+     *
+     * @return the statistics of this
+     * @requires [this was constructed with Option.STATISTICS]
+     */
+    public final Map4Statistics statistics() {
+        assert this.statistics != null : ""
+                + "Violation of: this was constructed with Option.STATISTICS";
+
+        return this.statistics;
+    }
+
+    @Override
+    public final V replaceValue(K key, V value) {
+        assert key != null : "Violation of: key is not null";
+        assert value != null : "Violation of: value is not null";
+        assert this.contains(key) : "Violation of: key is in DOMAIN(this)";
+
+        int h = key.hashCode();
+        Bucket<K, V> bucket = this.writableBucket(this.indexFor(h));
+        Node<K, V> node = bucket.find(key, h);
+        if (this.statistics != null) {
+            this.statistics.lookedUp(bucket.probes(node));
+        }
+        V old = node.value;
+        node.value = value;
+        return old;
+    }
+
+    /**
+     * Entry of a bucket: a (key, value) pair with the key's cached hash code
+     * and, in a {@code Chain}, a link to the next entry.
+     *
+     * @param <K>
+     *            type of key
+     * @param <V>
+     *            type of value
+     */
+    private static final class Node<K, V> implements Pair<K, V> {
+
+        /**
+         * The key.
+         */
+        private final K key;
+
+        /**
+         * The value.
+         */
+        private V value;
+
+        /**
+         * The computed result of key.hashCode().
+         */
+        private final int hash;
+
+        /**
+         * Next node of the chain, or null.
+         */
+        private Node<K, V> next;
+
+        /**
+         * Constructor.
+         *
+         * @param key
+         *            the key
+         * @param value
+         *            the value
+         * @param hash
+         *            the computed result of key.hashCode()
+         */
+        Node(K key, V value, int hash) {
+            this.key = key;
+            this.value = value;
+            this.hash = hash;
+        }
+
+        @Override
+        public K key() {
+            return this.key;
+        }
+
+        @Override
+        public V value() {
+            return this.value;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this) {
+                return true;
+            }
+            if (!(obj instanceof Pair<?, ?>)) {
+                return false;
+            }
+            Pair<?, ?> p = (Pair<?, ?>) obj;
+            return this.key.equals(p.key()) && this.value.equals(p.value());
+        }
+
+        @Override
+        public int hashCode() {
+            return this.key.hashCode() + this.value.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return "(" + this.key + "," + this.value + ")";
+        }
+
+    }
+
+    /**
+     * A bucket of a {@code Map4}: a {@code Map} whose entries are
+     * {@code Node}s, with node-level operations that take the key's hash code
+     * so that {@code Map4} computes it only once per operation.
+     *
+     * @param <K>
+     *            type of {@code Map} domain (key) entries
+     * @param <V>
+     *            type of {@code Map} range (associated value) entries
+     */
+    private abstract static class Bucket<K, V> extends MapSecondary<K, V> {
+
+        /**
+         * Value of the owning map's {@code epoch} when this was created.
+         */
+        private int epoch;
+
+        /**
+         * Returns a new bucket of the same kind holding copies of the nodes of
+         * this bucket.
+         *
+         * @return the copy
+         * @ensures copy = this  and  [copy shares no node with this]
+         */
+        abstract Bucket<K, V> copy();
+
+        /**
+         * Returns the node holding {@code key}, or null.
+         *
+         * @param key
+         *            the key
+         * @param hash
+         *            the computed result of key.hashCode()
+         * @return the node of key, or null
+         */
+        abstract Node<K, V> find(Object key, int hash);
+
+        /**
+         * Adds {@code node} to this bucket.
+         *
+         * @param node
+         *            the node
+         * @requires node.key is not in DOMAIN(this)
+         */
+        abstract void insert(Node<K, V> node);
+
+        /**
+         * Removes and returns the node holding {@code key}.
+         *
+         * @param key
+         *            the key
+         * @param hash
+         *            the computed result of key.hashCode()
+         * @return the removed node
+         * @requires key is in DOMAIN(this)
+         */
+        abstract Node<K, V> delete(Object key, int hash);
+
+        /**
+         * Removes and returns any node, or returns null if this is empty.
+         *
+         * @return the removed node, or null
+         */
+        abstract Node<K, V> poll();
+
+        /**
+         * Returns the first node of this bucket, or null if it is empty.
+         *
+         * @return the first node, or null
+         */
+        abstract Node<K, V> first();
+
+        /**
+         * Returns the node after {@code node} in this bucket, or null if
+         * {@code node} is the last.
+         *
+         * @param node
+         *            a node of this bucket
+         * @return the next node, or null
+         */
+        abstract Node<K, V> successor(Node<K, V> node);
+
+        /**
+         * Returns the number of nodes {@code find} examines to return
+         * {@code found}.
+         *
+         * @param found
+         *            the result of a call to find
+         * @return the number of nodes examined
+         */
+        abstract int probes(Node<K, V> found);
+
+        /**
+         * Moves every node of this bucket into {@code to}.
+         *
+         * @param to
+         *            the (empty) bucket to fill
+         * @return {@code to}
+         * @ensures this = {}  and  to = #this
+         */
+        final Bucket<K, V> moveAllTo(Bucket<K, V> to) {
+            Node<K, V> node = this.poll();
+            while (node != null) {
+                to.insert(node);
+                node = this.poll();
+            }
+            return to;
+        }
+
+        @Override
+        public final void add(K key, V value) {
+            this.insert(new Node<K, V>(key, value, key.hashCode()));
+        }
+
+        @Override
+        public final Pair<K, V> remove(K key) {
+            return this.delete(key, key.hashCode());
+        }
+
+        @Override
+        public final Pair<K, V> removeAny() {
+            return this.poll();
+        }
+
+        @Override
+        public final V value(K key) {
+            return this.find(key, key.hashCode()).value;
+        }
+
+        @Override
+        public final boolean hasKey(K key) {
+            return this.find(key, key.hashCode()) != null;
+        }
+
+    }
+
+    /**
+     * Bucket kept as a singly linked chain of nodes.
+     *
+     * @param <K>
+     *            type of {@code Map} domain (key) entries
+     * @param <V>
+     *            type of {@code Map} range (associated value) entries
+     */
+    private static final class Chain<K, V> extends Bucket<K, V> {
+
+        /**
+         * First node of the chain, or null.
+         */
+        private Node<K, V> head;
+
+        /**
+         * Number of nodes in the chain.
+         */
+        private int length;
+
+        @Override
+        Node<K, V> find(Object key, int hash) {
+            Node<K, V> node = this.head;
+            while (node != null && !(node.hash == hash
+                    && (node.key == key || node.key.equals(key)))) {
+                node = node.next;
+            }
+            return node;
+        }
+
+        @Override
+        Node<K, V> first() {
+            return this.head;
+        }
+
+        @Override
+        Node<K, V> successor(Node<K, V> node) {
+            return node.next;
+        }
+
+        @Override
+        Bucket<K, V> copy() {
+            Chain<K, V> result = new Chain<>();
+            for (Node<K, V> n = this.head; n != null; n = n.next) {
+                result.insert(new Node<K, V>(n.key, n.value, n.hash));
+            }
+            return result;
+        }
+
+        @Override
+        int probes(Node<K, V> found) {
+            if (found == null) {
+                return this.length;
+            }
+            int count = 1;
+            Node<K, V> node = this.head;
+            while (node != found) {
+                node = node.next;
+                count++;
+            }
+            return count;
+        }
+
+        @Override
+        void insert(Node<K, V> node) {
+            node.next = this.head;
+            this.head = node;
+            this.length++;
+        }
+
+        @Override
+        Node<K, V> delete(Object key, int hash) {
+            Node<K, V> previous = null;
+            Node<K, V> node = this.head;
+            while (!(node.hash == hash
+                    && (node.key == key || node.key.equals(key)))) {
+                previous = node;
+                node = node.next;
+            }
+            if (previous == null) {
+                this.head = node.next;
+            } else {
+                previous.next = node.next;
+            }
+            node.next = null;
+            this.length--;
+            return node;
+        }
+
+        @Override
+        Node<K, V> poll() {
+            Node<K, V> node = this.head;
+            if (node != null) {
+                this.head = node.next;
+                node.next = null;
+                this.length--;
+            }
+            return node;
+        }
+
+        @Override
+        public Map<K, V> newInstance() {
+            return new Chain<K, V>();
+        }
+
+        @Override
+        public void clear() {
+            this.head = null;
+            this.length = 0;
+        }
+
+        @Override
+        public void transferFrom(Map<K, V> source) {
+            Chain<K, V> localSource = (Chain<K, V>) source;
+            this.head = localSource.head;
+            this.length = localSource.length;
+            localSource.clear();
+        }
+
+        @Override
+        public int size() {
+            return this.length;
+        }
+
+        @Override
+        public Iterator<Pair<K, V>> iterator() {
+            return new Iterator<Pair<K, V>>() {
+
+                /**
+                 * Node to be returned next.
+                 */
+                private Node<K, V> nextNode = Chain.this.head;
+
+                @Override
+                public boolean hasNext() {
+                    return this.nextNode != null;
+                }
+
+                @Override
+                public Pair<K, V> next() {
+                    if (this.nextNode == null) {
+                        throw new NoSuchElementException();
+                    }
+                    Node<K, V> node = this.nextNode;
+                    this.nextNode = node.next;
+                    return node;
+                }
+            };
+        }
+
+    }
+
+    /**
+     * Bucket of a hardened {@code Map4} whose keys, all of one
+     * {@code Comparable} class, are kept in a balanced search tree ordered by
+     * hash code and then {@code compareTo}, so that lookups take logarithmic
+     * time even when every key has the same hash code.
+     *
+     * @param <K>
+     *            type of {@code Map} domain (key) entries
+     * @param <V>
+     *            type of {@code Map} range (associated value) entries
+     */
+    private static final class TreeBucket<K, V> extends Bucket<K, V> {
+
+        /**
+         * The class of every key in this bucket.
+         */
+        private final Class<?> keyClass;
+
+        /**
+         * The nodes, indexed by key.
+         */
+        private TreeMap<K, Node<K, V>> rep;
+
+        /**
+         * Orders keys by hash code, then by their natural order.
+         *
+         * @param a
+         *            the first key
+         * @param b
+         *            the second key
+         * @return negative, zero, or positive as a is less than, equal to, or
+         *         greater than b
+         * @requires a and b are of the same Comparable class
+         */
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        private static int compareKeys(Object a, Object b) {
+            int result = Integer.compare(a.hashCode(), b.hashCode());
+            if (result == 0) {
+                result = ((Comparable) a).compareTo(b);
+            }
+            return result;
+        }
+
+        /**
+         * Returns the class shared by every key of {@code bucket} if that
+         * class is {@code Comparable}, or {@code null} otherwise.
+         *
+         * @param bucket
+         *            the bucket
+         * @return the common Comparable key class, or null
+         */
+        static Class<?> commonComparableClass(Map<?, ?> bucket) {
+            Class<?> keyClass = null;
+            for (Pair<?, ?> p : bucket) {
+                Class<?> c = p.key().getClass();
+                if (keyClass == null) {
+                    keyClass = c;
+                } else if (c != keyClass) {
+                    return null;
+                }
+            }
+            if (keyClass == null
+                    || !Comparable.class.isAssignableFrom(keyClass)) {
+                return null;
+            }
+            return keyClass;
+        }
+
+        /**
+         * Constructor.
+         *
+         * @param keyClass
+         *            the class of every key that will be added
+         */
+        TreeBucket(Class<?> keyClass) {
+            this.keyClass = keyClass;
+            this.rep = new TreeMap<>(TreeBucket::compareKeys);
+        }
+
+        /**
+         * Reports whether {@code key} can be stored in this bucket.
+         *
+         * @param key
+         *            the key
+         * @return true iff key is of this bucket's key class
+         */
+        boolean accepts(Object key) {
+            return key.getClass() == this.keyClass;
+        }
+
+        @Override
+        Node<K, V> find(Object key, int hash) {
+            if (!this.accepts(key)) {
+                return null;
+            }
+            return this.rep.get(key);
+        }
+
+        @Override
+        Node<K, V> first() {
+            if (this.rep.isEmpty()) {
+                return null;
+            }
+            return this.rep.get(this.rep.firstKey());
+        }
+
+        @Override
+        Node<K, V> successor(Node<K, V> node) {
+            K next = this.rep.higherKey(node.key);
+            if (next == null) {
+                return null;
+            }
+            return this.rep.get(next);
+        }
+
+        @Override
+        Bucket<K, V> copy() {
+            TreeBucket<K, V> result = new TreeBucket<>(this.keyClass);
+            for (Node<K, V> n : this.rep.values()) {
+                result.insert(new Node<K, V>(n.key, n.value, n.hash));
+            }
+            return result;
+        }
+
+        @Override
+        int probes(Node<K, V> found) {
+            return Integer.SIZE - Integer.numberOfLeadingZeros(this.rep.size());
+        }
+
+        @Override
+        void insert(Node<K, V> node) {
+            assert this.accepts(node.key) : "Violation of: key is of keyClass";
+            node.next = null;
+            this.rep.put(node.key, node);
+        }
+
+        @Override
+        Node<K, V> delete(Object key, int hash) {
+            return this.rep.remove(key);
+        }
+
+        @Override
+        Node<K, V> poll() {
+            java.util.Map.Entry<K, Node<K, V>> e = this.rep.pollFirstEntry();
+            if (e == null) {
+                return null;
+            }
+            return e.getValue();
+        }
+
+        @Override
+        public Map<K, V> newInstance() {
+            return new TreeBucket<K, V>(this.keyClass);
+        }
+
+        @Override
+        public void clear() {
+            this.rep = new TreeMap<>(TreeBucket::compareKeys);
+        }
+
+        @Override
+        public void transferFrom(Map<K, V> source) {
+            TreeBucket<K, V> localSource = (TreeBucket<K, V>) source;
+            this.rep = localSource.rep;
+            localSource.clear();
+        }
+
+        @Override
+        public int size() {
+            return this.rep.size();
+        }
+
+        @Override
+        public Iterator<Pair<K, V>> iterator() {
+            final Iterator<Node<K, V>> nodes = this.rep.values().iterator();
+            return new Iterator<Pair<K, V>>() {
+                @Override
+                public boolean hasNext() {
+                    return nodes.hasNext();
+                }
+
+                @Override
+                public Pair<K, V> next() {
+                    return nodes.next();
+                }
+            };
+        }
+
+    }
+
+    /**
+     * Immutable view of a {@code Map4} at the time {@code snapshot} was
+     * called. Its methods never modify anything, so it may be shared freely
+     * between threads.
+     *
+     * @param <K>
+     *            type of {@code Map} domain (key) entries
+     * @param <V>
+     *            type of {@code Map} range (associated value) entries
+     */
+    public static final class Snapshot<K, V> implements Iterable<Pair<K, V>> {
+
+        /**
+         * The hash table, which no map modifies any more.
+         */
+        private final Array<Bucket<K, V>> hashTable;
+
+        /**
+         * Bit set of the non-empty buckets of {@code hashTable}.
+         */
+        private final long[] occupied;
+
+        /**
+         * Number of entries.
+         */
+        private final int size;
+
+        /**
+         * Whether hash codes are mixed with {@code seed}.
+         */
+        private final boolean hardened;
+
+        /**
+         * Whether buckets are selected by masking.
+         */
+        private final boolean powerOfTwo;
+
+        /**
+         * Seed of a hardened table.
+         */
+        private final int seed;
+
+        /**
+         * Constructor.
+         *
+         * @param hashTable
+         *            the hash table
+         * @param occupied
+         *            the bit set of non-empty buckets
+         * @param size
+         *            the number of entries
+         * @param hardened
+         *            whether hash codes are mixed with seed
+         * @param powerOfTwo
+         *            whether buckets are selected by masking
+         * @param seed
+         *            seed of a hardened table
+         */
+        Snapshot(Array<Bucket<K, V>> hashTable, long[] occupied, int size,
+                boolean hardened, boolean powerOfTwo, int seed) {
+            this.hashTable = hashTable;
+            this.occupied = occupied;
+            this.size = size;
+            this.hardened = hardened;
+            this.powerOfTwo = powerOfTwo;
+            this.seed = seed;
+        }
+
+        /**
+         * Returns the node holding {@code key}, or null.
+         *
+         * @param key
+         *            the key
+         * @return the node of key, or null
+         */
+        private Node<K, V> findNode(K key) {
+            int h = key.hashCode();
+            int bucket = indexFor(h, this.hashTable.length(), this.hardened,
+                    this.powerOfTwo, this.seed);
+            return this.hashTable.entry(bucket).find(key, h);
+        }
+
+        /**
+         * Reports size of {@code this}.
+         *
+         * @return the number of pairs in this
+         * @ensures size = |this|
+         */
+        public int size() {
+            return this.size;
+        }
+
+        /**
+         * Reports whether there is a pair in {@code this} whose first
+         * component is {@code key}.
+         *
+         * @param key
+         *            the key to be checked
+         * @return true iff there is a pair in this whose first component is
+         *         key
+         * @requires key is not null
+         * @ensures hasKey = (key is in DOMAIN(this))
+         */
+        public boolean hasKey(K key) {
+            assert key != null : "Violation of: key is not null";
+
+            return this.findNode(key) != null;
+        }
+
+        /**
+         * Reports the value associated with {@code key} in {@code this}.
+         *
+         * @param key
+         *            the key whose associated value is to be reported
+         * @return the value associated with key
+         * @requires key is in DOMAIN(this)
+         * @ensures (key, value) is in this
+         */
+        public V value(K key) {
+            assert key != null : "Violation of: key is not null";
+            assert this.hasKey(key) : "Violation of: key is in DOMAIN(this)";
+
+            return this.findNode(key).value;
+        }
+
+        /**
+         * Reports the value associated with {@code key}, or {@code null} if
+         * {@code key} is not in {@code this}.
+         *
+         * @param key
+         *            the key whose associated value is to be reported
+         * @return the value associated with key, or null
+         * @requires key is not null
+         */
+        public V valueOrNull(K key) {
+            assert key != null : "Violation of: key is not null";
+
+            Node<K, V> node = this.findNode(key);
+            if (node == null) {
+                return null;
+            }
+            return node.value;
+        }
+
+        /**
+         * Returns a sequential {@code Stream} of the pairs of {@code this}.
+         *
+         * @return a stream of the pairs of this
+         */
+        public Stream<Pair<K, V>> stream() {
+            return StreamSupport.stream(
+                    Spliterators.spliterator(this.iterator(), this.size,
+                            Spliterator.DISTINCT | Spliterator.NONNULL
+                                    | Spliterator.IMMUTABLE),
+                    false);
+        }
+
+        @Override
+        public Iterator<Pair<K, V>> iterator() {
+            return new Iterator<Pair<K, V>>() {
+
+                /**
+                 * Bucket from which the current bucket iterator comes.
+                 */
+                private int currentBucket = -1;
+
+                /**
+                 * Bucket iterator from which the next pair will come, or null.
+                 */
+                private Iterator<Pair<K, V>> bucketIterator = null;
+
+                @Override
+                public boolean hasNext() {
+                    while (this.bucketIterator == null
+                            || !this.bucketIterator.hasNext()) {
+                        int next = nextSetBit(Snapshot.this.occupied,
+                                this.currentBucket + 1);
+                        if (next < 0) {
+                            return false;
+                        }
+                        this.currentBucket = next;
+                        this.bucketIterator = Snapshot.this.hashTable
+                                .entry(next).iterator();
+                    }
+                    return true;
+                }
+
+                @Override
+                public Pair<K, V> next() {
+                    if (!this.hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    return this.bucketIterator.next();
+                }
+            };
+        }
+
+    }
+
+    /**
+     * Mutable position in a traversal of the entries of a {@code Map4}. A
+     * cursor starts before the first entry; each call to {@code advance}
+     * moves it to the next entry, whose key and value are then available from
+     * {@code key} and {@code value}. The map must not be modified during a
+     * traversal.
+     */
+    public final class Cursor {
+
+        /**
+         * Bucket of the current entry (-1 before the first entry).
+         */
+        private int bucket;
+
+        /**
+         * The current entry, or null.
+         */
+        private Node<K, V> node;
+
+        /**
+         * No-argument constructor.
+         */
+        Cursor() {
+            this.reset();
+        }
+
+        /**
+         * Moves {@code this} back before the first entry.
+         */
+        public void reset() {
+            this.bucket = -1;
+            this.node = null;
+        }
+
+        /**
+         * Moves {@code this} to the next entry, if there is one.
+         *
+         * @return true iff this is now at an entry
+         */
+        public boolean advance() {
+            if (this.node != null) {
+                this.node = Map4.this.hashTable.entry(this.bucket)
+                        .successor(this.node);
+            }
+            while (this.node == null) {
+                int next = Map4.this.nextOccupied(this.bucket + 1);
+                if (next < 0) {
+                    this.bucket = Map4.this.hashTable.length();
+                    return false;
+                }
+                this.bucket = next;
+                this.node = Map4.this.hashTable.entry(next).first();
+            }
+            return true;
+        }
+
+        /**
+         * Reports the key of the current entry.
+         *
+         * @return the key of the current entry
+         * @requires [the last call to advance returned true]
+         */
+        public K key() {
+            assert this.node != null : "Violation of: this is at an entry";
+
+            return this.node.key;
+        }
+
+        /**
+         * Reports the value of the current entry.
+         *
+         * @return the value of the current entry
+         * @requires [the last call to advance returned true]
+         */
+        public V value() {
+            assert this.node != null : "Violation of: this is at an entry";
+
+            return this.node.value;
+        }
+
+    }
+
     /**
      * Implementation of {@code Iterator} interface for {@code Map4}.
      */
@@ -266,22 +2107,16 @@ public class Map4<K, V> extends MapSecondary<K, V> {
         private int numberSeen;
 
         /**
-         * Bucket from which current bucket iterator comes.
+         * Position of the last element returned.
          */
-        private int currentBucket;
-
-        /**
-         * Bucket iterator from which next element will come.
-         */
-        private Iterator<Pair<K, V>> bucketIterator;
+        private final Cursor cursor;
 
         /**
          * No-argument constructor.
          */
         Map4Iterator() {
             this.numberSeen = 0;
-            this.currentBucket = 0;
-            this.bucketIterator = Map4.this.hashTable.entry(0).iterator();
+            this.cursor = new Cursor();
         }
 
         @Override
@@ -301,15 +2136,8 @@ public class Map4<K, V> extends MapSecondary<K, V> {
                 throw new NoSuchElementException();
             }
             this.numberSeen++;
-            if (this.bucketIterator.hasNext()) {
-                return this.bucketIterator.next();
-            }
-            while (!this.bucketIterator.hasNext()) {
-                this.currentBucket++;
-                this.bucketIterator = Map4.this.hashTable
-                        .entry(this.currentBucket).iterator();
-            }
-            return this.bucketIterator.next();
+            this.cursor.advance();
+            return this.cursor.node;
         }
 
         @Override
@@ -320,4 +2148,140 @@ public class Map4<K, V> extends MapSecondary<K, V> {
 
     }
 
+    /**
+     * Implementation of {@code Spliterator} interface for {@code Map4},
+     * covering the entries in a range of buckets.
+     */
+    private final class Map4Spliterator implements Spliterator<Pair<K, V>> {
+
+        /**
+         * Smallest ranges of buckets that are split further.
+         */
+        private static final int MIN_SPLIT_BUCKETS = 16;
+
+        /**
+         * First bucket of the range not yet reached (the current bucket
+         * iterator, if any, comes from an earlier one).
+         */
+        private int nextBucket;
+
+        /**
+         * One past the last bucket of the range.
+         */
+        private final int fence;
+
+        /**
+         * Estimated number of entries not yet traversed.
+         */
+        private long estimate;
+
+        /**
+         * Whether {@code estimate} is exact.
+         */
+        private boolean exact;
+
+        /**
+         * Iterator over the bucket being traversed, or null.
+         */
+        private Iterator<Pair<K, V>> bucketIterator;
+
+        /**
+         * Constructor.
+         *
+         * @param origin
+         *            first bucket of the range
+         * @param fence
+         *            one past the last bucket of the range
+         * @param estimate
+         *            estimated number of entries in the range
+         * @param exact
+         *            whether estimate is exact
+         */
+        Map4Spliterator(int origin, int fence, long estimate, boolean exact) {
+            this.nextBucket = origin;
+            this.fence = fence;
+            this.estimate = estimate;
+            this.exact = exact;
+            this.bucketIterator = null;
+        }
+
+        /**
+         * Advances {@code bucketIterator} to the next non-empty bucket of the
+         * range, if the current one is exhausted.
+         *
+         * @return true iff an entry remains
+         */
+        private boolean ensureBucket() {
+            while (this.bucketIterator == null
+                    || !this.bucketIterator.hasNext()) {
+                int bucket = -1;
+                if (this.nextBucket < this.fence) {
+                    bucket = Map4.this.nextOccupied(this.nextBucket);
+                }
+                if (bucket < 0 || bucket >= this.fence) {
+                    this.nextBucket = this.fence;
+                    this.bucketIterator = null;
+                    return false;
+                }
+                this.nextBucket = bucket + 1;
+                this.bucketIterator = Map4.this.hashTable.entry(bucket)
+                        .iterator();
+            }
+            return true;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Pair<K, V>> action) {
+            if (!this.ensureBucket()) {
+                return false;
+            }
+            action.accept(this.bucketIterator.next());
+            if (this.estimate > 0) {
+                this.estimate--;
+            }
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super Pair<K, V>> action) {
+            while (this.ensureBucket()) {
+                while (this.bucketIterator.hasNext()) {
+                    action.accept(this.bucketIterator.next());
+                }
+            }
+            this.estimate = 0;
+        }
+
+        @Override
+        public Spliterator<Pair<K, V>> trySplit() {
+            int remaining = this.fence - this.nextBucket;
+            if (remaining < MIN_SPLIT_BUCKETS) {
+                return null;
+            }
+            int middle = this.nextBucket + remaining / 2;
+            long half = this.estimate / 2;
+            Spliterator<Pair<K, V>> prefix = new Map4Spliterator(
+                    this.nextBucket, middle, half, false);
+            this.nextBucket = middle;
+            this.estimate -= half;
+            this.exact = false;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return this.estimate;
+        }
+
+        @Override
+        public int characteristics() {
+            int characteristics = Spliterator.DISTINCT | Spliterator.NONNULL;
+            if (this.exact) {
+                characteristics |= Spliterator.SIZED;
+            }
+            return characteristics;
+        }
+
+    }
+
 }
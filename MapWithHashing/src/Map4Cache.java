@@ -0,0 +1,694 @@
+import java.util.function.Function;
+import java.util.function.ToIntBiFunction;
+
+/**
+ * Cache of key-value associations, indexed by a {@code Map4}, holding at most
+ * a given total weight (by default, a given number of entries). When an
+ * addition would exceed the bound, the least recently used entries are
+ * evicted; with {@link Policy#TINY_LFU}, a new entry is admitted only if it has
+ * been asked for more often, recently, than every entry it would evict, so a
+ * burst of one-off keys cannot flush out the frequently used ones. A loader,
+ * if given, computes the value of a key that is asked for but absent.
+ *
+ * <p>
+ * Like {@code Map4}, a {@code Map4Cache} is not safe for use by several threads
+ * at once.
+ *
+ * @param <K>
+ *            type of keys
+ * @param <V>
+ *            type of values
+ * @convention <pre>
+ * $this.weight = [sum of the weights of the nodes in $this.index]  and
+ * $this.weight <= $this.maximumWeight  and
+ * [the nodes of $this.index, and only those, are linked in a circular list
+ *  through $this.head, from least (head.next) to most (head.prev) recently
+ *  used]  and
+ * ($this.policy = TINY_LFU  iff  $this.sketch /= null)
+ * </pre>
+ * @correspondence <pre>
+ * this = {(k, v) where (k is in DOMAIN($this.index)  and
+ *                       $this.index(k).value = v)}
+ * </pre>
+ */
+public final class Map4Cache<K, V> {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Maximum load factor of the index.
+     */
+    private static final double INDEX_LOAD_FACTOR = 0.75;
+
+    /**
+     * Largest number of entries the index is initially sized for.
+     */
+    private static final int MAX_INITIAL_ENTRIES = 1 << 16;
+
+    /**
+     * Eviction policies.
+     */
+    public enum Policy {
+        /**
+         * Evict the least recently used entries.
+         */
+        LRU,
+
+        /**
+         * Evict the least recently used entries, but only to make room for a
+         * new entry that is estimated to be used more often than each of the
+         * ones evicted; otherwise, the new entry is not added.
+         */
+        TINY_LFU
+    }
+
+    /**
+     * Entries, by key.
+     */
+    private final Map4<K, Node<K, V>> index;
+
+    /**
+     * Sentinel of the recency list.
+     */
+    private final Node<K, V> head;
+
+    /**
+     * Maximum total weight of the entries.
+     */
+    private final long maximumWeight;
+
+    /**
+     * Eviction policy.
+     */
+    private final Policy policy;
+
+    /**
+     * Computes the weight of an entry.
+     */
+    private final ToIntBiFunction<? super K, ? super V> weigher;
+
+    /**
+     * Computes the value of an absent key, or null.
+     */
+    private final Function<? super K, ? extends V> loader;
+
+    /**
+     * Recent access frequencies, with {@link Policy#TINY_LFU}; otherwise null.
+     */
+    private final FrequencySketch sketch;
+
+    /**
+     * Total weight of the entries.
+     */
+    private long weight;
+
+    /**
+     * Number of lookups that found their key.
+     */
+    private long hits;
+
+    /**
+     * Number of lookups that did not find their key.
+     */
+    private long misses;
+
+    /**
+     * Number of entries evicted, or refused admission, to respect the bound.
+     */
+    private long evictions;
+
+    /**
+     * Entry of the cache, and element of the recency list.
+     *
+     * @param <K>
+     *            type of key
+     * @param <V>
+     *            type of value
+     */
+    private static final class Node<K, V> {
+
+        /**
+         * The key.
+         */
+        private final K key;
+
+        /**
+         * The value.
+         */
+        private V value;
+
+        /**
+         * The weight of the entry.
+         */
+        private int weight;
+
+        /**
+         * Previous (less recently used) node.
+         */
+        private Node<K, V> prev;
+
+        /**
+         * Next (more recently used) node.
+         */
+        private Node<K, V> next;
+
+        /**
+         * Constructor.
+         *
+         * @param key
+         *            the key
+         * @param value
+         *            the value
+         * @param weight
+         *            the weight
+         */
+        Node(K key, V value, int weight) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+            this.prev = this;
+            this.next = this;
+        }
+
+    }
+
+    /**
+     * Count-min sketch of 4-bit counters estimating how often each key has
+     * been used recently. All counters are halved whenever the number of
+     * recorded uses reaches a sample size, so old popularity fades.
+     */
+    private static final class FrequencySketch {
+
+        /**
+         * Number of counters updated per key.
+         */
+        private static final int DEPTH = 4;
+
+        /**
+         * Seeds of the hash functions, one per counter updated.
+         */
+        private static final int[] SEEDS = {0x97cb3127, 0xb3b2d3f7,
+                0xd9b3d6f5, 0x85ebca6b };
+
+        /**
+         * Largest value of a counter.
+         */
+        private static final int MAX_COUNT = 15;
+
+        /**
+         * Number of recorded uses, per entry the cache can hold, between
+         * halvings.
+         */
+        private static final int SAMPLE_FACTOR = 10;
+
+        /**
+         * Smallest number of counter words.
+         */
+        private static final int MIN_WORDS = 64;
+
+        /**
+         * Largest number of counter words.
+         */
+        private static final int MAX_WORDS = 1 << 24;
+
+        /**
+         * Mask of the low three bits of each 4-bit counter.
+         */
+        private static final long HALF_MASK = 0x7777777777777777L;
+
+        /**
+         * Sixteen 4-bit counters per word.
+         */
+        private final long[] table;
+
+        /**
+         * Number of uses to record before halving the counters.
+         */
+        private final int sampleSize;
+
+        /**
+         * Number of uses recorded since the counters were last halved.
+         */
+        private int samples;
+
+        /**
+         * Constructor of a sketch with one word (sixteen counters) per entry
+         * the cache can hold, rounded up to a power of 2 and at least
+         * {@code MIN_WORDS}.
+         *
+         * @param entries
+         *            the number of entries the cache can hold
+         */
+        FrequencySketch(long entries) {
+            int wanted = (int) Math.max(MIN_WORDS,
+                    Math.min(MAX_WORDS, entries));
+            int words = Integer.highestOneBit(wanted);
+            if (words < wanted) {
+                words <<= 1;
+            }
+            this.table = new long[words];
+            this.sampleSize = SAMPLE_FACTOR * words;
+        }
+
+        /**
+         * Returns the position (word index times 16 plus counter index) of
+         * counter {@code i} of a key whose hash code is {@code h}.
+         *
+         * @param h
+         *            the key's hash code
+         * @param i
+         *            which of the key's counters
+         * @return the position of the counter
+         */
+        private int position(int h, int i) {
+            int x = (h ^ SEEDS[i]) * SEEDS[(i + 1) % DEPTH];
+            x ^= x >>> 15;
+            return x & (this.table.length * 16 - 1);
+        }
+
+        /**
+         * Returns the value of the counter at {@code position}.
+         *
+         * @param position
+         *            the position of the counter
+         * @return the counter's value
+         */
+        private int counter(int position) {
+            int shift = (position & 15) << 2;
+            return (int) (this.table[position >>> 4] >>> shift) & MAX_COUNT;
+        }
+
+        /**
+         * Estimates how often {@code key} has been used recently.
+         *
+         * @param key
+         *            the key
+         * @return the estimated frequency of key
+         */
+        int frequency(Object key) {
+            int h = key.hashCode();
+            int result = MAX_COUNT;
+            for (int i = 0; i < DEPTH; i++) {
+                result = Math.min(result, this.counter(this.position(h, i)));
+            }
+            return result;
+        }
+
+        /**
+         * Records a use of {@code key}.
+         *
+         * @param key
+         *            the key
+         */
+        void increment(Object key) {
+            int h = key.hashCode();
+            boolean added = false;
+            for (int i = 0; i < DEPTH; i++) {
+                int position = this.position(h, i);
+                if (this.counter(position) < MAX_COUNT) {
+                    this.table[position >>> 4] += 1L << ((position & 15) << 2);
+                    added = true;
+                }
+            }
+            if (added) {
+                this.samples++;
+                if (this.samples >= this.sampleSize) {
+                    for (int i = 0; i < this.table.length; i++) {
+                        this.table[i] = (this.table[i] >>> 1) & HALF_MASK;
+                    }
+                    this.samples /= 2;
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Removes {@code node} from the recency list.
+     *
+     * @param <K>
+     *            type of key
+     * @param <V>
+     *            type of value
+     * @param node
+     *            the node
+     */
+    private static <K, V> void unlink(Node<K, V> node) {
+        node.prev.next = node.next;
+        node.next.prev = node.prev;
+    }
+
+    /**
+     * Links {@code node} into the recency list as the most recently used.
+     *
+     * @param node
+     *            the node
+     * @updates this.head
+     */
+    private void linkLast(Node<K, V> node) {
+        node.prev = this.head.prev;
+        node.next = this.head;
+        this.head.prev.next = node;
+        this.head.prev = node;
+    }
+
+    /**
+     * Removes the least recently used entry.
+     *
+     * @updates this
+     * @requires |this| > 0
+     */
+    private void evictEldest() {
+        Node<K, V> eldest = this.head.next;
+        unlink(eldest);
+        this.index.remove(eldest.key);
+        this.weight -= eldest.weight;
+        this.evictions++;
+    }
+
+    /**
+     * Returns the weight of the entry ({@code key}, {@code value}).
+     *
+     * @param key
+     *            the key
+     * @param value
+     *            the value
+     * @return the entry's weight
+     */
+    private int weigh(K key, V value) {
+        int w = this.weigher.applyAsInt(key, value);
+        assert w >= 0 : "Violation of: weights are not negative";
+        return w;
+    }
+
+    /**
+     * Reports whether {@link Policy#TINY_LFU} admits a new entry for
+     * {@code key} of weight {@code w}, that is, whether {@code key} is
+     * estimated to be used more often than every entry that would be evicted
+     * to make room for it.
+     *
+     * @param key
+     *            the key
+     * @param w
+     *            the weight of the new entry
+     * @return true iff the new entry is admitted
+     * @requires this.sketch /= null  and  w <= this.maximumWeight
+     */
+    private boolean admits(K key, int w) {
+        int frequency = this.sketch.frequency(key);
+        long excess = this.weight + w - this.maximumWeight;
+        Node<K, V> victim = this.head.next;
+        while (excess > 0) {
+            if (this.sketch.frequency(victim.key) >= frequency) {
+                return false;
+            }
+            excess -= victim.weight;
+            victim = victim.next;
+        }
+        return true;
+    }
+
+    /**
+     * Adds a new entry, evicting as necessary, unless the policy refuses it.
+     *
+     * @param key
+     *            the key
+     * @param value
+     *            the value
+     * @updates this
+     * @requires key is not in DOMAIN(this)
+     */
+    private void addNew(K key, V value) {
+        int w = this.weigh(key, value);
+        if (w > this.maximumWeight) {
+            this.evictions++;
+            return;
+        }
+        if (this.sketch != null && !this.admits(key, w)) {
+            this.evictions++;
+            return;
+        }
+        while (this.weight + w > this.maximumWeight) {
+            this.evictEldest();
+        }
+        Node<K, V> node = new Node<>(key, value, w);
+        this.index.add(key, node);
+        this.linkLast(node);
+        this.weight += w;
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * Constructor of a cache holding at most {@code maximumSize} entries,
+     * without a loader.
+     *
+     * @param maximumSize
+     *            maximum number of entries
+     * @param policy
+     *            eviction policy
+     * @requires maximumSize > 0
+     * @ensures this = {}
+     */
+    public Map4Cache(long maximumSize, Policy policy) {
+        this(maximumSize, policy, (k, v) -> 1, null);
+    }
+
+    /**
+     * Constructor of a cache holding entries of total weight at most
+     * {@code maximumWeight}.
+     *
+     * @param maximumWeight
+     *            maximum total weight of the entries
+     * @param policy
+     *            eviction policy
+     * @param weigher
+     *            computes the (non-negative) weight of an entry
+     * @param loader
+     *            computes the value of a key asked for but absent (returning
+     *            null if there is none), or null for no loader
+     * @requires maximumWeight > 0
+     * @ensures this = {}
+     */
+    public Map4Cache(long maximumWeight, Policy policy,
+            ToIntBiFunction<? super K, ? super V> weigher,
+            Function<? super K, ? extends V> loader) {
+        assert maximumWeight > 0 : "Violation of: maximumWeight > 0";
+        assert policy != null : "Violation of: policy is not null";
+        assert weigher != null : "Violation of: weigher is not null";
+
+        this.maximumWeight = maximumWeight;
+        this.policy = policy;
+        this.weigher = weigher;
+        this.loader = loader;
+        this.index = Map4.withExpectedSize(
+                (int) Math.min(MAX_INITIAL_ENTRIES, maximumWeight),
+                INDEX_LOAD_FACTOR, Map4.Option.POWER_OF_TWO);
+        this.head = new Node<>(null, null, 0);
+        if (policy == Policy.TINY_LFU) {
+            this.sketch = new FrequencySketch(
+                    Math.min(MAX_INITIAL_ENTRIES, maximumWeight));
+        } else {
+            this.sketch = null;
+        }
+    }
+
+    /*
+     * Methods ----------------------------------------------------------------
+     */
+
+    /**
+     * Returns the value associated with {@code key}, marking it most recently
+     * used. If {@code key} is absent and there is a loader, the loader
+     * computes the value, which is then added (subject to the bound and the
+     * policy) and returned.
+     *
+     * @param key
+     *            the key
+     * @return the value of key, or null if it is absent and not loaded
+     * @updates this
+     * @requires key is not null
+     */
+    public V valueOrNull(K key) {
+        assert key != null : "Violation of: key is not null";
+
+        if (this.sketch != null) {
+            this.sketch.increment(key);
+        }
+        Node<K, V> node = this.index.valueOrNull(key);
+        if (node != null) {
+            this.hits++;
+            unlink(node);
+            this.linkLast(node);
+            return node.value;
+        }
+        this.misses++;
+        V value = null;
+        if (this.loader != null) {
+            value = this.loader.apply(key);
+            if (value != null) {
+                this.addNew(key, value);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Associates {@code value} with {@code key}, marking it most recently
+     * used, and evicts entries as necessary to respect the bound. With
+     * {@link Policy#TINY_LFU}, a new key may be refused instead.
+     *
+     * @param key
+     *            the key
+     * @param value
+     *            the value
+     * @updates this
+     * @requires key is not null  and  value is not null
+     */
+    public void put(K key, V value) {
+        assert key != null : "Violation of: key is not null";
+        assert value != null : "Violation of: value is not null";
+
+        if (this.sketch != null) {
+            this.sketch.increment(key);
+        }
+        Node<K, V> node = this.index.valueOrNull(key);
+        if (node == null) {
+            this.addNew(key, value);
+        } else {
+            int w = this.weigh(key, value);
+            this.weight += w - node.weight;
+            node.value = value;
+            node.weight = w;
+            unlink(node);
+            this.linkLast(node);
+            while (this.weight > this.maximumWeight) {
+                this.evictEldest();
+            }
+        }
+    }
+
+    /**
+     * Removes {@code key} and its value, if present.
+     *
+     * @param key
+     *            the key
+     * @return the value that was associated with key, or null
+     * @updates this
+     * @requires key is not null
+     */
+    public V remove(K key) {
+        assert key != null : "Violation of: key is not null";
+
+        Node<K, V> node = this.index.valueOrNull(key);
+        if (node == null) {
+            return null;
+        }
+        this.index.remove(key);
+        unlink(node);
+        this.weight -= node.weight;
+        return node.value;
+    }
+
+    /**
+     * Reports whether {@code key} is in {@code this}, without counting as a
+     * use of it.
+     *
+     * @param key
+     *            the key
+     * @return true iff key is in DOMAIN(this)
+     * @requires key is not null
+     */
+    public boolean hasKey(K key) {
+        assert key != null : "Violation of: key is not null";
+
+        return this.index.hasKey(key);
+    }
+
+    /**
+     * Removes every entry. The counters and frequency estimates are kept.
+     *
+     * @clears this
+     */
+    public void clear() {
+        this.index.clear();
+        this.head.prev = this.head;
+        this.head.next = this.head;
+        this.weight = 0;
+    }
+
+    /**
+     * Reports the number of entries.
+     *
+     * @return |this|
+     */
+    public int size() {
+        return this.index.size();
+    }
+
+    /**
+     * Reports the total weight of the entries.
+     *
+     * @return the total weight of this
+     */
+    public long weight() {
+        return this.weight;
+    }
+
+    /**
+     * Reports the eviction policy.
+     *
+     * @return the policy
+     */
+    public Policy policy() {
+        return this.policy;
+    }
+
+    /**
+     * Reports the number of calls to {@code valueOrNull} that found their
+     * key.
+     *
+     * @return the number of hits
+     */
+    public long hits() {
+        return this.hits;
+    }
+
+    /**
+     * Reports the number of calls to {@code valueOrNull} that did not find
+     * their key (whether or not it was then loaded).
+     *
+     * @return the number of misses
+     */
+    public long misses() {
+        return this.misses;
+    }
+
+    /**
+     * Reports the number of entries evicted, or refused admission, to respect
+     * the bound.
+     *
+     * @return the number of evictions
+     */
+    public long evictions() {
+        return this.evictions;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder("{");
+        for (Node<K, V> n = this.head.next; n != this.head; n = n.next) {
+            if (n != this.head.next) {
+                result.append(",");
+            }
+            result.append("(").append(n.key).append(",").append(n.value)
+                    .append(")");
+        }
+        return result.append("}").toString();
+    }
+
+}
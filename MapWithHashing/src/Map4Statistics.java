@@ -0,0 +1,281 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Statistics of a {@code Map4} constructed with
+ * {@code Map4.Option.STATISTICS}: the shape of its hash table, the cost of
+ * its lookups, and the cost of its rehashing. The map updates them as it
+ * runs; they may be read at any time, from any thread, directly or over JMX
+ * once {@code register} has been called. Values read while the map is being
+ * modified may be slightly inconsistent with each other.
+ */
+public final class Map4Statistics implements Map4StatisticsMXBean {
+
+    /**
+     * Number of elements of the bucket histogram; the last counts every
+     * bucket at least this long minus one.
+     */
+    private static final int HISTOGRAM_BINS = 17;
+
+    /**
+     * Nanoseconds per millisecond.
+     */
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    /**
+     * Number of buckets holding each number of entries.
+     */
+    private final AtomicLongArray histogram = new AtomicLongArray(
+            HISTOGRAM_BINS);
+
+    /**
+     * Number of entries of the map.
+     */
+    private volatile int size;
+
+    /**
+     * Number of buckets of the map.
+     */
+    private volatile int bucketCount;
+
+    /**
+     * Longest bucket since the table was last built.
+     */
+    private volatile int maxChainLength;
+
+    /**
+     * Number of lookups.
+     */
+    private final LongAdder lookups = new LongAdder();
+
+    /**
+     * Number of entries examined by lookups.
+     */
+    private final LongAdder probes = new LongAdder();
+
+    /**
+     * Number of rehashes.
+     */
+    private final LongAdder rehashes = new LongAdder();
+
+    /**
+     * Time spent rehashing, in nanoseconds.
+     */
+    private final LongAdder rehashNanos = new LongAdder();
+
+    /**
+     * Name under which this is registered with the platform MBean server, or
+     * null.
+     */
+    private ObjectName registeredName;
+
+    /**
+     * Returns the histogram element counting buckets of {@code length}
+     * entries.
+     *
+     * @param length
+     *            the bucket length
+     * @return the histogram index for length
+     */
+    private static int binOf(int length) {
+        return Math.min(length, HISTOGRAM_BINS - 1);
+    }
+
+    /**
+     * Constructor, used only by {@code Map4}.
+     */
+    Map4Statistics() {
+    }
+
+    /**
+     * Records that the map's hash table was replaced by {@code buckets} empty
+     * buckets.
+     *
+     * @param buckets
+     *            the number of buckets of the new table
+     */
+    void tableBuilt(int buckets) {
+        for (int i = 0; i < HISTOGRAM_BINS; i++) {
+            this.histogram.set(i, 0);
+        }
+        this.histogram.set(0, buckets);
+        this.bucketCount = buckets;
+        this.maxChainLength = 0;
+        this.size = 0;
+    }
+
+    /**
+     * Records that a bucket went from {@code oldLength} to {@code newLength}
+     * entries.
+     *
+     * @param oldLength
+     *            the bucket's previous length
+     * @param newLength
+     *            the bucket's new length
+     */
+    void bucketResized(int oldLength, int newLength) {
+        int oldBin = binOf(oldLength);
+        int newBin = binOf(newLength);
+        if (oldBin != newBin) {
+            this.histogram.decrementAndGet(oldBin);
+            this.histogram.incrementAndGet(newBin);
+        }
+        if (newLength > this.maxChainLength) {
+            this.maxChainLength = newLength;
+        }
+        this.size += newLength - oldLength;
+    }
+
+    /**
+     * Records a lookup that examined {@code examined} entries.
+     *
+     * @param examined
+     *            the number of entries examined
+     */
+    void lookedUp(int examined) {
+        this.lookups.increment();
+        this.probes.add(examined);
+    }
+
+    /**
+     * Records a rehash that took {@code nanos} nanoseconds.
+     *
+     * @param nanos
+     *            the duration of the rehash
+     */
+    void rehashed(long nanos) {
+        this.rehashes.increment();
+        this.rehashNanos.add(nanos);
+    }
+
+    /**
+     * Registers {@code this} with the platform MBean server under the name
+     * {@code Map4:type=Statistics,name=<name>}.
+     *
+     * @param name
+     *            name distinguishing this map from others
+     * @throws JMException
+     *             if the name is malformed or already registered
+     * @requires this is not registered
+     */
+    public void register(String name) throws JMException {
+        assert this.registeredName == null : ""
+                + "Violation of: this is not registered";
+
+        ObjectName objectName = new ObjectName(
+                "Map4:type=Statistics,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+                objectName);
+        this.registeredName = objectName;
+    }
+
+    /**
+     * Removes {@code this} from the platform MBean server, if registered.
+     *
+     * @throws JMException
+     *             if the MBean server refuses
+     */
+    public void unregister() throws JMException {
+        if (this.registeredName != null) {
+            ManagementFactory.getPlatformMBeanServer()
+                    .unregisterMBean(this.registeredName);
+            this.registeredName = null;
+        }
+    }
+
+    @Override
+    public int getSize() {
+        return this.size;
+    }
+
+    @Override
+    public int getBucketCount() {
+        return this.bucketCount;
+    }
+
+    @Override
+    public double getLoadFactor() {
+        return (double) this.size / this.bucketCount;
+    }
+
+    @Override
+    public int getNonEmptyBuckets() {
+        return this.bucketCount - (int) this.histogram.get(0);
+    }
+
+    @Override
+    public double getMeanChainLength() {
+        int nonEmpty = this.getNonEmptyBuckets();
+        if (nonEmpty == 0) {
+            return 0;
+        }
+        return (double) this.size / nonEmpty;
+    }
+
+    @Override
+    public int getMaxChainLength() {
+        return this.maxChainLength;
+    }
+
+    @Override
+    public long[] getBucketHistogram() {
+        long[] result = new long[HISTOGRAM_BINS];
+        for (int i = 0; i < HISTOGRAM_BINS; i++) {
+            result[i] = this.histogram.get(i);
+        }
+        return result;
+    }
+
+    @Override
+    public long getLookups() {
+        return this.lookups.sum();
+    }
+
+    @Override
+    public long getProbes() {
+        return this.probes.sum();
+    }
+
+    @Override
+    public double getMeanProbes() {
+        long n = this.lookups.sum();
+        if (n == 0) {
+            return 0;
+        }
+        return (double) this.probes.sum() / n;
+    }
+
+    @Override
+    public long getRehashes() {
+        return this.rehashes.sum();
+    }
+
+    @Override
+    public double getRehashMillis() {
+        return this.rehashNanos.sum() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public void resetCounters() {
+        this.lookups.reset();
+        this.probes.reset();
+        this.rehashes.reset();
+        this.rehashNanos.reset();
+    }
+
+    @Override
+    public String toString() {
+        return "size=" + this.getSize() + " buckets=" + this.getBucketCount()
+                + " nonEmpty=" + this.getNonEmptyBuckets() + " maxChain="
+                + this.getMaxChainLength() + " meanChain="
+                + this.getMeanChainLength() + " lookups=" + this.getLookups()
+                + " meanProbes=" + this.getMeanProbes() + " rehashes="
+                + this.getRehashes() + " rehashMillis="
+                + this.getRehashMillis();
+    }
+
+}
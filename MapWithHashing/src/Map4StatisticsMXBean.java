@@ -0,0 +1,105 @@
+/**
+ * Management interface of {@code Map4Statistics}, through which the
+ * statistics of a {@code Map4} can be read over JMX (for example with
+ * jconsole).
+ */
+public interface Map4StatisticsMXBean {
+
+    /**
+     * Reports the number of entries in the map.
+     *
+     * @return |map|
+     */
+    int getSize();
+
+    /**
+     * Reports the number of buckets in the map's hash table.
+     *
+     * @return |map.hashTable.entries|
+     */
+    int getBucketCount();
+
+    /**
+     * Reports the ratio of entries to buckets.
+     *
+     * @return getSize() / getBucketCount()
+     */
+    double getLoadFactor();
+
+    /**
+     * Reports the number of buckets holding at least one entry.
+     *
+     * @return the number of non-empty buckets
+     */
+    int getNonEmptyBuckets();
+
+    /**
+     * Reports the mean number of entries of the non-empty buckets.
+     *
+     * @return getSize() / getNonEmptyBuckets(), or 0 if the map is empty
+     */
+    double getMeanChainLength();
+
+    /**
+     * Reports the length of the longest bucket since the hash table was last
+     * built (by construction, {@code clear}, or a rehash); removals since then
+     * are not taken into account.
+     *
+     * @return the longest bucket length since the table was built
+     */
+    int getMaxChainLength();
+
+    /**
+     * Reports the bucket occupancy histogram: element {@code k} is the number
+     * of buckets holding exactly {@code k} entries, except that the last
+     * element counts every bucket holding at least that many.
+     *
+     * @return the histogram
+     */
+    long[] getBucketHistogram();
+
+    /**
+     * Reports the number of key lookups ({@code hasKey}, {@code value},
+     * {@code valueOrNull} and {@code replaceValue} calls) since the counters
+     * were last reset. Checking preconditions with assertions is not counted.
+     *
+     * @return the number of lookups
+     */
+    long getLookups();
+
+    /**
+     * Reports the number of entries examined by those lookups.
+     *
+     * @return the number of probes
+     */
+    long getProbes();
+
+    /**
+     * Reports the mean number of entries examined per lookup.
+     *
+     * @return getProbes() / getLookups(), or 0 if there were no lookups
+     */
+    double getMeanProbes();
+
+    /**
+     * Reports the number of times the hash table was rebuilt at a new size
+     * since the counters were last reset.
+     *
+     * @return the number of rehashes
+     */
+    long getRehashes();
+
+    /**
+     * Reports the total time spent rehashing since the counters were last
+     * reset.
+     *
+     * @return the rehash time, in milliseconds
+     */
+    double getRehashMillis();
+
+    /**
+     * Sets the lookup, probe and rehash counters to zero.
+     */
+    void resetCounters();
+
+}
@@ -0,0 +1,525 @@
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import components.map.Map;
+import components.map.MapSecondary;
+
+/**
+ * {@code Map} represented as an open-addressing hash table with linear probing,
+ * storing keys, values, and cached hash codes in parallel arrays, with
+ * implementations of primary methods.
+ *
+ * @param <K>
+ *            type of {@code Map} domain (key) entries
+ * @param <V>
+ *            type of {@code Map} range (associated value) entries
+ * @convention <pre>
+ * |$this.keys| = |$this.values| = |$this.hashes|  and
+ * [|$this.keys| is a power of 2]  and
+ * $this.size <= $this.growThreshold < |$this.keys|  and
+ * $this.size = [number of i such that $this.keys[i] /= null]  and
+ * for all i: integer
+ *     where (0 <= i  and  i < |$this.keys|  and  $this.keys[i] /= null)
+ *   ($this.values[i] /= null  and
+ *    $this.hashes[i] = spread([computed result of $this.keys[i].hashCode()])
+ *    and  [every slot from home($this.hashes[i]) up to i, wrapping around
+ *          the end of the arrays, holds a non-null key])  and
+ * [no two non-null entries of $this.keys are equal]
+ * </pre>
+ * @correspondence <pre>
+ * this = {(k, v): (K, V)
+ *            where (there exists i: integer
+ *                     (0 <= i  and  i < |$this.keys|  and
+ *                      $this.keys[i] = k  and  $this.values[i] = v))}
+ * </pre>
+ *
+ * @author Put your name here
+ *
+ */
+public class Map5<K, V> extends MapSecondary<K, V> {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Default number of slots of the table.
+     */
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * Largest number of slots the table will grow to.
+     */
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    /**
+     * The table grows when more than this fraction of its slots are used.
+     */
+    private static final double MAX_LOAD_FACTOR = 0.75;
+
+    /**
+     * Keys, indexed by slot ({@code null} for an empty slot).
+     */
+    private Object[] keys;
+
+    /**
+     * Values, indexed by slot.
+     */
+    private Object[] values;
+
+    /**
+     * Spread hash codes of the keys, indexed by slot.
+     */
+    private int[] hashes;
+
+    /**
+     * Total size of abstract {@code this}.
+     */
+    private int size;
+
+    /**
+     * Size above which the table is doubled.
+     */
+    private int growThreshold;
+
+    /**
+     * Slot from which {@code removeAny} resumes looking for an entry.
+     */
+    private int removeAnyCursor;
+
+    /**
+     * Returns {@code h} with its high bits folded into its low bits, so that
+     * masking with a power of 2 still depends on all of {@code h}.
+     *
+     * @param h
+     *            the hash code to spread
+     * @return the spread hash code
+     */
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Returns the smallest power of 2 that is at least {@code n}.
+     *
+     * @param n
+     *            the lower bound
+     * @return the smallest power of 2 >= n
+     * @requires 0 < n <= MAX_CAPACITY
+     * @ensures [powerOfTwoAtLeast is a power of 2]  and
+     *          n <= powerOfTwoAtLeast < 2 * n
+     */
+    private static int powerOfTwoAtLeast(int n) {
+        assert 0 < n && n <= MAX_CAPACITY : ""
+                + "Violation of: 0 < n <= MAX_CAPACITY";
+
+        int p = 1;
+        while (p < n) {
+            p <<= 1;
+        }
+        return p;
+    }
+
+    /**
+     * Creator of initial representation.
+     *
+     * @param capacity
+     *            the number of slots of the table
+     * @requires [capacity is a power of 2]  and  capacity >= 2
+     * @ensures <pre>
+     * |$this.keys| = capacity  and
+     * [all entries of $this.keys are null]  and
+     * $this.size = 0
+     * </pre>
+     */
+    private void createNewRep(int capacity) {
+        this.keys = new Object[capacity];
+        this.values = new Object[capacity];
+        this.hashes = new int[capacity];
+        this.size = 0;
+        this.removeAnyCursor = 0;
+        this.growThreshold = Math.min(capacity - 1,
+                (int) (capacity * MAX_LOAD_FACTOR));
+    }
+
+    /**
+     * Returns the slot holding {@code key}, or -1 if {@code key} is not in
+     * the table.
+     *
+     * @param key
+     *            the key to look for
+     * @param hash
+     *            the spread hash code of {@code key}
+     * @return the slot of {@code key}, or -1
+     * @ensures <pre>
+     * if key is in DOMAIN(this) then $this.keys[indexOf] = key
+     * else indexOf = -1
+     * </pre>
+     */
+    private int indexOf(Object key, int hash) {
+        int mask = this.keys.length - 1;
+        int i = hash & mask;
+        Object k = this.keys[i];
+        while (k != null) {
+            if (this.hashes[i] == hash && (k == key || k.equals(key))) {
+                return i;
+            }
+            i = (i + 1) & mask;
+            k = this.keys[i];
+        }
+        return -1;
+    }
+
+    /**
+     * Stores an entry in the first free slot of its probe sequence, without
+     * checking for duplicates or growing the table.
+     *
+     * @param key
+     *            the key
+     * @param value
+     *            the associated value
+     * @param hash
+     *            the spread hash code of {@code key}
+     * @updates $this.keys, $this.values, $this.hashes
+     * @requires key is not in DOMAIN(this)  and  [the table has a free slot]
+     */
+    private void insert(Object key, Object value, int hash) {
+        int mask = this.keys.length - 1;
+        int i = hash & mask;
+        while (this.keys[i] != null) {
+            i = (i + 1) & mask;
+        }
+        this.keys[i] = key;
+        this.values[i] = value;
+        this.hashes[i] = hash;
+    }
+
+    /**
+     * Doubles the number of slots, reinserting every entry using its cached
+     * hash code.
+     *
+     * @updates $this.keys, $this.values, $this.hashes
+     * @ensures |$this.keys| = 2 * |#$this.keys|  and  this = #this
+     */
+    private void grow() {
+        Object[] oldKeys = this.keys;
+        Object[] oldValues = this.values;
+        int[] oldHashes = this.hashes;
+        int oldSize = this.size;
+        this.createNewRep(2 * oldKeys.length);
+        this.size = oldSize;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                this.insert(oldKeys[i], oldValues[i], oldHashes[i]);
+            }
+        }
+    }
+
+    /**
+     * Empties slot {@code i} and shifts later entries of the same probe run
+     * back so that no lookup stops early at the hole.
+     *
+     * @param i
+     *            the slot to empty
+     * @updates $this.keys, $this.values, $this.hashes
+     * @requires $this.keys[i] /= null
+     */
+    private void deleteSlot(int i) {
+        int mask = this.keys.length - 1;
+        int hole = i;
+        int j = (hole + 1) & mask;
+        while (this.keys[j] != null) {
+            int home = this.hashes[j] & mask;
+            /*
+             * The entry at j may move into the hole only if its home slot is
+             * not cyclically within (hole, j].
+             */
+            if (((j - home) & mask) >= ((j - hole) & mask)) {
+                this.keys[hole] = this.keys[j];
+                this.values[hole] = this.values[j];
+                this.hashes[hole] = this.hashes[j];
+                hole = j;
+            }
+            j = (j + 1) & mask;
+        }
+        this.keys[hole] = null;
+        this.values[hole] = null;
+    }
+
+    /**
+     * Removes the entry in slot {@code i} and returns it.
+     *
+     * @param i
+     *            the slot
+     * @return the removed pair
+     * @updates this
+     * @requires $this.keys[i] /= null
+     */
+    @SuppressWarnings("unchecked")
+    private Pair<K, V> removeSlot(int i) {
+        Pair<K, V> removed = new SimplePair<K, V>((K) this.keys[i],
+                (V) this.values[i]);
+        this.deleteSlot(i);
+        this.size--;
+        return removed;
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * No-argument constructor.
+     */
+    public Map5() {
+        this.createNewRep(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor resulting in a table with at least {@code capacity} slots.
+     *
+     * @param capacity
+     *            minimum number of slots of the table
+     * @requires 0 < capacity <= 2^30
+     * @ensures this = {}
+     */
+    public Map5(int capacity) {
+        assert 0 < capacity && capacity <= MAX_CAPACITY : ""
+                + "Violation of: 0 < capacity <= 2^30";
+
+        this.createNewRep(Math.max(2, powerOfTwoAtLeast(capacity)));
+    }
+
+    /*
+     * Standard methods -------------------------------------------------------
+     */
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public final Map<K, V> newInstance() {
+        try {
+            return this.getClass().getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new AssertionError(
+                    "Cannot construct object of type " + this.getClass());
+        }
+    }
+
+    @Override
+    public final void clear() {
+        this.createNewRep(DEFAULT_CAPACITY);
+    }
+
+    @Override
+    public final void transferFrom(Map<K, V> source) {
+        assert source != null : "Violation of: source is not null";
+        assert source != this : "Violation of: source is not this";
+        assert source instanceof Map5<?, ?> : ""
+                + "Violation of: source is of dynamic type Map5<?,?>";
+        /*
+         * This cast cannot fail since the assert above would have stopped
+         * execution in that case: source must be of dynamic type Map5<?,?>, and
+         * the ?,? must be K,V or the call would not have compiled.
+         */
+        Map5<K, V> localSource = (Map5<K, V>) source;
+        this.keys = localSource.keys;
+        this.values = localSource.values;
+        this.hashes = localSource.hashes;
+        this.size = localSource.size;
+        this.growThreshold = localSource.growThreshold;
+        this.removeAnyCursor = localSource.removeAnyCursor;
+        localSource.createNewRep(DEFAULT_CAPACITY);
+    }
+
+    /*
+     * Kernel methods ---------------------------------------------------------
+     */
+
+    @Override
+    public final void add(K key, V value) {
+        assert key != null : "Violation of: key is not null";
+        assert value != null : "Violation of: value is not null";
+        assert !this.hasKey(key) : "Violation of: key is not in DOMAIN(this)";
+
+        if (this.size == this.growThreshold
+                && this.keys.length < MAX_CAPACITY) {
+            this.grow();
+        }
+        assert this.size < this.keys.length - 1 : "Violation of: [table full]";
+        this.insert(key, value, spread(key.hashCode()));
+        this.size++;
+    }
+
+    @Override
+    public final Pair<K, V> remove(K key) {
+        assert key != null : "Violation of: key is not null";
+        assert this.hasKey(key) : "Violation of: key is in DOMAIN(this)";
+
+        return this.removeSlot(this.indexOf(key, spread(key.hashCode())));
+    }
+
+    @Override
+    public final Pair<K, V> removeAny() {
+        assert this.size() > 0 : "Violation of: this /= empty_set";
+
+        int mask = this.keys.length - 1;
+        int i = this.removeAnyCursor & mask;
+        while (this.keys[i] == null) {
+            i = (i + 1) & mask;
+        }
+        this.removeAnyCursor = i;
+        return this.removeSlot(i);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public final V value(K key) {
+        assert key != null : "Violation of: key is not null";
+        assert this.hasKey(key) : "Violation of: key is in DOMAIN(this)";
+
+        return (V) this.values[this.indexOf(key, spread(key.hashCode()))];
+    }
+
+    @Override
+    public final boolean hasKey(K key) {
+        assert key != null : "Violation of: key is not null";
+
+        return this.indexOf(key, spread(key.hashCode())) >= 0;
+    }
+
+    @Override
+    public final int size() {
+        return this.size;
+    }
+
+    @Override
+    public final Iterator<Pair<K, V>> iterator() {
+        return new Map5Iterator();
+    }
+
+    /**
+     * Immutable (key, value) pair returned by {@code Map5}.
+     *
+     * @param <K>
+     *            type of key
+     * @param <V>
+     *            type of value
+     */
+    private static final class SimplePair<K, V> implements Pair<K, V> {
+
+        /**
+         * The key.
+         */
+        private final K key;
+
+        /**
+         * The value.
+         */
+        private final V value;
+
+        /**
+         * Constructor.
+         *
+         * @param key
+         *            the key
+         * @param value
+         *            the value
+         */
+        SimplePair(K key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override
+        public K key() {
+            return this.key;
+        }
+
+        @Override
+        public V value() {
+            return this.value;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this) {
+                return true;
+            }
+            if (!(obj instanceof Pair<?, ?>)) {
+                return false;
+            }
+            Pair<?, ?> p = (Pair<?, ?>) obj;
+            return this.key.equals(p.key()) && this.value.equals(p.value());
+        }
+
+        @Override
+        public int hashCode() {
+            return this.key.hashCode() + this.value.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return "(" + this.key + "," + this.value + ")";
+        }
+
+    }
+
+    /**
+     * Implementation of {@code Iterator} interface for {@code Map5}.
+     */
+    private final class Map5Iterator implements Iterator<Pair<K, V>> {
+
+        /**
+         * Number of elements seen already (i.e., |~this.seen|).
+         */
+        private int numberSeen;
+
+        /**
+         * Slot at which to look for the next element.
+         */
+        private int nextSlot;
+
+        /**
+         * No-argument constructor.
+         */
+        Map5Iterator() {
+            this.numberSeen = 0;
+            this.nextSlot = 0;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.numberSeen < Map5.this.size;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public Pair<K, V> next() {
+            assert this.hasNext() : "Violation of: ~this.unseen /= <>";
+            if (!this.hasNext()) {
+                /*
+                 * Exception is supposed to be thrown in this case, but with
+                 * assertion-checking enabled it cannot happen because of assert
+                 * above.
+                 */
+                throw new NoSuchElementException();
+            }
+            while (Map5.this.keys[this.nextSlot] == null) {
+                this.nextSlot++;
+            }
+            int i = this.nextSlot;
+            this.nextSlot++;
+            this.numberSeen++;
+            return new SimplePair<K, V>((K) Map5.this.keys[i],
+                    (V) Map5.this.values[i]);
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException(
+                    "remove operation not supported");
+        }
+
+    }
+
+}
@@ -0,0 +1,659 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import components.map.Map;
+import components.map.Map1L;
+import components.simplewriter.SimpleWriter;
+import components.simplewriter.SimpleWriter1L;
+
+/**
+ * Throughput benchmark for {@code Map4} against {@code Map5}, {@code Map1L},
+ * and {@code java.util.HashMap}. For each key distribution and each
+ * implementation it times {@code add}, {@code hasKey}, {@code value},
+ * {@code remove}, {@code removeAny}, and a full iteration, repeating each
+ * measurement after a number of warm-up rounds so that the JIT has compiled
+ * the code under test, and reports the mean time per operation.
+ *
+ * <p>
+ * Usage: {@code java MapBenchmark [keys [rounds]]}. Run without {@code -ea},
+ * since the precondition checks of the implementations under test repeat the
+ * lookups being measured.
+ *
+ * @author Put your name here
+ *
+ */
+public final class MapBenchmark {
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private MapBenchmark() {
+    }
+
+    /**
+     * Default number of distinct keys per map.
+     */
+    private static final int DEFAULT_KEYS = 100000;
+
+    /**
+     * Default number of measured rounds.
+     */
+    private static final int DEFAULT_ROUNDS = 5;
+
+    /**
+     * Number of unmeasured warm-up rounds before the measured ones.
+     */
+    private static final int WARMUP_ROUNDS = 3;
+
+    /**
+     * Initial hash table sizes with which {@code Map4} is measured.
+     */
+    private static final int[] TABLE_SIZES = {101, 1009, 1000003 };
+
+    /**
+     * Initial table size of the power-of-two {@code Map4}.
+     */
+    private static final int DEFAULT_POWER_OF_TWO_TABLE_SIZE = 128;
+
+    /**
+     * Maximum load factor of the power-of-two {@code Map4}.
+     */
+    private static final double MAX_LOAD_FACTOR = 0.75;
+
+    /**
+     * Length of each uniformly random key.
+     */
+    private static final int UNIFORM_KEY_LENGTH = 8;
+
+    /**
+     * Exponent of the Zipf distribution of word lookups.
+     */
+    private static final double ZIPF_EXPONENT = 1.0;
+
+    /**
+     * Seed for all random choices, so runs are repeatable.
+     */
+    private static final long SEED = 2231;
+
+    /**
+     * Nanoseconds per millisecond.
+     */
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    /**
+     * Destination for results computed by the timed code, so the JIT cannot
+     * remove that code as dead.
+     */
+    private static volatile long sink;
+
+    /**
+     * Operations that are timed.
+     */
+    private enum Operation {
+        /**
+         * {@code add} of every key into an empty map.
+         */
+        ADD,
+        /**
+         * {@code hasKey} on every lookup.
+         */
+        HAS_KEY,
+        /**
+         * {@code value} on every lookup.
+         */
+        VALUE,
+        /**
+         * One full iteration; the time is divided by the size of the map.
+         */
+        ITERATE,
+        /**
+         * {@code remove} of every key.
+         */
+        REMOVE,
+        /**
+         * {@code removeAny} until the map is empty.
+         */
+        REMOVE_ANY
+    }
+
+    /**
+     * Uniform view of a map implementation under test.
+     */
+    private interface Subject {
+
+        /**
+         * Adds a pair.
+         *
+         * @param key
+         *            the key
+         * @param value
+         *            the value
+         */
+        void add(String key, Integer value);
+
+        /**
+         * Reports whether a key is present.
+         *
+         * @param key
+         *            the key
+         * @return true iff the key is present
+         */
+        boolean hasKey(String key);
+
+        /**
+         * Returns the value of a key.
+         *
+         * @param key
+         *            the key
+         * @return its value
+         */
+        Integer value(String key);
+
+        /**
+         * Removes a key.
+         *
+         * @param key
+         *            the key
+         */
+        void remove(String key);
+
+        /**
+         * Removes any pair.
+         */
+        void removeAny();
+
+        /**
+         * Iterates over all pairs.
+         *
+         * @return a checksum of the values seen
+         */
+        long iterate();
+
+        /**
+         * Returns the number of pairs.
+         *
+         * @return the size
+         */
+        int size();
+    }
+
+    /**
+     * {@code Subject} backed by a {@code components.map.Map}.
+     */
+    private static final class ComponentSubject implements Subject {
+
+        /**
+         * The map under test.
+         */
+        private final Map<String, Integer> map;
+
+        /**
+         * Constructor.
+         *
+         * @param map
+         *            the (empty) map under test
+         */
+        ComponentSubject(Map<String, Integer> map) {
+            this.map = map;
+        }
+
+        @Override
+        public void add(String key, Integer value) {
+            this.map.add(key, value);
+        }
+
+        @Override
+        public boolean hasKey(String key) {
+            return this.map.hasKey(key);
+        }
+
+        @Override
+        public Integer value(String key) {
+            return this.map.value(key);
+        }
+
+        @Override
+        public void remove(String key) {
+            this.map.remove(key);
+        }
+
+        @Override
+        public void removeAny() {
+            this.map.removeAny();
+        }
+
+        @Override
+        public long iterate() {
+            long sum = 0;
+            for (Map.Pair<String, Integer> p : this.map) {
+                sum += p.value();
+            }
+            return sum;
+        }
+
+        @Override
+        public int size() {
+            return this.map.size();
+        }
+    }
+
+    /**
+     * {@code Subject} backed by a {@code java.util.HashMap}.
+     */
+    private static final class HashMapSubject implements Subject {
+
+        /**
+         * The map under test.
+         */
+        private final HashMap<String, Integer> map = new HashMap<>();
+
+        /**
+         * Iterator used by {@code removeAny}, kept between calls so that
+         * draining the map does not rescan it from the start each time.
+         */
+        private Iterator<String> drain;
+
+        @Override
+        public void add(String key, Integer value) {
+            this.map.put(key, value);
+            this.drain = null;
+        }
+
+        @Override
+        public boolean hasKey(String key) {
+            return this.map.containsKey(key);
+        }
+
+        @Override
+        public Integer value(String key) {
+            return this.map.get(key);
+        }
+
+        @Override
+        public void remove(String key) {
+            this.map.remove(key);
+            this.drain = null;
+        }
+
+        @Override
+        public void removeAny() {
+            if (this.drain == null) {
+                this.drain = this.map.keySet().iterator();
+            }
+            this.drain.next();
+            this.drain.remove();
+        }
+
+        @Override
+        public long iterate() {
+            long sum = 0;
+            for (java.util.Map.Entry<String, Integer> e : this.map
+                    .entrySet()) {
+                sum += e.getValue();
+            }
+            return sum;
+        }
+
+        @Override
+        public int size() {
+            return this.map.size();
+        }
+    }
+
+    /**
+     * A named way of constructing an empty {@code Subject}.
+     */
+    private static final class Implementation {
+
+        /**
+         * Name shown in the report.
+         */
+        private final String name;
+
+        /**
+         * Constructs an empty subject.
+         */
+        private final Supplier<Subject> factory;
+
+        /**
+         * Constructor.
+         *
+         * @param name
+         *            name shown in the report
+         * @param factory
+         *            constructs an empty subject
+         */
+        Implementation(String name, Supplier<Subject> factory) {
+            this.name = name;
+            this.factory = factory;
+        }
+    }
+
+    /**
+     * A set of distinct keys plus the sequence of lookups to time.
+     */
+    private static final class Workload {
+
+        /**
+         * Name shown in the report.
+         */
+        private final String name;
+
+        /**
+         * Distinct keys, in insertion order.
+         */
+        private final String[] keys;
+
+        /**
+         * Keys to look up, all of which are in {@code keys}.
+         */
+        private final String[] lookups;
+
+        /**
+         * Constructor.
+         *
+         * @param name
+         *            name shown in the report
+         * @param keys
+         *            distinct keys
+         * @param lookups
+         *            keys to look up
+         */
+        Workload(String name, String[] keys, String[] lookups) {
+            this.name = name;
+            this.keys = keys;
+            this.lookups = lookups;
+        }
+    }
+
+    /**
+     * Returns the implementations to measure.
+     *
+     * @return the implementations
+     */
+    private static List<Implementation> implementations() {
+        List<Implementation> result = new ArrayList<>();
+        for (final int tableSize : TABLE_SIZES) {
+            result.add(new Implementation("Map4(" + tableSize + ")",
+                    () -> new ComponentSubject(
+                            new Map4<String, Integer>(tableSize))));
+        }
+        result.add(new Implementation("Map4(pow2)",
+                () -> new ComponentSubject(new Map4<String, Integer>(
+                        DEFAULT_POWER_OF_TWO_TABLE_SIZE, MAX_LOAD_FACTOR,
+                        Map4.Option.POWER_OF_TWO))));
+        result.add(new Implementation("Map5",
+                () -> new ComponentSubject(new Map5<String, Integer>())));
+        result.add(new Implementation("Map1L",
+                () -> new ComponentSubject(new Map1L<String, Integer>())));
+        result.add(new Implementation("HashMap", HashMapSubject::new));
+        return result;
+    }
+
+    /**
+     * Returns {@code n} distinct random lowercase strings.
+     *
+     * @param n
+     *            the number of strings
+     * @param random
+     *            source of randomness
+     * @return the strings
+     */
+    private static String[] uniformKeys(int n, Random random) {
+        Set<String> seen = new HashSet<>();
+        String[] keys = new String[n];
+        char[] chars = new char[UNIFORM_KEY_LENGTH];
+        int count = 0;
+        while (count < n) {
+            for (int i = 0; i < chars.length; i++) {
+                chars[i] = (char) ('a' + random.nextInt(26));
+            }
+            String key = new String(chars);
+            if (seen.add(key)) {
+                keys[count] = key;
+                count++;
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Returns {@code n} distinct strings that all have the same
+     * {@code hashCode}, built from blocks "Aa" and "BB" (which hash alike).
+     *
+     * @param n
+     *            the number of strings
+     * @return the strings
+     */
+    private static String[] collidingKeys(int n) {
+        int blocks = 1;
+        while ((1L << blocks) < n) {
+            blocks++;
+        }
+        String[] keys = new String[n];
+        StringBuilder sb = new StringBuilder();
+        for (int k = 0; k < n; k++) {
+            sb.setLength(0);
+            for (int b = blocks - 1; b >= 0; b--) {
+                if (((k >> b) & 1) == 0) {
+                    sb.append("Aa");
+                } else {
+                    sb.append("BB");
+                }
+            }
+            keys[k] = sb.toString();
+        }
+        return keys;
+    }
+
+    /**
+     * Returns a permutation of {@code keys}.
+     *
+     * @param keys
+     *            the keys
+     * @param random
+     *            source of randomness
+     * @return the keys in random order
+     */
+    private static String[] shuffled(String[] keys, Random random) {
+        String[] result = keys.clone();
+        for (int i = result.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            String tmp = result[i];
+            result[i] = result[j];
+            result[j] = tmp;
+        }
+        return result;
+    }
+
+    /**
+     * Returns {@code n} lookups drawn from {@code keys} with Zipf-distributed
+     * ranks, so that {@code keys[0]} is the most frequent, as words are in
+     * natural text.
+     *
+     * @param keys
+     *            the keys, most frequent first
+     * @param n
+     *            the number of lookups
+     * @param random
+     *            source of randomness
+     * @return the lookups
+     */
+    private static String[] zipfLookups(String[] keys, int n, Random random) {
+        double[] cumulative = new double[keys.length];
+        double total = 0;
+        for (int r = 0; r < keys.length; r++) {
+            total += 1.0 / Math.pow(r + 1, ZIPF_EXPONENT);
+            cumulative[r] = total;
+        }
+        String[] lookups = new String[n];
+        for (int i = 0; i < n; i++) {
+            double u = random.nextDouble() * total;
+            int index = Arrays.binarySearch(cumulative, u);
+            if (index < 0) {
+                index = -(index + 1);
+            }
+            lookups[i] = keys[Math.min(index, keys.length - 1)];
+        }
+        return lookups;
+    }
+
+    /**
+     * Returns the workloads to measure.
+     *
+     * @param n
+     *            number of distinct keys in each workload
+     * @return the workloads
+     */
+    private static List<Workload> workloads(int n) {
+        Random random = new Random(SEED);
+        List<Workload> result = new ArrayList<>();
+        String[] uniform = uniformKeys(n, random);
+        result.add(new Workload("uniform", uniform, shuffled(uniform, random)));
+        String[] words = uniformKeys(n, random);
+        result.add(new Workload("zipf", words, zipfLookups(words, n, random)));
+        String[] colliding = collidingKeys(n);
+        result.add(new Workload("colliding", colliding,
+                shuffled(colliding, random)));
+        return result;
+    }
+
+    /**
+     * Fills {@code subject} with every key of {@code workload}.
+     *
+     * @param subject
+     *            the (empty) map
+     * @param workload
+     *            the workload
+     */
+    private static void fill(Subject subject, Workload workload) {
+        String[] keys = workload.keys;
+        for (int i = 0; i < keys.length; i++) {
+            subject.add(keys[i], i);
+        }
+    }
+
+    /**
+     * Runs one round of every operation and adds the elapsed nanoseconds per
+     * operation into {@code totals}.
+     *
+     * @param impl
+     *            the implementation
+     * @param workload
+     *            the workload
+     * @param totals
+     *            accumulated nanoseconds per operation, indexed by ordinal
+     * @updates totals
+     */
+    private static void runRound(Implementation impl, Workload workload,
+            double[] totals) {
+        String[] keys = workload.keys;
+        String[] lookups = workload.lookups;
+        long check = 0;
+
+        Subject subject = impl.factory.get();
+        long start = System.nanoTime();
+        fill(subject, workload);
+        totals[Operation.ADD.ordinal()] += (double) (System.nanoTime() - start)
+                / keys.length;
+
+        start = System.nanoTime();
+        for (String key : lookups) {
+            if (subject.hasKey(key)) {
+                check++;
+            }
+        }
+        totals[Operation.HAS_KEY.ordinal()] += (double) (System.nanoTime()
+                - start) / lookups.length;
+
+        start = System.nanoTime();
+        for (String key : lookups) {
+            check += subject.value(key);
+        }
+        totals[Operation.VALUE.ordinal()] += (double) (System.nanoTime()
+                - start) / lookups.length;
+
+        start = System.nanoTime();
+        check += subject.iterate();
+        totals[Operation.ITERATE.ordinal()] += (double) (System.nanoTime()
+                - start) / keys.length;
+
+        start = System.nanoTime();
+        for (String key : keys) {
+            subject.remove(key);
+        }
+        totals[Operation.REMOVE.ordinal()] += (double) (System.nanoTime()
+                - start) / keys.length;
+
+        subject = impl.factory.get();
+        fill(subject, workload);
+        start = System.nanoTime();
+        while (subject.size() > 0) {
+            subject.removeAny();
+        }
+        totals[Operation.REMOVE_ANY.ordinal()] += (double) (System.nanoTime()
+                - start) / keys.length;
+
+        sink += check;
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args
+     *            optionally the number of keys and the number of measured
+     *            rounds
+     */
+    public static void main(String[] args) {
+        int n = DEFAULT_KEYS;
+        int rounds = DEFAULT_ROUNDS;
+        if (args.length > 0) {
+            n = Integer.parseInt(args[0]);
+        }
+        if (args.length > 1) {
+            rounds = Integer.parseInt(args[1]);
+        }
+        SimpleWriter out = new SimpleWriter1L();
+        Operation[] operations = Operation.values();
+
+        out.println("Map benchmark: " + n + " keys, " + WARMUP_ROUNDS
+                + " warm-up + " + rounds + " measured rounds, ns/op");
+        StringBuilder header = new StringBuilder(
+                String.format("%-10s %-14s", "workload", "map"));
+        for (Operation op : operations) {
+            header.append(String.format(" %11s", op));
+        }
+        out.println(header);
+
+        long begin = System.nanoTime();
+        for (Workload workload : workloads(n)) {
+            for (Implementation impl : implementations()) {
+                double[] totals = new double[operations.length];
+                for (int r = 0; r < WARMUP_ROUNDS; r++) {
+                    runRound(impl, workload, new double[operations.length]);
+                }
+                for (int r = 0; r < rounds; r++) {
+                    runRound(impl, workload, totals);
+                }
+                StringBuilder line = new StringBuilder(String.format(
+                        "%-10s %-14s", workload.name, impl.name));
+                for (Operation op : operations) {
+                    line.append(String.format(" %11.1f",
+                            totals[op.ordinal()] / rounds));
+                }
+                out.println(line);
+            }
+        }
+        out.println(String.format("done in %.0f ms (checksum %d)",
+                (System.nanoTime() - begin) / NANOS_PER_MILLI, sink));
+        out.close();
+    }
+
+}
@@ -0,0 +1,952 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import components.map.Map;
+import components.map.MapSecondary;
+
+/**
+ * {@code Map<String, Integer>} represented, like {@code Map4}, as a hash table
+ * of chained buckets, but stored in a memory-mapped file instead of on the
+ * heap. The bucket table, the entries and the key characters all live in the
+ * file, so the map survives restarts without being reloaded, costs the garbage
+ * collector nothing, and may be larger than physical memory (the operating
+ * system pages it in and out).
+ *
+ * <p>
+ * The file holds a header, the bucket table (an array of entry offsets), and
+ * the entries. Each entry records the offset of the next entry of its bucket,
+ * its key's hash code, its value, and its key's characters, one byte each if
+ * they are all below 256 and two bytes each otherwise. Lookups compare the
+ * stored characters with the key in place, so they allocate nothing. Space
+ * freed by {@code remove} and by table growth is not reused until
+ * {@code clear}.
+ *
+ * <p>
+ * Changes reach the file through the mapping without any explicit write;
+ * {@code force} waits until they are on the storage device. A process that
+ * dies in the middle of a kernel method may leave the file inconsistent.
+ *
+ * @convention <pre>
+ * [$this.segments map consecutive SEGMENT_SIZE-byte ranges of the file,
+ *  starting at offset 0]  and
+ * [the header at offset 0 records MAGIC, VERSION, $this.tableOffset,
+ *  $this.tableLength, $this.size and $this.dataEnd]  and
+ * [$this.tableLength is a power of 2]  and
+ * $this.tableLength <= MAX_TABLE_LENGTH  and
+ * ($this.size <= $this.tableLength * MAX_LOAD_FACTOR  or
+ *  $this.tableLength = MAX_TABLE_LENGTH)  and
+ * [every bucket of the table at $this.tableOffset heads a chain of entries
+ *  below $this.dataEnd, linked through their next fields and ending in 0]  and
+ * [every entry in bucket i has a key k with k.hashCode() stored in the entry
+ *  and indexFor(k.hashCode()) = i]  and
+ * $this.size = [total number of entries in all buckets]  and
+ * 0 <= $this.removeAnyCursor < $this.tableLength
+ * </pre>
+ * @correspondence <pre>
+ * this = {(k, v) where [some bucket holds an entry with key k and value v]}
+ * </pre>
+ */
+public class MappedMap4 extends MapSecondary<String, Integer>
+        implements Closeable {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Identifies a file created by this class.
+     */
+    private static final int MAGIC = 0x4D4D3446;
+
+    /**
+     * Version of the file layout.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * log2 of the number of bytes mapped at a time.
+     */
+    private static final int SEGMENT_SHIFT = 26;
+
+    /**
+     * Number of bytes mapped at a time; the file grows by this much.
+     */
+    private static final long SEGMENT_SIZE = 1L << SEGMENT_SHIFT;
+
+    /**
+     * Mask giving the offset of a file position within its segment.
+     */
+    private static final long SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    /**
+     * Number of buckets of a new table.
+     */
+    private static final int DEFAULT_TABLE_LENGTH = 1024;
+
+    /**
+     * Largest number of buckets the table will grow to.
+     */
+    private static final int MAX_TABLE_LENGTH = 1 << 30;
+
+    /**
+     * Maximum ratio of entries to buckets before the table grows.
+     */
+    private static final double MAX_LOAD_FACTOR = 0.75;
+
+    /**
+     * Offset of the magic number in the header.
+     */
+    private static final int MAGIC_AT = 0;
+
+    /**
+     * Offset of the layout version in the header.
+     */
+    private static final int VERSION_AT = 4;
+
+    /**
+     * Offset of the table offset in the header.
+     */
+    private static final int TABLE_OFFSET_AT = 8;
+
+    /**
+     * Offset of the table length in the header.
+     */
+    private static final int TABLE_LENGTH_AT = 16;
+
+    /**
+     * Offset of the size in the header.
+     */
+    private static final int SIZE_AT = 20;
+
+    /**
+     * Offset of the end of the used part of the file in the header.
+     */
+    private static final int DATA_END_AT = 24;
+
+    /**
+     * Size of the header.
+     */
+    private static final int HEADER_SIZE = 64;
+
+    /**
+     * Offset, within an entry, of the offset of the next entry.
+     */
+    private static final int NEXT_AT = 0;
+
+    /**
+     * Offset, within an entry, of the key's hash code.
+     */
+    private static final int HASH_AT = 8;
+
+    /**
+     * Offset, within an entry, of the value.
+     */
+    private static final int VALUE_AT = 12;
+
+    /**
+     * Offset, within an entry, of the key's length in characters, whose top
+     * bit is set if the characters take two bytes each.
+     */
+    private static final int LENGTH_AT = 16;
+
+    /**
+     * Offset, within an entry, of the key's characters.
+     */
+    private static final int CHARS_AT = 20;
+
+    /**
+     * Flag in the stored key length marking two-byte characters.
+     */
+    private static final int WIDE = 1 << 31;
+
+    /**
+     * Entries and tables start at multiples of this many bytes.
+     */
+    private static final int ALIGNMENT = 8;
+
+    /**
+     * The file.
+     */
+    private File file;
+
+    /**
+     * Whether the file is deleted when this map is closed.
+     */
+    private boolean temporary;
+
+    /**
+     * Open channel to the file.
+     */
+    private FileChannel channel;
+
+    /**
+     * The mapped segments of the file.
+     */
+    private List<MappedByteBuffer> segments;
+
+    /**
+     * File offset of the bucket table.
+     */
+    private long tableOffset;
+
+    /**
+     * Number of buckets.
+     */
+    private int tableLength;
+
+    /**
+     * Number of entries.
+     */
+    private int size;
+
+    /**
+     * File offset just past the last allocated byte.
+     */
+    private long dataEnd;
+
+    /**
+     * Bucket from which {@code removeAny} resumes looking for an entry.
+     */
+    private int removeAnyCursor;
+
+    /**
+     * Returns {@code n} rounded up to a multiple of {@code ALIGNMENT}.
+     *
+     * @param n
+     *            the number to round
+     * @return the smallest multiple of ALIGNMENT >= n
+     */
+    private static long align(long n) {
+        return (n + ALIGNMENT - 1) & -ALIGNMENT;
+    }
+
+    /**
+     * Reports whether every character of {@code key} fits in one byte.
+     *
+     * @param key
+     *            the key
+     * @return true iff every character of key is below 256
+     */
+    private static boolean isNarrow(String key) {
+        for (int i = 0; i < key.length(); i++) {
+            if (key.charAt(i) > 0xFF) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the segment holding file position {@code pos}.
+     *
+     * @param pos
+     *            the file position
+     * @return the mapped segment containing pos
+     * @requires pos < |$this.segments| * SEGMENT_SIZE
+     */
+    private MappedByteBuffer segment(long pos) {
+        return this.segments.get((int) (pos >>> SEGMENT_SHIFT));
+    }
+
+    /**
+     * Reads the {@code long} at file position {@code pos}.
+     *
+     * @param pos
+     *            the file position
+     * @return the long at pos
+     */
+    private long getLong(long pos) {
+        return this.segment(pos).getLong((int) (pos & SEGMENT_MASK));
+    }
+
+    /**
+     * Writes {@code value} at file position {@code pos}.
+     *
+     * @param pos
+     *            the file position
+     * @param value
+     *            the long to write
+     */
+    private void putLong(long pos, long value) {
+        this.segment(pos).putLong((int) (pos & SEGMENT_MASK), value);
+    }
+
+    /**
+     * Reads the {@code int} at file position {@code pos}.
+     *
+     * @param pos
+     *            the file position
+     * @return the int at pos
+     */
+    private int getInt(long pos) {
+        return this.segment(pos).getInt((int) (pos & SEGMENT_MASK));
+    }
+
+    /**
+     * Writes {@code value} at file position {@code pos}.
+     *
+     * @param pos
+     *            the file position
+     * @param value
+     *            the int to write
+     */
+    private void putInt(long pos, int value) {
+        this.segment(pos).putInt((int) (pos & SEGMENT_MASK), value);
+    }
+
+    /**
+     * Maps more of the file, if necessary, so that every position below
+     * {@code end} is mapped.
+     *
+     * @param end
+     *            the position up to which the file must be mapped
+     * @updates this.segments
+     */
+    private void ensureMapped(long end) {
+        try {
+            while ((long) this.segments.size() * SEGMENT_SIZE < end) {
+                this.segments.add(this.channel.map(
+                        FileChannel.MapMode.READ_WRITE,
+                        this.segments.size() * SEGMENT_SIZE, SEGMENT_SIZE));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Allocates {@code n} bytes at the end of the used part of the file,
+     * within a single segment.
+     *
+     * @param n
+     *            the number of bytes
+     * @return the file position of the allocated bytes
+     * @updates this.dataEnd, this.segments
+     * @requires 0 < n <= SEGMENT_SIZE
+     */
+    private long allocate(long n) {
+        long pos = align(this.dataEnd);
+        if ((pos & SEGMENT_MASK) + n > SEGMENT_SIZE) {
+            pos = (pos | SEGMENT_MASK) + 1;
+        }
+        this.dataEnd = pos + n;
+        this.putLong(DATA_END_AT, this.dataEnd);
+        this.ensureMapped(this.dataEnd);
+        return pos;
+    }
+
+    /**
+     * Allocates and empties a bucket table of {@code length} buckets. Since
+     * buckets never straddle segments, the table may span several.
+     *
+     * @param length
+     *            the number of buckets
+     * @return the file position of the table
+     * @updates this.dataEnd, this.segments
+     */
+    private long allocateTable(int length) {
+        long pos = align(this.dataEnd);
+        this.dataEnd = pos + (long) length * Long.BYTES;
+        this.putLong(DATA_END_AT, this.dataEnd);
+        this.ensureMapped(this.dataEnd);
+        for (int i = 0; i < length; i++) {
+            this.putLong(pos + (long) i * Long.BYTES, 0L);
+        }
+        return pos;
+    }
+
+    /**
+     * Returns the bucket of a key whose {@code hashCode} is {@code h}.
+     *
+     * @param h
+     *            the key's hash code
+     * @return the index of the bucket for the key
+     * @ensures 0 <= indexFor < this.tableLength
+     */
+    private int indexFor(int h) {
+        return (h ^ (h >>> 16)) & (this.tableLength - 1);
+    }
+
+    /**
+     * Returns the file position of bucket {@code i}.
+     *
+     * @param i
+     *            the bucket index
+     * @return the position holding the offset of the first entry of bucket i
+     */
+    private long bucketAt(int i) {
+        return this.tableOffset + (long) i * Long.BYTES;
+    }
+
+    /**
+     * Reports whether the entry at {@code entry} has key {@code key}, whose
+     * hash code is {@code hash}.
+     *
+     * @param entry
+     *            the file position of the entry
+     * @param key
+     *            the key
+     * @param hash
+     *            key.hashCode()
+     * @return true iff the entry's key equals key
+     */
+    private boolean matches(long entry, String key, int hash) {
+        if (this.getInt(entry + HASH_AT) != hash) {
+            return false;
+        }
+        int stored = this.getInt(entry + LENGTH_AT);
+        if ((stored & ~WIDE) != key.length()) {
+            return false;
+        }
+        MappedByteBuffer seg = this.segment(entry);
+        int at = (int) ((entry + CHARS_AT) & SEGMENT_MASK);
+        boolean same = true;
+        if ((stored & WIDE) == 0) {
+            for (int i = 0; same && i < key.length(); i++) {
+                same = (seg.get(at + i) & 0xFF) == key.charAt(i);
+            }
+        } else {
+            for (int i = 0; same && i < key.length(); i++) {
+                same = seg.getChar(at + 2 * i) == key.charAt(i);
+            }
+        }
+        return same;
+    }
+
+    /**
+     * Returns the key of the entry at {@code entry}.
+     *
+     * @param entry
+     *            the file position of the entry
+     * @return the entry's key
+     */
+    private String keyAt(long entry) {
+        int stored = this.getInt(entry + LENGTH_AT);
+        int length = stored & ~WIDE;
+        MappedByteBuffer seg = this.segment(entry);
+        int at = (int) ((entry + CHARS_AT) & SEGMENT_MASK);
+        char[] chars = new char[length];
+        if ((stored & WIDE) == 0) {
+            for (int i = 0; i < length; i++) {
+                chars[i] = (char) (seg.get(at + i) & 0xFF);
+            }
+        } else {
+            for (int i = 0; i < length; i++) {
+                chars[i] = seg.getChar(at + 2 * i);
+            }
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Returns the (key, value) pair of the entry at {@code entry}.
+     *
+     * @param entry
+     *            the file position of the entry
+     * @return the entry's pair
+     */
+    private Pair<String, Integer> pairAt(long entry) {
+        return new SimplePair(this.keyAt(entry),
+                this.getInt(entry + VALUE_AT));
+    }
+
+    /**
+     * Returns the file position of the entry with key {@code key}, or 0 if
+     * there is none.
+     *
+     * @param key
+     *            the key
+     * @return the position of the entry of key, or 0
+     */
+    private long find(String key) {
+        int h = key.hashCode();
+        long entry = this.getLong(this.bucketAt(this.indexFor(h)));
+        while (entry != 0 && !this.matches(entry, key, h)) {
+            entry = this.getLong(entry + NEXT_AT);
+        }
+        return entry;
+    }
+
+    /**
+     * Unlinks the entry at {@code entry} from bucket {@code bucket}.
+     *
+     * @param bucket
+     *            the bucket index
+     * @param entry
+     *            the file position of the entry
+     * @updates this
+     * @requires [the entry is in the bucket]
+     */
+    private void unlink(int bucket, long entry) {
+        long link = this.bucketAt(bucket);
+        long current = this.getLong(link);
+        while (current != entry) {
+            link = current + NEXT_AT;
+            current = this.getLong(link);
+        }
+        this.putLong(link, this.getLong(entry + NEXT_AT));
+        this.size--;
+        this.putInt(SIZE_AT, this.size);
+    }
+
+    /**
+     * Moves every entry into a new table of twice as many buckets, relinking
+     * the entries in place using their stored hash codes.
+     *
+     * @updates this
+     * @ensures this.tableLength = 2 * #this.tableLength  and  this = #this
+     */
+    private void grow() {
+        long oldTable = this.tableOffset;
+        int oldLength = this.tableLength;
+        long newTable = this.allocateTable(2 * oldLength);
+        this.tableOffset = newTable;
+        this.tableLength = 2 * oldLength;
+        for (int i = 0; i < oldLength; i++) {
+            long entry = this.getLong(oldTable + (long) i * Long.BYTES);
+            while (entry != 0) {
+                long next = this.getLong(entry + NEXT_AT);
+                long bucket = this.bucketAt(
+                        this.indexFor(this.getInt(entry + HASH_AT)));
+                this.putLong(entry + NEXT_AT, this.getLong(bucket));
+                this.putLong(bucket, entry);
+                entry = next;
+            }
+        }
+        this.putLong(TABLE_OFFSET_AT, this.tableOffset);
+        this.putInt(TABLE_LENGTH_AT, this.tableLength);
+        this.removeAnyCursor = 0;
+    }
+
+    /**
+     * Creator of initial representation: an empty table at the start of the
+     * file, overwriting whatever the file held.
+     *
+     * @updates this
+     * @ensures this = {}
+     */
+    private void createNewRep() {
+        this.ensureMapped(HEADER_SIZE);
+        this.putInt(MAGIC_AT, MAGIC);
+        this.putInt(VERSION_AT, VERSION);
+        this.dataEnd = HEADER_SIZE;
+        this.tableLength = DEFAULT_TABLE_LENGTH;
+        this.tableOffset = this.allocateTable(this.tableLength);
+        this.size = 0;
+        this.removeAnyCursor = 0;
+        this.putLong(TABLE_OFFSET_AT, this.tableOffset);
+        this.putInt(TABLE_LENGTH_AT, this.tableLength);
+        this.putInt(SIZE_AT, this.size);
+    }
+
+    /**
+     * Opens {@code file}, reading the map it holds if it has one, and
+     * starting an empty map in it otherwise.
+     *
+     * @param f
+     *            the file
+     * @param isTemporary
+     *            whether to delete the file on {@code close}
+     * @updates this
+     */
+    private void open(File f, boolean isTemporary) {
+        this.file = f;
+        this.temporary = isTemporary;
+        this.segments = new ArrayList<>();
+        try {
+            this.channel = FileChannel.open(f.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            if (this.channel.size() < HEADER_SIZE) {
+                this.createNewRep();
+            } else {
+                this.ensureMapped(HEADER_SIZE);
+                if (this.getInt(MAGIC_AT) != MAGIC
+                        || this.getInt(VERSION_AT) != VERSION) {
+                    this.channel.close();
+                    throw new IllegalArgumentException(
+                            f + " does not hold a MappedMap4");
+                }
+                this.tableOffset = this.getLong(TABLE_OFFSET_AT);
+                this.tableLength = this.getInt(TABLE_LENGTH_AT);
+                this.size = this.getInt(SIZE_AT);
+                this.dataEnd = this.getLong(DATA_END_AT);
+                this.removeAnyCursor = 0;
+                this.ensureMapped(this.dataEnd);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * No-argument constructor, resulting in an empty map stored in a new
+     * temporary file that is deleted when the map is closed or the JVM exits.
+     */
+    public MappedMap4() {
+        try {
+            File f = File.createTempFile("MappedMap4", ".map");
+            f.deleteOnExit();
+            this.open(f, true);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Constructor resulting in the map stored in {@code file}, which is
+     * created, holding an empty map, if it does not exist.
+     *
+     * @param file
+     *            the file holding the map
+     * @requires [file does not exist, is empty, or was written by MappedMap4]
+     *           and  [no other MappedMap4 has file open]
+     * @ensures this = [the map stored in file, or {} if there is none]
+     */
+    public MappedMap4(File file) {
+        assert file != null : "Violation of: file is not null";
+
+        this.open(file, false);
+    }
+
+    /*
+     * Standard methods -------------------------------------------------------
+     */
+
+    @Override
+    public final Map<String, Integer> newInstance() {
+        try {
+            return this.getClass().getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new AssertionError(
+                    "Cannot construct object of type " + this.getClass());
+        }
+    }
+
+    @Override
+    public final void clear() {
+        this.createNewRep();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>
+     * {@code this} and {@code source} exchange files, and the file
+     * {@code source} ends up with is then cleared.
+     */
+    @Override
+    public final void transferFrom(Map<String, Integer> source) {
+        assert source != null : "Violation of: source is not null";
+        assert source != this : "Violation of: source is not this";
+        assert source instanceof MappedMap4 : ""
+                + "Violation of: source is of dynamic type MappedMap4";
+
+        MappedMap4 localSource = (MappedMap4) source;
+        File f = this.file;
+        boolean isTemporary = this.temporary;
+        FileChannel c = this.channel;
+        List<MappedByteBuffer> s = this.segments;
+
+        this.file = localSource.file;
+        this.temporary = localSource.temporary;
+        this.channel = localSource.channel;
+        this.segments = localSource.segments;
+        this.tableOffset = localSource.tableOffset;
+        this.tableLength = localSource.tableLength;
+        this.size = localSource.size;
+        this.dataEnd = localSource.dataEnd;
+        this.removeAnyCursor = localSource.removeAnyCursor;
+
+        localSource.file = f;
+        localSource.temporary = isTemporary;
+        localSource.channel = c;
+        localSource.segments = s;
+        localSource.createNewRep();
+    }
+
+    /*
+     * Kernel methods ---------------------------------------------------------
+     */
+
+    @Override
+    public final void add(String key, Integer value) {
+        assert key != null : "Violation of: key is not null";
+        assert value != null : "Violation of: value is not null";
+        assert !this.hasKey(key) : "Violation of: key is not in DOMAIN(this)";
+
+        boolean narrow = isNarrow(key);
+        int charBytes = key.length();
+        if (!narrow) {
+            charBytes = 2 * key.length();
+        }
+        assert CHARS_AT + (long) charBytes <= SEGMENT_SIZE : ""
+                + "Violation of: key is short enough to fit in a segment";
+
+        int h = key.hashCode();
+        long entry = this.allocate(CHARS_AT + charBytes);
+        long bucket = this.bucketAt(this.indexFor(h));
+        this.putLong(entry + NEXT_AT, this.getLong(bucket));
+        this.putInt(entry + HASH_AT, h);
+        this.putInt(entry + VALUE_AT, value);
+        MappedByteBuffer seg = this.segment(entry);
+        int at = (int) ((entry + CHARS_AT) & SEGMENT_MASK);
+        if (narrow) {
+            this.putInt(entry + LENGTH_AT, key.length());
+            for (int i = 0; i < key.length(); i++) {
+                seg.put(at + i, (byte) key.charAt(i));
+            }
+        } else {
+            this.putInt(entry + LENGTH_AT, key.length() | WIDE);
+            for (int i = 0; i < key.length(); i++) {
+                seg.putChar(at + 2 * i, key.charAt(i));
+            }
+        }
+        this.putLong(bucket, entry);
+
+        this.size++;
+        this.putInt(SIZE_AT, this.size);
+        if (this.size > this.tableLength * MAX_LOAD_FACTOR
+                && this.tableLength < MAX_TABLE_LENGTH) {
+            this.grow();
+        }
+    }
+
+    @Override
+    public final Pair<String, Integer> remove(String key) {
+        assert key != null : "Violation of: key is not null";
+        assert this.hasKey(key) : "Violation of: key is in DOMAIN(this)";
+
+        long entry = this.find(key);
+        Pair<String, Integer> result = this.pairAt(entry);
+        this.unlink(this.indexFor(key.hashCode()), entry);
+        return result;
+    }
+
+    @Override
+    public final Pair<String, Integer> removeAny() {
+        assert this.size() > 0 : "Violation of: this /= empty_set";
+
+        while (this.getLong(this.bucketAt(this.removeAnyCursor)) == 0) {
+            this.removeAnyCursor = (this.removeAnyCursor + 1)
+                    & (this.tableLength - 1);
+        }
+        long entry = this.getLong(this.bucketAt(this.removeAnyCursor));
+        Pair<String, Integer> result = this.pairAt(entry);
+        this.unlink(this.removeAnyCursor, entry);
+        return result;
+    }
+
+    @Override
+    public final Integer value(String key) {
+        assert key != null : "Violation of: key is not null";
+        assert this.hasKey(key) : "Violation of: key is in DOMAIN(this)";
+
+        return this.getInt(this.find(key) + VALUE_AT);
+    }
+
+    @Override
+    public final boolean hasKey(String key) {
+        assert key != null : "Violation of: key is not null";
+
+        return this.find(key) != 0;
+    }
+
+    @Override
+    public final int size() {
+        return this.size;
+    }
+
+    @Override
+    public final Iterator<Pair<String, Integer>> iterator() {
+        return new MappedMap4Iterator();
+    }
+
+    /*
+     * Other methods ----------------------------------------------------------
+     */
+
+    @Override
+    public final Integer replaceValue(String key, Integer value) {
+        assert key != null : "Violation of: key is not null";
+        assert value != null : "Violation of: value is not null";
+        assert this.hasKey(key) : "Violation of: key is in DOMAIN(this)";
+
+        long entry = this.find(key);
+        int old = this.getInt(entry + VALUE_AT);
+        this.putInt(entry + VALUE_AT, value);
+        return old;
+    }
+
+    /**
+     * Waits until every change to {@code this} has been written to the
+     * storage device holding its file.
+     */
+    public final void force() {
+        for (MappedByteBuffer segment : this.segments) {
+            segment.force();
+        }
+    }
+
+    /**
+     * Writes every change to the file and releases it, deleting it if it was
+     * created by the no-argument constructor. {@code this} must not be used
+     * afterwards.
+     */
+    @Override
+    public final void close() {
+        try {
+            if (!this.temporary) {
+                this.force();
+            }
+            this.segments.clear();
+            this.channel.close();
+            if (this.temporary && !this.file.delete()) {
+                this.file.deleteOnExit();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Simple implementation of {@code Pair}.
+     */
+    private static final class SimplePair implements Pair<String, Integer> {
+
+        /**
+         * The key.
+         */
+        private final String key;
+
+        /**
+         * The value.
+         */
+        private final Integer value;
+
+        /**
+         * Constructor.
+         *
+         * @param key
+         *            the key
+         * @param value
+         *            the value
+         */
+        SimplePair(String key, Integer value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override
+        public String key() {
+            return this.key;
+        }
+
+        @Override
+        public Integer value() {
+            return this.value;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this) {
+                return true;
+            }
+            if (!(obj instanceof Pair<?, ?>)) {
+                return false;
+            }
+            Pair<?, ?> p = (Pair<?, ?>) obj;
+            return this.key.equals(p.key()) && this.value.equals(p.value());
+        }
+
+        @Override
+        public int hashCode() {
+            return this.key.hashCode() + this.value.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return "(" + this.key + "," + this.value + ")";
+        }
+
+    }
+
+    /**
+     * Implementation of {@code Iterator} interface for {@code MappedMap4}.
+     */
+    private final class MappedMap4Iterator
+            implements Iterator<Pair<String, Integer>> {
+
+        /**
+         * Number of elements seen already.
+         */
+        private int numberSeen;
+
+        /**
+         * Bucket of the next entry.
+         */
+        private int bucket;
+
+        /**
+         * File position of the next entry, or 0 before it has been found.
+         */
+        private long entry;
+
+        /**
+         * No-argument constructor.
+         */
+        MappedMap4Iterator() {
+            this.numberSeen = 0;
+            this.bucket = -1;
+            this.entry = 0;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.numberSeen < MappedMap4.this.size;
+        }
+
+        @Override
+        public Pair<String, Integer> next() {
+            assert this.hasNext() : "Violation of: ~this.unseen /= <>";
+            if (!this.hasNext()) {
+                /*
+                 * Exception is supposed to be thrown in this case, but with
+                 * assertion-checking enabled it cannot happen because of assert
+                 * above.
+                 */
+                throw new NoSuchElementException();
+            }
+            this.numberSeen++;
+            while (this.entry == 0) {
+                this.bucket++;
+                this.entry = MappedMap4.this
+                        .getLong(MappedMap4.this.bucketAt(this.bucket));
+            }
+            long current = this.entry;
+            this.entry = MappedMap4.this.getLong(current + NEXT_AT);
+            return MappedMap4.this.pairAt(current);
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException(
+                    "remove operation not supported");
+        }
+
+    }
+
+}
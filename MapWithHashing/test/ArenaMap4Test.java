@@ -0,0 +1,84 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import components.map.Map;
+import components.map.Map1L;
+
+/**
+ * Customized JUnit test fixture for {@code ArenaMap4}, including tests of the
+ * {@code CharSequence} lookups.
+ */
+public class ArenaMap4Test extends MapTest {
+
+    /**
+     * Number of entries in growth and removal tests.
+     */
+    private static final int MANY = 5000;
+
+    @Override
+    protected final Map<String, String> constructorTest() {
+        return new ArenaMap4<String>();
+    }
+
+    @Override
+    protected final Map<String, String> constructorRef() {
+        return new Map1L<String, String>();
+    }
+
+    @Test
+    public final void testCharSequenceProbes() {
+        ArenaMap4<Integer> m = new ArenaMap4<>();
+        StringBuilder word = new StringBuilder("tag");
+        m.add(word, 1);
+        word.append("s");
+        assertFalse(m.hasKey(word));
+        assertEquals(null, m.valueOrNull(word));
+        m.add(word, 2);
+        word.setLength(3);
+        assertTrue(m.hasKey(word));
+        assertEquals(1, m.replaceValue(word, 3).intValue());
+        assertEquals(3, m.value("tag").intValue());
+        assertEquals(2, m.value("tags").intValue());
+    }
+
+    @Test
+    public final void testWideAndEmptyKeys() {
+        ArenaMap4<String> m = new ArenaMap4<>();
+        String wide = "\u0443\u0441\u0442\u0430";
+        m.add("", "empty");
+        m.add(wide, "wide");
+        m.add("caf\u00e9", "latin");
+        assertEquals("empty", m.value(""));
+        assertEquals("wide", m.valueOrNull(new StringBuilder(wide)));
+        assertEquals("latin", m.value("caf\u00e9"));
+        Map<String, String> mExpected = new Map1L<>();
+        mExpected.add("", "empty");
+        mExpected.add(wide, "wide");
+        mExpected.add("caf\u00e9", "latin");
+        assertEquals(mExpected, m);
+    }
+
+    @Test
+    public final void testManyAddsAndRemoves() {
+        ArenaMap4<String> m = new ArenaMap4<>();
+        Map<String, String> mExpected = new Map1L<>();
+        for (int i = 0; i < MANY; i++) {
+            m.add("key" + i, "value" + i);
+            mExpected.add("key" + i, "value" + i);
+        }
+        for (int i = 0; i < MANY; i += 2) {
+            assertEquals(mExpected.remove("key" + i), m.remove("key" + i));
+        }
+        assertEquals(mExpected, m);
+        assertTrue(m.arenaBytes() < 8 * MANY);
+        while (m.size() > 0) {
+            Map.Pair<String, String> p = m.removeAny();
+            assertEquals(mExpected.remove(p.key()), p);
+        }
+        assertEquals(0, mExpected.size());
+    }
+
+}
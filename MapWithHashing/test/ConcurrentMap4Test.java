@@ -0,0 +1,234 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntConsumer;
+
+import org.junit.Test;
+
+import components.map.Map;
+import components.map.Map1L;
+
+/**
+ * Customized JUnit test fixture for {@code ConcurrentMap4} using default
+ * constructor.
+ */
+public class ConcurrentMap4Test extends MapTest {
+
+    /**
+     * Number of threads adding keys concurrently.
+     */
+    private static final int THREADS = 8;
+
+    /**
+     * Number of keys added by each thread.
+     */
+    private static final int KEYS_PER_THREAD = 1000;
+
+    /**
+     * Number of rounds of the tests that repeat an operation.
+     */
+    private static final int ROUNDS = 200;
+
+    /**
+     * Longest wait for a thread to finish, after which it is taken to be
+     * deadlocked.
+     */
+    private static final long TIMEOUT_MILLIS = 60000;
+
+    /**
+     * Runs {@code task} on {@code THREADS} threads at once, passing each its
+     * index, and fails if any of them throws or does not finish in time.
+     *
+     * @param task
+     *            the task, given the index of its thread
+     * @throws InterruptedException
+     *             if interrupted while waiting for the threads
+     */
+    private static void runConcurrently(IntConsumer task)
+            throws InterruptedException {
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread[] threads = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            final int index = t;
+            threads[t] = new Thread(() -> {
+                try {
+                    task.accept(index);
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join(TIMEOUT_MILLIS);
+            assertFalse("thread did not finish", thread.isAlive());
+        }
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+    }
+
+    @Override
+    protected final Map<String, String> constructorTest() {
+        return new ConcurrentMap4<String, String>();
+    }
+
+    @Override
+    protected final Map<String, String> constructorRef() {
+        return new Map1L<String, String>();
+    }
+
+    @Test
+    public final void testConcurrentAddIfAbsent()
+            throws InterruptedException {
+        final ConcurrentMap4<String, String> test = new ConcurrentMap4<>();
+        final AtomicInteger added = new AtomicInteger();
+        runConcurrently(t -> {
+            for (int i = 0; i < KEYS_PER_THREAD; i++) {
+                if (test.addIfAbsent("key" + i, "value" + i)) {
+                    added.incrementAndGet();
+                }
+            }
+        });
+        /*
+         * each key is added by exactly one of the racing threads
+         */
+        assertEquals(KEYS_PER_THREAD, added.get());
+        assertEquals(KEYS_PER_THREAD, test.size());
+        assertEquals("value7", test.value("key7"));
+    }
+
+    @Test
+    public final void testConcurrentRemove() throws InterruptedException {
+        final ConcurrentMap4<String, String> test = new ConcurrentMap4<>();
+        for (int i = 0; i < THREADS * KEYS_PER_THREAD; i++) {
+            test.add("key" + i, "value" + i);
+        }
+        runConcurrently(t -> {
+            for (int i = t; i < THREADS * KEYS_PER_THREAD; i += THREADS) {
+                Map.Pair<String, String> p = test.remove("key" + i);
+                assertEquals("key" + i, p.key());
+                assertEquals("value" + i, p.value());
+            }
+        });
+        assertEquals(0, test.size());
+        assertFalse(test.iterator().hasNext());
+    }
+
+    @Test
+    public final void testConcurrentReplaceValue() throws InterruptedException {
+        final ConcurrentMap4<String, String> test = new ConcurrentMap4<>();
+        for (int i = 0; i < KEYS_PER_THREAD; i++) {
+            test.add("key" + i, "initial");
+        }
+        final ConcurrentLinkedQueue<String> replaced =
+                new ConcurrentLinkedQueue<>();
+        runConcurrently(t -> {
+            for (int i = 0; i < KEYS_PER_THREAD; i++) {
+                replaced.add("key" + i + "="
+                        + test.replaceValue("key" + i, t + ":" + i));
+            }
+        });
+        /*
+         * every value written, and the initial one, is either returned by
+         * exactly one replaceValue or is the final value: none is lost
+         */
+        List<String> seen = new ArrayList<>(replaced);
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < KEYS_PER_THREAD; i++) {
+            seen.add("key" + i + "=" + test.value("key" + i));
+            expected.add("key" + i + "=initial");
+            for (int t = 0; t < THREADS; t++) {
+                expected.add("key" + i + "=" + t + ":" + i);
+            }
+        }
+        Collections.sort(seen);
+        Collections.sort(expected);
+        assertEquals(expected, seen);
+        assertEquals(KEYS_PER_THREAD, test.size());
+    }
+
+    @Test
+    public final void testConcurrentIteration() throws InterruptedException {
+        final ConcurrentMap4<String, String> test = new ConcurrentMap4<>();
+        for (int i = 0; i < KEYS_PER_THREAD; i++) {
+            test.add("stable" + i, "value" + i);
+        }
+        runConcurrently(t -> {
+            if (t % 2 == 0) {
+                /*
+                 * writers add and remove keys of their own
+                 */
+                for (int r = 0; r < ROUNDS; r++) {
+                    for (int i = 0; i < KEYS_PER_THREAD / 10; i++) {
+                        test.add("w" + t + ":" + i, "x");
+                    }
+                    for (int i = 0; i < KEYS_PER_THREAD / 10; i++) {
+                        test.remove("w" + t + ":" + i);
+                    }
+                }
+            } else {
+                /*
+                 * readers see every stable key exactly once in every pass
+                 */
+                for (int r = 0; r < ROUNDS / 10; r++) {
+                    Set<String> stable = new HashSet<>();
+                    for (Map.Pair<String, String> p : test) {
+                        if (p.key().startsWith("stable")) {
+                            assertTrue(stable.add(p.key()));
+                        }
+                    }
+                    assertEquals(KEYS_PER_THREAD, stable.size());
+                }
+            }
+        });
+        assertEquals(KEYS_PER_THREAD, test.size());
+    }
+
+    @Test
+    public final void testConcurrentTransferFrom() throws InterruptedException {
+        final ConcurrentMap4<String, String> a = new ConcurrentMap4<>();
+        final ConcurrentMap4<String, String> b = new ConcurrentMap4<>();
+        for (int i = 0; i < KEYS_PER_THREAD; i++) {
+            a.add("key" + i, "value" + i);
+        }
+        /*
+         * half the threads move a into b and half b into a, which deadlocks
+         * unless both lock the two maps in the same order
+         */
+        runConcurrently(t -> {
+            for (int r = 0; r < ROUNDS; r++) {
+                if (t % 2 == 0) {
+                    b.transferFrom(a);
+                } else {
+                    a.transferFrom(b);
+                }
+            }
+        });
+        /*
+         * each transfer replaces its target by its source atomically, so the
+         * keys are never split between the maps: one of them has all the keys
+         * and the other none, or (once a transfer from an empty map has
+         * replaced the full one) both are empty
+         */
+        assertTrue(a.size() == 0 || b.size() == 0);
+        ConcurrentMap4<String, String> full = a;
+        if (a.size() == 0) {
+            full = b;
+        }
+        if (full.size() > 0) {
+            assertEquals(KEYS_PER_THREAD, full.size());
+            assertEquals("value7", full.value("key7"));
+        }
+    }
+
+}
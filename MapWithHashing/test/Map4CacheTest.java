@@ -0,0 +1,131 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * JUnit test fixture for {@code Map4Cache}.
+ */
+public class Map4CacheTest {
+
+    /**
+     * Maximum size of the caches in tests.
+     */
+    private static final int CAPACITY = 3;
+
+    @Test
+    public final void testLruEvictsLeastRecentlyUsed() {
+        Map4Cache<String, String> c = new Map4Cache<>(CAPACITY,
+                Map4Cache.Policy.LRU);
+        c.put("a", "1");
+        c.put("b", "2");
+        c.put("c", "3");
+        assertEquals("1", c.valueOrNull("a"));
+        c.put("d", "4");
+        assertEquals(CAPACITY, c.size());
+        assertFalse(c.hasKey("b"));
+        assertTrue(c.hasKey("a"));
+        assertTrue(c.hasKey("d"));
+        assertEquals(1, c.evictions());
+        assertEquals("{(c,3),(a,1),(d,4)}", c.toString());
+    }
+
+    @Test
+    public final void testCounters() {
+        Map4Cache<String, String> c = new Map4Cache<>(CAPACITY,
+                Map4Cache.Policy.LRU);
+        c.put("a", "1");
+        c.valueOrNull("a");
+        c.valueOrNull("a");
+        assertEquals(null, c.valueOrNull("z"));
+        assertEquals(2, c.hits());
+        assertEquals(1, c.misses());
+        assertEquals(0, c.evictions());
+    }
+
+    @Test
+    public final void testLoader() {
+        Map4Cache<Integer, String> c = new Map4Cache<>(CAPACITY,
+                Map4Cache.Policy.LRU, (k, v) -> 1, k -> "v" + k);
+        assertEquals("v7", c.valueOrNull(7));
+        assertEquals("v7", c.valueOrNull(7));
+        assertEquals(1, c.misses());
+        assertEquals(1, c.hits());
+        for (int i = 0; i < 10; i++) {
+            c.valueOrNull(i);
+        }
+        assertEquals(CAPACITY, c.size());
+    }
+
+    @Test
+    public final void testWeightBound() {
+        Map4Cache<String, String> c = new Map4Cache<>(10,
+                Map4Cache.Policy.LRU, (k, v) -> v.length(), null);
+        c.put("a", "12345");
+        c.put("b", "1234");
+        assertEquals(9, c.weight());
+        c.put("c", "123");
+        assertFalse(c.hasKey("a"));
+        assertEquals(7, c.weight());
+        c.put("b", "12345678");
+        assertFalse(c.hasKey("c"));
+        assertEquals(8, c.weight());
+        c.put("huge", "12345678901");
+        assertFalse(c.hasKey("huge"));
+        assertEquals("12345678", c.remove("b"));
+        assertEquals(0, c.weight());
+    }
+
+    @Test
+    public final void testTinyLfuKeepsFrequentKeys() {
+        Map4Cache<String, String> c = new Map4Cache<>(CAPACITY,
+                Map4Cache.Policy.TINY_LFU);
+        c.put("a", "1");
+        c.put("b", "2");
+        c.put("c", "3");
+        for (int i = 0; i < 100; i++) {
+            c.valueOrNull("a");
+            c.valueOrNull("b");
+            c.valueOrNull("c");
+            c.put("scan" + i, "x");
+        }
+        assertTrue(c.hasKey("a"));
+        assertTrue(c.hasKey("b"));
+        assertTrue(c.hasKey("c"));
+        assertEquals(100, c.evictions());
+    }
+
+    @Test
+    public final void testTinyLfuWeighsEveryVictim() {
+        Map4Cache<String, String> c = new Map4Cache<>(10,
+                Map4Cache.Policy.TINY_LFU, (k, v) -> v.length(), null);
+        c.put("cold", "12345");
+        c.put("hot", "12345");
+        for (int i = 0; i < 10; i++) {
+            c.valueOrNull("hot");
+        }
+        for (int i = 0; i < 3; i++) {
+            c.valueOrNull("big");
+        }
+        c.put("big", "1234567890");
+        assertFalse(c.hasKey("big"));
+        assertTrue(c.hasKey("cold"));
+        assertTrue(c.hasKey("hot"));
+        assertEquals(10, c.weight());
+        assertEquals(1, c.evictions());
+    }
+
+    @Test
+    public final void testClear() {
+        Map4Cache<String, String> c = new Map4Cache<>(CAPACITY,
+                Map4Cache.Policy.LRU);
+        c.put("a", "1");
+        c.clear();
+        assertEquals(0, c.size());
+        assertEquals(0, c.weight());
+        c.put("b", "2");
+        assertEquals("{(b,2)}", c.toString());
+    }
+
+}
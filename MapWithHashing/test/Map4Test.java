@@ -1,3 +1,9 @@
+import static org.junit.Assert.assertEquals;
+
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
 import components.map.Map;
 import components.map.Map1L;
 
@@ -6,6 +12,11 @@ import components.map.Map1L;
  */
 public class Map4Test extends MapTest {
 
+    /**
+     * Number of entries in stream tests.
+     */
+    private static final int MANY = 10000;
+
     @Override
     protected final Map<String, String> constructorTest() {
         return new Map4<String, String>();
@@ -16,4 +27,28 @@ public class Map4Test extends MapTest {
         return new Map1L<String, String>();
     }
 
+    @Test
+    public final void testStreamEmpty() {
+        Map4<String, String> m = new Map4<>();
+        assertEquals(0, m.stream().count());
+        assertEquals(0, m.parallelStream().count());
+    }
+
+    @Test
+    public final void testParallelStreamAggregates() {
+        Map4<String, Integer> m = new Map4<>();
+        long expectedSum = 0;
+        for (int i = 0; i < MANY; i++) {
+            m.add("key" + i, i);
+            expectedSum += i;
+        }
+        assertEquals(MANY, m.parallelStream().count());
+        assertEquals(expectedSum, m.parallelStream()
+                .mapToLong(p -> p.value()).sum());
+        assertEquals(MANY, m.parallelStream().map(p -> p.key())
+                .collect(Collectors.toSet()).size());
+        assertEquals(MANY / 2, m.stream().filter(p -> p.value() % 2 == 0)
+                .count());
+    }
+
 }
@@ -1,3 +1,9 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
 import components.map.Map;
 import components.map.Map1L;
 
@@ -12,6 +18,11 @@ public class Map4Test1009 extends MapTest {
      */
     private static final int TEST_HASH_TABLE_SIZE = 1009;
 
+    /**
+     * Number of entries in traversal tests.
+     */
+    private static final int MANY = 3000;
+
     @Override
     protected final Map<String, String> constructorTest() {
         return new Map4<String, String>(TEST_HASH_TABLE_SIZE);
@@ -22,4 +33,61 @@ public class Map4Test1009 extends MapTest {
         return new Map1L<String, String>();
     }
 
+    /**
+     * Returns a {@code Map4} with {@code MANY} entries, which are also added
+     * to {@code expected}.
+     *
+     * @param expected
+     *            the map to which the entries are also added
+     * @return the new Map4
+     * @updates expected
+     */
+    private static Map4<String, String> createMany(
+            Map<String, String> expected) {
+        Map4<String, String> m = new Map4<>(TEST_HASH_TABLE_SIZE);
+        for (int i = 0; i < MANY; i++) {
+            m.add("key" + i, "value" + i);
+            expected.add("key" + i, "value" + i);
+        }
+        return m;
+    }
+
+    @Test
+    public final void testForEachVisitsEveryEntry() {
+        Map<String, String> expected = new Map1L<>();
+        Map4<String, String> m = createMany(expected);
+        Map<String, String> seen = new Map1L<>();
+        m.forEach(seen::add);
+        assertEquals(expected, seen);
+    }
+
+    @Test
+    public final void testCursorIsReusable() {
+        Map<String, String> expected = new Map1L<>();
+        Map4<String, String> m = createMany(expected);
+        Map4<String, String>.Cursor c = m.cursor();
+        for (int round = 0; round < 2; round++) {
+            Map<String, String> seen = new Map1L<>();
+            while (c.advance()) {
+                seen.add(c.key(), c.value());
+            }
+            assertFalse(c.advance());
+            assertEquals(expected, seen);
+            c.reset();
+        }
+    }
+
+    @Test
+    public final void testCursorOnEmptyMap() {
+        Map4<String, String> m = new Map4<>(TEST_HASH_TABLE_SIZE);
+        Map4<String, String>.Cursor c = m.cursor();
+        assertFalse(c.advance());
+        m.add("a", "1");
+        c.reset();
+        assertTrue(c.advance());
+        assertEquals("a", c.key());
+        assertEquals("1", c.value());
+        assertFalse(c.advance());
+    }
+
 }
@@ -0,0 +1,73 @@
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import components.map.Map;
+import components.map.Map1L;
+
+/**
+ * Customized JUnit test fixture for {@code Map4} constructed with
+ * {@code Map4.withExpectedSize}, including tests of the bulk-loading methods.
+ */
+public class Map4TestExpectedSize extends MapTest {
+
+    /**
+     * Expected number of entries to be used in tests.
+     */
+    private static final int TEST_EXPECTED_SIZE = 4;
+
+    /**
+     * Maximum load factor to be used in tests.
+     */
+    private static final double TEST_MAX_LOAD_FACTOR = 0.75;
+
+    /**
+     * Number of entries in bulk-loading tests.
+     */
+    private static final int MANY = 2000;
+
+    @Override
+    protected final Map<String, String> constructorTest() {
+        return Map4.withExpectedSize(TEST_EXPECTED_SIZE,
+                TEST_MAX_LOAD_FACTOR);
+    }
+
+    @Override
+    protected final Map<String, String> constructorRef() {
+        return new Map1L<String, String>();
+    }
+
+    @Test
+    public final void testAddAllFromMap() {
+        Map4<String, String> m = Map4.withExpectedSize(0,
+                TEST_MAX_LOAD_FACTOR);
+        m.add("zero", "0");
+        Map<String, String> source = new Map1L<>();
+        Map<String, String> mExpected = new Map1L<>();
+        mExpected.add("zero", "0");
+        for (int i = 0; i < MANY; i++) {
+            source.add("key" + i, "value" + i);
+            mExpected.add("key" + i, "value" + i);
+        }
+        m.addAll(source);
+        assertEquals(mExpected, m);
+        assertEquals(MANY, source.size());
+    }
+
+    @Test
+    public final void testAddAllFromArrays() {
+        Map4<String, String> m = Map4.withExpectedSize(MANY,
+                TEST_MAX_LOAD_FACTOR, Map4.Option.POWER_OF_TWO);
+        String[] keys = new String[MANY];
+        String[] values = new String[MANY];
+        Map<String, String> mExpected = new Map1L<>();
+        for (int i = 0; i < MANY; i++) {
+            keys[i] = "key" + i;
+            values[i] = "value" + i;
+            mExpected.add(keys[i], values[i]);
+        }
+        m.addAll(keys, values);
+        assertEquals(mExpected, m);
+    }
+
+}
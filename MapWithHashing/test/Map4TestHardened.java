@@ -0,0 +1,95 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import components.map.Map;
+import components.map.Map1L;
+
+/**
+ * Customized JUnit test fixture for {@code Map4} in hardened mode.
+ */
+public class Map4TestHardened extends MapTest {
+
+    /**
+     * Size of hash table to be used in tests.
+     */
+    private static final int TEST_HASH_TABLE_SIZE = 101;
+
+    /**
+     * Maximum load factor to be used in tests.
+     */
+    private static final double TEST_MAX_LOAD_FACTOR = 0.75;
+
+    /**
+     * Number of blocks in each colliding key, giving 2^BLOCKS keys.
+     */
+    private static final int BLOCKS = 8;
+
+    @Override
+    protected final Map<String, String> constructorTest() {
+        return new Map4<String, String>(TEST_HASH_TABLE_SIZE,
+                TEST_MAX_LOAD_FACTOR, Map4.Option.HARDENED, Map4.Option.SHRINK);
+    }
+
+    @Override
+    protected final Map<String, String> constructorRef() {
+        return new Map1L<String, String>();
+    }
+
+    /**
+     * Returns the {@code k}th of 2^BLOCKS distinct strings that all have the
+     * same {@code hashCode}.
+     *
+     * @param k
+     *            the index of the string
+     * @return the string
+     */
+    private static String collidingKey(int k) {
+        StringBuilder sb = new StringBuilder();
+        for (int b = 0; b < BLOCKS; b++) {
+            if (((k >> b) & 1) == 0) {
+                sb.append("Aa");
+            } else {
+                sb.append("BB");
+            }
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public final void testCollidingKeys() {
+        Map4<String, String> test = new Map4<>(TEST_HASH_TABLE_SIZE,
+                TEST_MAX_LOAD_FACTOR, Map4.Option.HARDENED, Map4.Option.SHRINK,
+                Map4.Option.STATISTICS);
+        Map<String, String> expect = this.constructorRef();
+        int n = 1 << BLOCKS;
+        for (int k = 0; k < n; k++) {
+            test.add(collidingKey(k), "v" + k);
+            expect.add(collidingKey(k), "v" + k);
+        }
+        assertEquals(expect, test);
+        /*
+         * the keys share one bucket, which must have become a tree: a lookup
+         * examines about log2(n) entries rather than n/2
+         */
+        test.statistics().resetCounters();
+        for (int k = 0; k < n; k++) {
+            assertEquals("v" + k, test.valueOrNull(collidingKey(k)));
+        }
+        assertEquals(n, test.statistics().getLookups());
+        assertTrue(test.statistics().getMeanProbes() <= BLOCKS + 1);
+        for (int k = 0; k < n; k += 2) {
+            test.remove(collidingKey(k));
+            expect.remove(collidingKey(k));
+        }
+        assertEquals(expect, test);
+        assertTrue(test.hasKey(collidingKey(1)));
+        assertEquals("v3", test.value(collidingKey(3)));
+        while (test.size() > 0) {
+            test.removeAny();
+        }
+        assertEquals(this.constructorRef(), test);
+    }
+
+}
@@ -0,0 +1,33 @@
+import components.map.Map;
+import components.map.Map1L;
+
+/**
+ * Customized JUnit test fixture for {@code Map4} with
+ * {@code Map4.Option.POWER_OF_TWO}, starting from a one-bucket hash table so
+ * that every test exercises growing and shrinking a masked table.
+ */
+public class Map4TestPowerOfTwo extends MapTest {
+
+    /**
+     * Initial size of hash table to be used in tests.
+     */
+    private static final int TEST_HASH_TABLE_SIZE = 1;
+
+    /**
+     * Maximum load factor to be used in tests.
+     */
+    private static final double TEST_MAX_LOAD_FACTOR = 0.75;
+
+    @Override
+    protected final Map<String, String> constructorTest() {
+        return new Map4<String, String>(TEST_HASH_TABLE_SIZE,
+                TEST_MAX_LOAD_FACTOR, Map4.Option.POWER_OF_TWO,
+                Map4.Option.SHRINK);
+    }
+
+    @Override
+    protected final Map<String, String> constructorRef() {
+        return new Map1L<String, String>();
+    }
+
+}
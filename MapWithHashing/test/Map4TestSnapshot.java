@@ -0,0 +1,141 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import components.map.Map;
+import components.map.Map1L;
+
+/**
+ * Customized JUnit test fixture for {@code Map4} in hardened, shrinking mode,
+ * including tests of {@code snapshot}.
+ */
+public class Map4TestSnapshot extends MapTest {
+
+    /**
+     * Initial size of hash table to be used in tests.
+     */
+    private static final int TEST_HASH_TABLE_SIZE = 3;
+
+    /**
+     * Maximum load factor to be used in tests.
+     */
+    private static final double TEST_MAX_LOAD_FACTOR = 0.75;
+
+    /**
+     * Number of entries in snapshot tests.
+     */
+    private static final int MANY = 2000;
+
+    @Override
+    protected final Map<String, String> constructorTest() {
+        return new Map4<String, String>(TEST_HASH_TABLE_SIZE,
+                TEST_MAX_LOAD_FACTOR, Map4.Option.HARDENED,
+                Map4.Option.SHRINK);
+    }
+
+    @Override
+    protected final Map<String, String> constructorRef() {
+        return new Map1L<String, String>();
+    }
+
+    /**
+     * Returns the pairs of {@code s} as a {@code Map1L}.
+     *
+     * @param s
+     *            the snapshot
+     * @return the pairs of s
+     */
+    private static Map<String, String> contents(
+            Map4.Snapshot<String, String> s) {
+        Map<String, String> result = new Map1L<>();
+        for (Map.Pair<String, String> p : s) {
+            result.add(p.key(), p.value());
+        }
+        return result;
+    }
+
+    @Test
+    public final void testSnapshotUnchangedByLaterUpdates() {
+        Map4<String, String> m = new Map4<>(TEST_HASH_TABLE_SIZE,
+                TEST_MAX_LOAD_FACTOR, Map4.Option.SHRINK);
+        Map<String, String> expected = new Map1L<>();
+        for (int i = 0; i < MANY; i++) {
+            m.add("key" + i, "value" + i);
+            expected.add("key" + i, "value" + i);
+        }
+        Map4.Snapshot<String, String> s = m.snapshot();
+        m.replaceValue("key1", "changed");
+        m.remove("key2");
+        m.removeAny();
+        for (int i = MANY; i < 2 * MANY; i++) {
+            m.add("key" + i, "value" + i);
+        }
+        while (m.size() > 1) {
+            m.removeAny();
+        }
+        assertEquals(MANY, s.size());
+        assertEquals("value1", s.value("key1"));
+        assertTrue(s.hasKey("key2"));
+        assertFalse(s.hasKey("key" + MANY));
+        assertEquals(expected, contents(s));
+        assertEquals(MANY, s.stream().count());
+    }
+
+    @Test
+    public final void testMapUnchangedBySnapshots() {
+        Map4<String, String> m = new Map4<>();
+        m.add("a", "1");
+        Map4.Snapshot<String, String> first = m.snapshot();
+        m.add("b", "2");
+        Map4.Snapshot<String, String> second = m.snapshot();
+        m.replaceValue("a", "3");
+        m.clear();
+        m.add("c", "4");
+        assertEquals(1, first.size());
+        assertEquals(null, first.valueOrNull("b"));
+        assertEquals("1", second.value("a"));
+        assertEquals("2", second.value("b"));
+        assertEquals(1, m.size());
+        assertEquals("4", m.value("c"));
+    }
+
+    @Test
+    public final void testReaderWhileWriting() throws InterruptedException {
+        final Map4<String, Integer> m = new Map4<>();
+        for (int i = 0; i < MANY; i++) {
+            m.add("key" + i, i);
+        }
+        final Map4.Snapshot<String, Integer> s = m.snapshot();
+        final AtomicBoolean done = new AtomicBoolean(false);
+        final AtomicReference<String> failure = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            while (!done.get()) {
+                long sum = 0;
+                int count = 0;
+                for (Map.Pair<String, Integer> p : s) {
+                    sum += p.value();
+                    count++;
+                }
+                if (count != MANY || sum != (long) MANY * (MANY - 1) / 2) {
+                    failure.set("count=" + count + " sum=" + sum);
+                }
+            }
+        });
+        reader.start();
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < MANY; i++) {
+                m.replaceValue("key" + i, -i);
+                m.add("extra" + round + "-" + i, i);
+            }
+        }
+        done.set(true);
+        reader.join();
+        assertEquals(null, failure.get());
+    }
+
+}
@@ -0,0 +1,137 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+import components.map.Map;
+import components.map.Map1L;
+
+/**
+ * Customized JUnit test fixture for {@code Map4} with
+ * {@code Map4.Option.STATISTICS}, including tests of the statistics kept.
+ */
+public class Map4TestStatistics extends MapTest {
+
+    /**
+     * Initial size of hash table to be used in tests.
+     */
+    private static final int TEST_HASH_TABLE_SIZE = 7;
+
+    /**
+     * Maximum load factor to be used in tests.
+     */
+    private static final double TEST_MAX_LOAD_FACTOR = 0.75;
+
+    /**
+     * Number of entries in tests of the statistics.
+     */
+    private static final int MANY = 1000;
+
+    @Override
+    protected final Map<String, String> constructorTest() {
+        return new Map4<String, String>(TEST_HASH_TABLE_SIZE,
+                TEST_MAX_LOAD_FACTOR, Map4.Option.STATISTICS,
+                Map4.Option.SHRINK);
+    }
+
+    @Override
+    protected final Map<String, String> constructorRef() {
+        return new Map1L<String, String>();
+    }
+
+    /**
+     * Returns the sum of the elements of {@code a}.
+     *
+     * @param a
+     *            the array
+     * @return the sum of a's elements
+     */
+    private static long sum(long[] a) {
+        long total = 0;
+        for (long x : a) {
+            total += x;
+        }
+        return total;
+    }
+
+    @Test
+    public final void testShapeAndRehashes() {
+        Map4<String, String> m = new Map4<>(TEST_HASH_TABLE_SIZE,
+                TEST_MAX_LOAD_FACTOR, Map4.Option.STATISTICS);
+        for (int i = 0; i < MANY; i++) {
+            m.add("key" + i, "value" + i);
+        }
+        m.remove("key0");
+        Map4Statistics s = m.statistics();
+        assertEquals(MANY - 1, s.getSize());
+        assertEquals(s.getBucketCount(), sum(s.getBucketHistogram()));
+        assertTrue(s.getRehashes() > 0);
+        assertTrue(s.getLoadFactor() <= TEST_MAX_LOAD_FACTOR);
+        assertTrue(s.getMaxChainLength() >= 1);
+        assertTrue(s.getMeanChainLength() >= 1.0);
+    }
+
+    @Test
+    public final void testLookupCounters() {
+        Map4<String, String> m = new Map4<>(TEST_HASH_TABLE_SIZE,
+                TEST_MAX_LOAD_FACTOR, Map4.Option.STATISTICS);
+        m.add("a", "1");
+        m.statistics().resetCounters();
+        m.valueOrNull("a");
+        m.valueOrNull("b");
+        assertEquals(2, m.statistics().getLookups());
+        assertTrue(m.statistics().getProbes() >= 1);
+        assertEquals(0, m.statistics().getRehashes());
+    }
+
+    @Test
+    public final void testLookupCountersOncePerCall() {
+        Map4<String, String> m = new Map4<>(TEST_HASH_TABLE_SIZE,
+                TEST_MAX_LOAD_FACTOR, Map4.Option.STATISTICS);
+        m.add("a", "1");
+        m.statistics().resetCounters();
+        assertEquals("1", m.value("a"));
+        assertEquals(1, m.statistics().getLookups());
+        assertEquals(1, m.statistics().getProbes());
+        assertTrue(m.hasKey("a"));
+        assertEquals("1", m.replaceValue("a", "2"));
+        assertEquals(3, m.statistics().getLookups());
+        assertEquals(3, m.statistics().getProbes());
+        m.add("b", "3");
+        m.remove("a");
+        assertEquals(3, m.statistics().getLookups());
+    }
+
+    @Test
+    public final void testTransferFromRecounts() {
+        Map4<String, String> m = new Map4<>(TEST_HASH_TABLE_SIZE,
+                TEST_MAX_LOAD_FACTOR, Map4.Option.STATISTICS);
+        Map4<String, String> source = new Map4<>(TEST_HASH_TABLE_SIZE,
+                TEST_MAX_LOAD_FACTOR, Map4.Option.STATISTICS);
+        source.add("a", "1");
+        source.add("b", "2");
+        m.transferFrom(source);
+        assertEquals(2, m.statistics().getSize());
+        assertEquals(0, source.statistics().getSize());
+    }
+
+    @Test
+    public final void testRegisterWithJmx() throws JMException {
+        Map4<String, String> m = new Map4<>(TEST_HASH_TABLE_SIZE,
+                TEST_MAX_LOAD_FACTOR, Map4.Option.STATISTICS);
+        m.add("a", "1");
+        m.statistics().register("testRegisterWithJmx");
+        Object size = ManagementFactory.getPlatformMBeanServer().getAttribute(
+                new ObjectName("Map4:type=Statistics,name="
+                        + ObjectName.quote("testRegisterWithJmx")),
+                "Size");
+        assertEquals(1, ((Integer) size).intValue());
+        m.statistics().unregister();
+    }
+
+}
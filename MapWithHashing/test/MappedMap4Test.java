@@ -0,0 +1,192 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import components.map.Map;
+import components.map.Map1L;
+
+/**
+ * JUnit test fixture for {@code MappedMap4}'s constructors, kernel methods,
+ * and persistence.
+ */
+public class MappedMap4Test {
+
+    /**
+     * Number of entries in tests that make the table grow.
+     */
+    private static final int MANY = 5000;
+
+    /**
+     * Creates and returns a {@code MappedMap4} with the given entries, each
+     * key mapped to its index in {@code keys}.
+     *
+     * @param keys
+     *            the keys
+     * @return the constructed map
+     * @requires [the entries in keys are unique]
+     */
+    private static MappedMap4 createFromArgsTest(String... keys) {
+        MappedMap4 map = new MappedMap4();
+        for (int i = 0; i < keys.length; i++) {
+            map.add(keys[i], i);
+        }
+        return map;
+    }
+
+    /**
+     * Creates and returns a {@code Map1L} with the given entries, each key
+     * mapped to its index in {@code keys}.
+     *
+     * @param keys
+     *            the keys
+     * @return the constructed map
+     * @requires [the entries in keys are unique]
+     */
+    private static Map<String, Integer> createFromArgsRef(String... keys) {
+        Map<String, Integer> map = new Map1L<>();
+        for (int i = 0; i < keys.length; i++) {
+            map.add(keys[i], i);
+        }
+        return map;
+    }
+
+    /**
+     * Returns a new empty temporary file.
+     *
+     * @return the file
+     * @throws IOException
+     *             if the file cannot be created
+     */
+    private static File newFile() throws IOException {
+        File f = File.createTempFile("MappedMap4Test", ".map");
+        f.deleteOnExit();
+        return f;
+    }
+
+    @Test
+    public final void testNoArgumentConstructor() {
+        MappedMap4 m = new MappedMap4();
+        Map<String, Integer> mExpected = new Map1L<>();
+        assertEquals(mExpected, m);
+        m.close();
+    }
+
+    @Test
+    public final void testAddRemoveValue() {
+        MappedMap4 m = createFromArgsTest("red", "green", "blue");
+        Map<String, Integer> mExpected = createFromArgsRef("red", "green",
+                "blue");
+        assertTrue(m.hasKey("green"));
+        assertFalse(m.hasKey("gree"));
+        assertEquals(Integer.valueOf(2), m.value("blue"));
+        Map.Pair<String, Integer> p = m.remove("green");
+        Map.Pair<String, Integer> pExpected = mExpected.remove("green");
+        assertEquals(pExpected, p);
+        assertEquals(mExpected, m);
+        m.close();
+    }
+
+    @Test
+    public final void testRemoveAnyEmpties() {
+        MappedMap4 m = createFromArgsTest("a", "b", "c", "d");
+        Map<String, Integer> mExpected = createFromArgsRef("a", "b", "c",
+                "d");
+        while (m.size() > 0) {
+            Map.Pair<String, Integer> p = m.removeAny();
+            assertEquals(mExpected.remove(p.key()), p);
+        }
+        assertEquals(0, mExpected.size());
+        m.close();
+    }
+
+    @Test
+    public final void testGrowthAndIteration() {
+        String[] keys = new String[MANY];
+        for (int i = 0; i < MANY; i++) {
+            keys[i] = "key" + i;
+        }
+        MappedMap4 m = createFromArgsTest(keys);
+        Map<String, Integer> mExpected = createFromArgsRef(keys);
+        assertEquals(mExpected, m);
+        int count = 0;
+        for (Map.Pair<String, Integer> p : m) {
+            assertEquals(mExpected.value(p.key()), p.value());
+            count++;
+        }
+        assertEquals(MANY, count);
+        m.close();
+    }
+
+    @Test
+    public final void testWideAndLatin1Keys() {
+        MappedMap4 m = createFromArgsTest("caf\u00e9", "\u65e5\u672c", "");
+        assertTrue(m.hasKey("caf\u00e9"));
+        assertFalse(m.hasKey("cafe"));
+        assertEquals(Integer.valueOf(1), m.value("\u65e5\u672c"));
+        assertEquals(Integer.valueOf(2), m.value(""));
+        Map.Pair<String, Integer> p = m.remove("\u65e5\u672c");
+        assertEquals("\u65e5\u672c", p.key());
+        m.close();
+    }
+
+    @Test
+    public final void testReplaceValue() {
+        MappedMap4 m = createFromArgsTest("x", "y");
+        Integer old = m.replaceValue("y", 7);
+        assertEquals(Integer.valueOf(1), old);
+        assertEquals(Integer.valueOf(7), m.value("y"));
+        m.close();
+    }
+
+    @Test
+    public final void testTransferFrom() {
+        MappedMap4 m = createFromArgsTest("one");
+        MappedMap4 source = createFromArgsTest("two", "three");
+        Map<String, Integer> mExpected = createFromArgsRef("two", "three");
+        m.transferFrom(source);
+        assertEquals(mExpected, m);
+        assertEquals(0, source.size());
+        source.add("four", 4);
+        assertEquals(Integer.valueOf(4), source.value("four"));
+        m.close();
+        source.close();
+    }
+
+    @Test
+    public final void testClear() {
+        MappedMap4 m = createFromArgsTest("one", "two");
+        m.clear();
+        assertEquals(0, m.size());
+        assertFalse(m.hasKey("one"));
+        m.add("one", 1);
+        assertEquals(Integer.valueOf(1), m.value("one"));
+        m.close();
+    }
+
+    @Test
+    public final void testSurvivesReopen() throws IOException {
+        File f = newFile();
+        MappedMap4 m = new MappedMap4(f);
+        for (int i = 0; i < MANY; i++) {
+            m.add("word" + i, i);
+        }
+        m.remove("word17");
+        m.close();
+
+        MappedMap4 reopened = new MappedMap4(f);
+        assertEquals(MANY - 1, reopened.size());
+        assertFalse(reopened.hasKey("word17"));
+        assertEquals(Integer.valueOf(MANY - 1),
+                reopened.value("word" + (MANY - 1)));
+        reopened.add("word17", -1);
+        assertEquals(Integer.valueOf(-1), reopened.value("word17"));
+        reopened.close();
+        assertTrue(f.delete());
+    }
+
+}
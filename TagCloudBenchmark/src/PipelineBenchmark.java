@@ -0,0 +1,894 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import components.map.Map;
+import components.map.Map1L;
+import components.queue.Queue;
+import components.queue.Queue1L;
+import components.set.Set;
+import components.set.Set1L;
+import components.simplereader.SimpleReader;
+import components.simplereader.SimpleReader1L;
+import components.simplewriter.SimpleWriter;
+import components.simplewriter.SimpleWriter1L;
+import components.sortingmachine.SortingMachine;
+
+/**
+ * Benchmark of the three word-counting pipelines of this repository:
+ * {@code TagCloudGenerator} (OSU components),
+ * {@code TagCloudGeneratorWithStandard} (standard Java collections), and
+ * {@code CountingWords} (in {@code WordCounter.zip}). Each phase of each
+ * pipeline (tokenize, count, rank, render) is timed on generated corpora whose
+ * words follow a Zipf distribution, and its throughput and allocation rate
+ * are reported.
+ *
+ * <p>
+ * The three pipelines all consist of classes in the default package, two of
+ * them named {@code TagCloudGenerator}, so each is compiled from its sources
+ * into a temporary directory (or, without a system Java compiler, taken from
+ * its project's {@code bin}) and loaded by a class loader of its own. Their
+ * phases are private methods, called by reflection:
+ * <ul>
+ * <li>tokenize: the line tokenizer alone, passing each word to a counter of
+ * words;</li>
+ * <li>count: the counting method the pipeline's {@code main} would use for
+ * the corpus, which scans the corpus itself;</li>
+ * <li>rank: selecting the top words and ordering them for display;</li>
+ * <li>render: writing the HTML page.</li>
+ * </ul>
+ * {@code CountingWords} does not separate these: its phases are tokenize
+ * (into a queue of words), sort (of that queue), and count+render
+ * ({@code wordSort}), and since it keeps every word of the corpus in memory
+ * it is only run on corpora of at most {@code COUNTING_WORDS_LIMIT} bytes.
+ *
+ * <p>
+ * The allocation rate is the growth of the bytes allocated by all live
+ * threads during a phase, as reported by the HotSpot
+ * {@code com.sun.management.ThreadMXBean}; it is shown as "n/a" on other
+ * virtual machines.
+ *
+ * <p>
+ * Usage: {@code java PipelineBenchmark [-sizes mb,...] [-rounds n] [-top n]
+ * [-vocabulary n] [-zipf s] [-root dir]}, from the {@code TagCloudBenchmark}
+ * directory or with {@code -root} naming the repository. Run without
+ * {@code -ea}, since the precondition checks of the OSU components would be
+ * measured too.
+ *
+ * @author Tingyang Xie and Yunzhou Chen
+ *
+ */
+public final class PipelineBenchmark {
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private PipelineBenchmark() {
+    }
+
+    /**
+     * Default corpus sizes, in megabytes.
+     */
+    private static final int[] DEFAULT_SIZES = {1, 10, 100 };
+
+    /**
+     * Default number of measured rounds.
+     */
+    private static final int DEFAULT_ROUNDS = 3;
+
+    /**
+     * Number of unmeasured warm-up rounds before the measured ones.
+     */
+    private static final int WARMUP_ROUNDS = 1;
+
+    /**
+     * Default number of words of the tag clouds.
+     */
+    private static final int DEFAULT_TOP = 100;
+
+    /**
+     * Default number of distinct words of the corpora.
+     */
+    private static final int DEFAULT_VOCABULARY = 100000;
+
+    /**
+     * Default exponent of the Zipf distribution of the words.
+     */
+    private static final double DEFAULT_ZIPF_EXPONENT = 1.0;
+
+    /**
+     * Largest corpus, in bytes, on which {@code CountingWords} is run.
+     */
+    private static final long COUNTING_WORDS_LIMIT = 16L << 20;
+
+    /**
+     * Length of the longest generated word.
+     */
+    private static final int MAX_WORD_LENGTH = 10;
+
+    /**
+     * Length after which a generated line is ended.
+     */
+    private static final int LINE_LENGTH = 72;
+
+    /**
+     * Seed for all random choices, so corpora are repeatable.
+     */
+    private static final long SEED = 2231;
+
+    /**
+     * Bytes per megabyte.
+     */
+    private static final double BYTES_PER_MEGABYTE = 1 << 20;
+
+    /**
+     * Nanoseconds per second.
+     */
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    /**
+     * Destination for results computed by the timed code, so the JIT cannot
+     * remove that code as dead.
+     */
+    private static volatile long sink;
+
+    /**
+     * Calls {@code method} by reflection, making it accessible, and unwraps
+     * the exceptions it throws.
+     *
+     * @param owner
+     *            the class declaring the method
+     * @param name
+     *            the name of the method
+     * @param types
+     *            the parameter types of the method
+     * @param args
+     *            the arguments
+     * @return the result of the method
+     * @throws Exception
+     *             if the method cannot be called or throws
+     */
+    private static Object call(Class<?> owner, String name, Class<?>[] types,
+            Object... args) throws Exception {
+        Method method = owner.getDeclaredMethod(name, types);
+        method.setAccessible(true);
+        try {
+            return method.invoke(null, args);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw (Error) cause;
+        }
+    }
+
+    /**
+     * Returns the number of bytes allocated so far by all live threads, or -1
+     * if the virtual machine does not report it.
+     *
+     * @return the number of bytes allocated, or -1
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        com.sun.management.ThreadMXBean hotSpot =
+                (com.sun.management.ThreadMXBean) bean;
+        if (!hotSpot.isThreadAllocatedMemorySupported()
+                || !hotSpot.isThreadAllocatedMemoryEnabled()) {
+            return -1;
+        }
+        long total = 0;
+        for (long bytes : hotSpot
+                .getThreadAllocatedBytes(bean.getAllThreadIds())) {
+            if (bytes > 0) {
+                total += bytes;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Generates, unless it already exists, a corpus of about {@code size}
+     * bytes of words drawn from a Zipf distribution over {@code vocabulary}
+     * random words, some capitalized, separated by spaces, commas, and ends of
+     * sentences and lines.
+     *
+     * @param dir
+     *            the directory of the corpus
+     * @param size
+     *            the number of bytes
+     * @param vocabulary
+     *            the number of distinct words
+     * @param exponent
+     *            the exponent of the Zipf distribution
+     * @return the corpus file
+     * @throws IOException
+     *             if the corpus cannot be written
+     */
+    private static File corpus(File dir, long size, int vocabulary,
+            double exponent) throws IOException {
+        File file = new File(dir, "zipf-" + size + "-" + vocabulary + "-"
+                + exponent + ".txt");
+        if (file.length() >= size) {
+            return file;
+        }
+        Random random = new Random(SEED);
+        String[] words = new String[vocabulary];
+        char[] letters = new char[MAX_WORD_LENGTH];
+        for (int i = 0; i < vocabulary; i++) {
+            int length = 1 + random.nextInt(MAX_WORD_LENGTH);
+            for (int j = 0; j < length; j++) {
+                letters[j] = (char) ('a' + random.nextInt(26));
+            }
+            words[i] = new String(letters, 0, length);
+        }
+        double[] cumulative = new double[vocabulary];
+        double total = 0;
+        for (int i = 0; i < vocabulary; i++) {
+            total += 1 / Math.pow(i + 1, exponent);
+            cumulative[i] = total;
+        }
+        File temp = new File(dir, file.getName() + ".tmp");
+        try (BufferedWriter out = new BufferedWriter(new FileWriter(temp))) {
+            long written = 0;
+            int line = 0;
+            while (written < size) {
+                int i = Arrays.binarySearch(cumulative,
+                        random.nextDouble() * total);
+                if (i < 0) {
+                    i = Math.min(vocabulary - 1, -(i + 1));
+                }
+                String word = words[i];
+                if (random.nextInt(10) == 0) {
+                    word = Character.toUpperCase(word.charAt(0))
+                            + word.substring(1);
+                }
+                out.write(word);
+                line += word.length();
+                String separator = " ";
+                if (line >= LINE_LENGTH) {
+                    separator = ".\n";
+                    line = 0;
+                } else if (random.nextInt(10) == 0) {
+                    separator = ", ";
+                }
+                out.write(separator);
+                line += separator.length();
+                written += word.length() + separator.length();
+            }
+        }
+        Files.move(temp.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+        file.deleteOnExit();
+        return file;
+    }
+
+    /**
+     * Compiles {@code sources} into a new temporary directory and returns a
+     * class loader for the classes; without a system Java compiler, returns a
+     * class loader for {@code fallback} instead.
+     *
+     * @param sources
+     *            the source files
+     * @param fallback
+     *            the directory of previously compiled classes
+     * @param out
+     *            where to report which classes are used
+     * @param temporary
+     *            the temporary directories, to which the new one is added
+     * @return a class loader for the compiled classes
+     * @throws IOException
+     *             if the sources cannot be compiled
+     */
+    private static ClassLoader compile(List<File> sources, File fallback,
+            SimpleWriter out, List<File> temporary) throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        File classes = fallback;
+        if (compiler == null) {
+            out.println("no Java compiler: using the classes in " + fallback);
+        } else {
+            classes = Files.createTempDirectory("benchmark").toFile();
+            temporary.add(classes);
+            List<String> args = new ArrayList<>(Arrays.asList("-nowarn",
+                    "-classpath", System.getProperty("java.class.path"), "-d",
+                    classes.getPath()));
+            for (File source : sources) {
+                args.add(source.getPath());
+            }
+            if (compiler.run(null, null, null,
+                    args.toArray(new String[args.size()])) != 0) {
+                throw new IOException("cannot compile " + sources);
+            }
+        }
+        return new URLClassLoader(new URL[] {classes.toURI().toURL() },
+                PipelineBenchmark.class.getClassLoader());
+    }
+
+    /**
+     * Returns the Java source files of directory {@code dir}.
+     *
+     * @param dir
+     *            the directory
+     * @return the source files in dir
+     */
+    private static List<File> sources(File dir) {
+        List<File> sources = new ArrayList<>();
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.getName().endsWith(".java")) {
+                    sources.add(file);
+                }
+            }
+        }
+        return sources;
+    }
+
+    /**
+     * Copies the entries of zip file {@code zip} directly under directory
+     * {@code prefix} into a new temporary directory, leaving the zip file
+     * unchanged.
+     *
+     * @param zip
+     *            the zip file
+     * @param prefix
+     *            the directory in the zip file, ending with "/"
+     * @param temporary
+     *            the temporary directories, to which the new one is added
+     * @return the copy of the directory
+     * @throws IOException
+     *             if the zip file cannot be read
+     */
+    private static File extract(File zip, String prefix,
+            List<File> temporary) throws IOException {
+        File dir = Files.createTempDirectory("benchmark").toFile();
+        temporary.add(dir);
+        try (ZipFile zipFile = new ZipFile(zip)) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                String name = entry.getName();
+                if (name.startsWith(prefix) && !entry.isDirectory()
+                        && name.indexOf('/', prefix.length()) < 0) {
+                    File copy = new File(dir, name.substring(prefix.length()));
+                    try (InputStream in = zipFile.getInputStream(entry)) {
+                        Files.copy(in, copy.toPath());
+                    }
+                }
+            }
+        }
+        return dir;
+    }
+
+    /**
+     * Deletes {@code file} and, if it is a directory, everything in it.
+     * ({@code File.deleteOnExit} cannot delete a directory that is not
+     * empty.)
+     *
+     * @param file
+     *            the file or directory
+     */
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        if (!file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+    /**
+     * One of the pipelines, as a sequence of timed phases run on a corpus.
+     */
+    private abstract static class Pipeline {
+
+        /**
+         * The name of the pipeline.
+         */
+        private final String name;
+
+        /**
+         * The names of the phases.
+         */
+        private final String[] phases;
+
+        /**
+         * The main class of the pipeline.
+         */
+        protected final Class<?> main;
+
+        /**
+         * Constructor.
+         *
+         * @param name
+         *            the name of the pipeline
+         * @param phases
+         *            the names of the phases
+         * @param main
+         *            the main class of the pipeline
+         */
+        Pipeline(String name, String[] phases, Class<?> main) {
+            this.name = name;
+            this.phases = phases;
+            this.main = main;
+        }
+
+        /**
+         * Returns the name of the pipeline.
+         *
+         * @return the name
+         */
+        final String name() {
+            return this.name;
+        }
+
+        /**
+         * Returns the names of the phases.
+         *
+         * @return the names of the phases
+         */
+        final String[] phases() {
+            return this.phases.clone();
+        }
+
+        /**
+         * Reports whether the pipeline is run on a corpus of {@code size}
+         * bytes.
+         *
+         * @param size
+         *            the size of the corpus
+         * @return true iff the pipeline is run on the corpus
+         */
+        boolean accepts(long size) {
+            return true;
+        }
+
+        /**
+         * Runs phase {@code phase}.
+         *
+         * @param phase
+         *            the index of the phase
+         * @param corpus
+         *            the corpus
+         * @param top
+         *            the number of words of the tag cloud
+         * @param page
+         *            the file of the HTML page
+         * @param state
+         *            the results of the earlier phases, by index; this
+         *            phase's result is stored at index phase
+         * @throws Exception
+         *             if the phase fails
+         */
+        abstract void run(int phase, File corpus, int top, File page,
+                Object[] state) throws Exception;
+
+    }
+
+    /**
+     * The pipeline of {@code TagCloudGenerator}.
+     */
+    private static final class ComponentsPipeline extends Pipeline {
+
+        /**
+         * Constructor.
+         *
+         * @param main
+         *            the class TagCloudGenerator
+         */
+        ComponentsPipeline(Class<?> main) {
+            super("components", new String[] {"tokenize", "count", "rank",
+                "render" }, main);
+        }
+
+        @Override
+        void run(int phase, File corpus, int top, File page, Object[] state)
+                throws Exception {
+            Class<?> c = this.main;
+            switch (phase) {
+                case 0: {
+                    long[] words = new long[1];
+                    Consumer<String> counter = word -> words[0]++;
+                    SimpleReader in = new SimpleReader1L(corpus.getPath());
+                    call(c, "words",
+                            new Class<?>[] {SimpleReader.class,
+                                Consumer.class },
+                            in, counter);
+                    in.close();
+                    state[phase] = words[0];
+                    break;
+                }
+                case 1: {
+                    Class<?> tokenizer = c.getClassLoader()
+                            .loadClass("MappedTokenizer");
+                    if ((Boolean) call(tokenizer, "supportsDefaultCharset",
+                            new Class<?>[0])) {
+                        state[phase] = call(c, "mappedReader",
+                                new Class<?>[] {String.class },
+                                corpus.getPath());
+                    } else {
+                        SimpleReader in = new SimpleReader1L(corpus.getPath());
+                        state[phase] = call(c, "reader",
+                                new Class<?>[] {SimpleReader.class }, in);
+                        in.close();
+                    }
+                    break;
+                }
+                case 2: {
+                    Object ranked = call(c, "topCounts",
+                            new Class<?>[] {Map.class, int.class },
+                            state[1], top);
+                    state[phase] = call(c, "SortByAlph",
+                            new Class<?>[] {SortingMachine.class }, ranked);
+                    break;
+                }
+                default: {
+                    SimpleWriter out = new SimpleWriter1L(page.getPath());
+                    call(c, "output",
+                            new Class<?>[] {SortingMachine.class,
+                                SimpleWriter.class, String.class, int.class },
+                            state[2], out, corpus.getName(), top);
+                    out.close();
+                    break;
+                }
+            }
+        }
+
+    }
+
+    /**
+     * The pipeline of {@code TagCloudGeneratorWithStandard}.
+     */
+    private static final class StandardPipeline extends Pipeline {
+
+        /**
+         * Constructor.
+         *
+         * @param main
+         *            the class TagCloudGenerator
+         */
+        StandardPipeline(Class<?> main) {
+            super("standard", new String[] {"tokenize", "count", "rank",
+                "render" }, main);
+        }
+
+        @Override
+        void run(int phase, File corpus, int top, File page, Object[] state)
+                throws Exception {
+            Class<?> c = this.main;
+            switch (phase) {
+                case 0: {
+                    long[] words = new long[1];
+                    Consumer<String> counter = word -> words[0]++;
+                    Method countLine = c.getDeclaredMethod("countLine",
+                            String.class, Consumer.class);
+                    countLine.setAccessible(true);
+                    try (BufferedReader in = new BufferedReader(
+                            new FileReader(corpus))) {
+                        String line = in.readLine();
+                        while (line != null) {
+                            countLine.invoke(null, line, counter);
+                            line = in.readLine();
+                        }
+                    }
+                    state[phase] = words[0];
+                    break;
+                }
+                case 1: {
+                    Class<?> tokenizer = c.getClassLoader()
+                            .loadClass("MappedTokenizer");
+                    Field field = c.getDeclaredField("PARALLEL_THRESHOLD");
+                    field.setAccessible(true);
+                    long threshold = field.getLong(null);
+                    if (!(Boolean) call(tokenizer, "supportsDefaultCharset",
+                            new Class<?>[0])) {
+                        try (BufferedReader in = new BufferedReader(
+                                new FileReader(corpus))) {
+                            state[phase] = call(c, "getMap",
+                                    new Class<?>[] {BufferedReader.class },
+                                    in);
+                        }
+                    } else if (corpus.length() >= threshold) {
+                        state[phase] = call(c, "getMapParallel",
+                                new Class<?>[] {File.class }, corpus);
+                    } else {
+                        state[phase] = call(c, "getMapMapped",
+                                new Class<?>[] {File.class }, corpus);
+                    }
+                    break;
+                }
+                case 2: {
+                    java.util.Map<?, ?> counts = (java.util.Map<?, ?>) state[1];
+                    int n = Math.min(top, counts.size());
+                    Object words = call(c, "getTopWords",
+                            new Class<?>[] {java.util.Map.class, int.class },
+                            counts, n);
+                    Object fonts = call(c, "getMapwithFontSize",
+                            new Class<?>[] {java.util.Map.class }, words);
+                    state[phase] = new Object[] {words, fonts, n };
+                    break;
+                }
+                default: {
+                    Object[] ranked = (Object[]) state[2];
+                    try (BufferedWriter out = new BufferedWriter(
+                            new FileWriter(page))) {
+                        call(c, "writeTagCloud",
+                                new Class<?>[] {java.util.Map.class,
+                                    java.util.Map.class, BufferedWriter.class,
+                                    String.class, int.class },
+                                ranked[0], ranked[1], out, corpus.getName(),
+                                ranked[2]);
+                    }
+                    break;
+                }
+            }
+        }
+
+    }
+
+    /**
+     * The pipeline of {@code CountingWords}.
+     */
+    private static final class CountingWordsPipeline extends Pipeline {
+
+        /**
+         * The separators of CountingWords.main.
+         */
+        private static final String SEPARATORS = " \t, -- .";
+
+        /**
+         * Constructor.
+         *
+         * @param main
+         *            the class CountingWords
+         */
+        CountingWordsPipeline(Class<?> main) {
+            super("countingwords", new String[] {"tokenize", "sort",
+                "count+render" }, main);
+        }
+
+        @Override
+        boolean accepts(long size) {
+            return size <= COUNTING_WORDS_LIMIT;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        void run(int phase, File corpus, int top, File page, Object[] state)
+                throws Exception {
+            Class<?> c = this.main;
+            Class<?> comparator = c.getClassLoader()
+                    .loadClass("CountingWords$IntegerLT");
+            Constructor<?> newComparator = comparator.getDeclaredConstructor();
+            newComparator.setAccessible(true);
+            switch (phase) {
+                case 0: {
+                    Set<Character> separators = new Set1L<>();
+                    call(c, "generateElements",
+                            new Class<?>[] {String.class, Set.class },
+                            SEPARATORS, separators);
+                    Method next = c.getDeclaredMethod("nextWordOrSeparator",
+                            String.class, int.class, Set.class);
+                    next.setAccessible(true);
+                    Queue<String> words = new Queue1L<>();
+                    SimpleReader in = new SimpleReader1L(corpus.getPath());
+                    while (!in.atEOS()) {
+                        String line = in.nextLine();
+                        int position = 0;
+                        while (position < line.length()) {
+                            String token = (String) next.invoke(null, line,
+                                    position, separators);
+                            if (!separators.contains(token.charAt(0))) {
+                                words.enqueue(token);
+                            }
+                            position += token.length();
+                        }
+                    }
+                    in.close();
+                    state[phase] = words;
+                    break;
+                }
+                case 1: {
+                    Queue<String> words = (Queue<String>) state[0];
+                    words.sort((Comparator<String>) newComparator
+                            .newInstance());
+                    state[phase] = words;
+                    break;
+                }
+                default: {
+                    SimpleWriter out = new SimpleWriter1L(page.getPath());
+                    call(c, "outputIndexHeader",
+                            new Class<?>[] {SimpleWriter.class }, out);
+                    call(c, "wordSort",
+                            new Class<?>[] {Queue.class, Map.class,
+                                Comparator.class, SimpleWriter.class },
+                            state[1], new Map1L<String, Integer>(),
+                            newComparator.newInstance(), out);
+                    call(c, "outputIndexFooter",
+                            new Class<?>[] {SimpleWriter.class }, out);
+                    out.close();
+                    break;
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Runs {@code pipeline} on {@code corpus} {@code rounds} times after the
+     * warm-up rounds, and reports the mean time and allocation of each phase.
+     *
+     * @param pipeline
+     *            the pipeline
+     * @param corpus
+     *            the corpus
+     * @param top
+     *            the number of words of the tag cloud
+     * @param rounds
+     *            the number of measured rounds
+     * @param out
+     *            where to report
+     * @throws Exception
+     *             if a phase fails
+     */
+    private static void measure(Pipeline pipeline, File corpus, int top,
+            int rounds, SimpleWriter out) throws Exception {
+        String[] phases = pipeline.phases();
+        long[] nanos = new long[phases.length];
+        long[] bytes = new long[phases.length];
+        File page = File.createTempFile("benchmark", ".html");
+        try {
+            for (int r = 0; r < WARMUP_ROUNDS + rounds; r++) {
+                Object[] state = new Object[phases.length];
+                for (int phase = 0; phase < phases.length; phase++) {
+                    long allocated = allocatedBytes();
+                    long start = System.nanoTime();
+                    pipeline.run(phase, corpus, top, page, state);
+                    long elapsed = System.nanoTime() - start;
+                    if (r >= WARMUP_ROUNDS) {
+                        nanos[phase] += elapsed;
+                        if (allocated >= 0) {
+                            bytes[phase] += allocatedBytes() - allocated;
+                        } else {
+                            bytes[phase] = -1;
+                        }
+                    }
+                }
+                sink += state.length;
+            }
+        } finally {
+            Files.deleteIfExists(page.toPath());
+        }
+        double megabytes = corpus.length() / BYTES_PER_MEGABYTE;
+        for (int phase = 0; phase < phases.length; phase++) {
+            double seconds = nanos[phase] / NANOS_PER_SECOND / rounds;
+            String allocation = "n/a";
+            if (bytes[phase] >= 0) {
+                allocation = String.format("%.1f",
+                        bytes[phase] / BYTES_PER_MEGABYTE / rounds / seconds);
+            }
+            out.println(String.format("%-14s %8.0f %-13s %10.1f %10.1f %12s",
+                    pipeline.name(), megabytes, phases[phase],
+                    seconds * 1000, megabytes / seconds, allocation));
+        }
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args
+     *            the options described in the class comment
+     */
+    public static void main(String[] args) {
+        int[] sizes = DEFAULT_SIZES;
+        int rounds = DEFAULT_ROUNDS;
+        int top = DEFAULT_TOP;
+        int vocabulary = DEFAULT_VOCABULARY;
+        double exponent = DEFAULT_ZIPF_EXPONENT;
+        File root = new File("..");
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            if (args[i].equals("-sizes")) {
+                String[] parts = value.split(",");
+                sizes = new int[parts.length];
+                for (int j = 0; j < parts.length; j++) {
+                    sizes[j] = Integer.parseInt(parts[j].trim());
+                }
+            } else if (args[i].equals("-rounds")) {
+                rounds = Integer.parseInt(value);
+            } else if (args[i].equals("-top")) {
+                top = Integer.parseInt(value);
+            } else if (args[i].equals("-vocabulary")) {
+                vocabulary = Integer.parseInt(value);
+            } else if (args[i].equals("-zipf")) {
+                exponent = Double.parseDouble(value);
+            } else if (args[i].equals("-root")) {
+                root = new File(value);
+            }
+        }
+        SimpleWriter out = new SimpleWriter1L();
+
+        List<File> temporary = new ArrayList<>();
+        try {
+            List<Pipeline> pipelines = new ArrayList<>();
+            ClassLoader components = compile(
+                    sources(new File(root, "TagCloudGenerator/src")),
+                    new File(root, "TagCloudGenerator/bin"), out, temporary);
+            pipelines.add(new ComponentsPipeline(
+                    components.loadClass("TagCloudGenerator")));
+            File project = new File(root, "TagCloudGeneratorWithStandard");
+            ClassLoader standard = compile(sources(new File(project, "src")),
+                    new File(project, "bin"), out, temporary);
+            pipelines.add(new StandardPipeline(
+                    standard.loadClass("TagCloudGenerator")));
+            File zip = new File(root, "WordCounter.zip");
+            ClassLoader counting = compile(
+                    sources(extract(zip, "CountingWords/src/", temporary)),
+                    extract(zip, "CountingWords/bin/", temporary), out,
+                    temporary);
+            pipelines.add(new CountingWordsPipeline(
+                    counting.loadClass("CountingWords")));
+
+            out.println("Pipeline benchmark: " + vocabulary
+                    + " words, Zipf exponent " + exponent + ", top " + top
+                    + ", " + WARMUP_ROUNDS + " warm-up + " + rounds
+                    + " measured rounds");
+            out.println(String.format("%-14s %8s %-13s %10s %10s %12s",
+                    "pipeline", "MB", "phase", "ms", "MB/s", "alloc MB/s"));
+            File dir = new File(System.getProperty("java.io.tmpdir"));
+            for (int size : sizes) {
+                long bytes = (long) size << 20;
+                File corpus = corpus(dir, bytes, vocabulary, exponent);
+                for (Pipeline pipeline : pipelines) {
+                    if (pipeline.accepts(bytes)) {
+                        measure(pipeline, corpus, top, rounds, out);
+                    } else {
+                        out.println(String.format("%-14s %8d skipped",
+                                pipeline.name(), size));
+                    }
+                }
+            }
+        } catch (Exception e) {
+            out.println("benchmark failed: " + e);
+        } finally {
+            for (File dir : temporary) {
+                delete(dir);
+            }
+        }
+        out.println("checksum " + sink);
+        out.close();
+    }
+
+}
@@ -0,0 +1,348 @@
+import java.util.HashMap;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Approximate counter of the most frequent words of a stream, in memory fixed
+ * by its error bounds rather than by the number of distinct words.
+ *
+ * <p>
+ * Every word is counted in a Count-Min Sketch of {@code ceil(e / epsilon)}
+ * columns and {@code ceil(ln(1 / delta))} rows, whose estimate of a word's
+ * count exceeds the true count by at most {@code epsilon * total()} with
+ * probability at least {@code 1 - delta}. The words themselves are kept in a
+ * Space-Saving structure of {@code capacity} counters: a word already
+ * monitored has its counter incremented; an unmonitored word replaces the
+ * word with the smallest counter, taking that counter plus one, but only if
+ * its sketch estimate is larger than that counter. Every word whose count is
+ * larger than the smallest counter is therefore monitored, and with
+ * {@code capacity >= 1 / epsilon} the smallest counter is at most
+ * {@code epsilon * total()}. The count reported for a word is the smaller of
+ * its counter and its sketch estimate, both of which are upper bounds.
+ *
+ * @convention <pre>
+ * |$this.sketch| = $this.depth * $this.width  and
+ * 0 <= $this.size <= |$this.words| = |$this.counters| = |$this.heap| =
+ *   |$this.positions|  and
+ * [$this.index maps each of $this.words[0, $this.size) to its slot]  and
+ * [$this.heap[0, $this.size) is a min-heap of the slots by $this.counters,
+ *  and $this.positions is its inverse]
+ * </pre>
+ */
+public final class HeavyHitters {
+
+    /**
+     * Multiplier of the second sketch hash.
+     */
+    private static final long GOLDEN = 0x9E3779B97F4A7C15L;
+
+    /**
+     * Number of columns of the sketch.
+     */
+    private final int width;
+
+    /**
+     * Number of rows of the sketch.
+     */
+    private final int depth;
+
+    /**
+     * The sketch counters, row after row.
+     */
+    private final long[] sketch;
+
+    /**
+     * Monitored words, indexed by slot.
+     */
+    private final String[] words;
+
+    /**
+     * Counters of the monitored words, indexed by slot.
+     */
+    private final long[] counters;
+
+    /**
+     * Slots ordered as a min-heap of their counters.
+     */
+    private final int[] heap;
+
+    /**
+     * Position of each slot in the heap.
+     */
+    private final int[] positions;
+
+    /**
+     * Slot of each monitored word.
+     */
+    private final HashMap<String, Integer> index;
+
+    /**
+     * Number of monitored words.
+     */
+    private int size;
+
+    /**
+     * Number of words counted.
+     */
+    private long total;
+
+    /**
+     * Returns {@code h} with its bits mixed (the finalizer of MurmurHash3).
+     *
+     * @param h
+     *            the value to mix
+     * @return the mixed value
+     */
+    private static long mix(long h) {
+        long x = h;
+        x = (x ^ (x >>> 33)) * 0xFF51AFD7ED558CCDL;
+        x = (x ^ (x >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return x ^ (x >>> 33);
+    }
+
+    /**
+     * Returns the sketch cell of {@code word} in row {@code row}, using
+     * {@code h1 + row * h2} as the row's hash.
+     *
+     * @param h1
+     *            the first hash of the word
+     * @param h2
+     *            the second hash of the word
+     * @param row
+     *            the row
+     * @return the index of the cell in this.sketch
+     */
+    private int cell(long h1, long h2, int row) {
+        long h = h1 + row * h2;
+        return row * this.width + (int) ((h >>> 1) % this.width);
+    }
+
+    /**
+     * Counts {@code word} in the sketch and returns its new estimate.
+     *
+     * @param word
+     *            the word
+     * @return the estimate of the count of word
+     * @updates this.sketch
+     */
+    private long addToSketch(String word) {
+        long h1 = mix(word.hashCode());
+        long h2 = mix(h1 * GOLDEN) | 1;
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < this.depth; row++) {
+            int c = this.cell(h1, h2, row);
+            this.sketch[c]++;
+            estimate = Math.min(estimate, this.sketch[c]);
+        }
+        return estimate;
+    }
+
+    /**
+     * Exchanges heap positions {@code i} and {@code j}.
+     *
+     * @param i
+     *            a heap position
+     * @param j
+     *            a heap position
+     */
+    private void swap(int i, int j) {
+        int slot = this.heap[i];
+        this.heap[i] = this.heap[j];
+        this.heap[j] = slot;
+        this.positions[this.heap[i]] = i;
+        this.positions[this.heap[j]] = j;
+    }
+
+    /**
+     * Reports whether the counter of the slot at heap position {@code i} is
+     * smaller than that of the slot at heap position {@code j}.
+     *
+     * @param i
+     *            a heap position
+     * @param j
+     *            a heap position
+     * @return true iff the counter at i is smaller than the counter at j
+     */
+    private boolean less(int i, int j) {
+        return this.counters[this.heap[i]] < this.counters[this.heap[j]];
+    }
+
+    /**
+     * Moves the slot at heap position {@code i} up until its parent's counter
+     * is not larger.
+     *
+     * @param i
+     *            a heap position
+     */
+    private void siftUp(int i) {
+        int child = i;
+        while (child > 0 && this.less(child, (child - 1) / 2)) {
+            this.swap(child, (child - 1) / 2);
+            child = (child - 1) / 2;
+        }
+    }
+
+    /**
+     * Moves the slot at heap position {@code i} down until neither child's
+     * counter is smaller.
+     *
+     * @param i
+     *            a heap position
+     */
+    private void siftDown(int i) {
+        int parent = i;
+        int child = 2 * parent + 1;
+        while (child < this.size) {
+            if (child + 1 < this.size && this.less(child + 1, child)) {
+                child++;
+            }
+            if (this.less(child, parent)) {
+                this.swap(child, parent);
+                parent = child;
+                child = 2 * parent + 1;
+            } else {
+                child = this.size;
+            }
+        }
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param capacity
+     *            the number of words monitored; at least the number of words
+     *            wanted, and at least {@code 1 / epsilon} for the error bound
+     *            to hold
+     * @param epsilon
+     *            the error of the counts, as a fraction of the total
+     * @param delta
+     *            the probability of the sketch exceeding that error
+     * @requires capacity > 0  and  0 < epsilon < 1  and  0 < delta < 1
+     */
+    public HeavyHitters(int capacity, double epsilon, double delta) {
+        assert capacity > 0 : "Violation of: capacity > 0";
+        assert 0 < epsilon && epsilon < 1 : "Violation of: 0 < epsilon < 1";
+        assert 0 < delta && delta < 1 : "Violation of: 0 < delta < 1";
+
+        this.width = (int) Math.ceil(Math.E / epsilon);
+        this.depth = Math.max(1, (int) Math.ceil(Math.log(1 / delta)));
+        this.sketch = new long[this.width * this.depth];
+        this.words = new String[capacity];
+        this.counters = new long[capacity];
+        this.heap = new int[capacity];
+        this.positions = new int[capacity];
+        this.index = new HashMap<>(2 * capacity);
+        this.size = 0;
+        this.total = 0;
+    }
+
+    /**
+     * Returns the number of words to monitor to select {@code k} words with
+     * error {@code epsilon}.
+     *
+     * @param k
+     *            the number of words wanted
+     * @param epsilon
+     *            the error of the counts, as a fraction of the total
+     * @return max(k, ceil(1 / epsilon))
+     */
+    public static int capacityFor(int k, double epsilon) {
+        return (int) Math.max(k, Math.ceil(1 / epsilon));
+    }
+
+    /**
+     * Counts one occurrence of {@code word}.
+     *
+     * @param word
+     *            the word
+     * @updates this
+     * @requires word is not null
+     */
+    public void add(String word) {
+        assert word != null : "Violation of: word is not null";
+
+        this.total++;
+        long estimate = this.addToSketch(word);
+        Integer slot = this.index.get(word);
+        if (slot != null) {
+            this.counters[slot]++;
+            this.siftDown(this.positions[slot]);
+        } else if (this.size < this.words.length) {
+            int s = this.size;
+            this.words[s] = word;
+            this.counters[s] = 1;
+            this.heap[s] = s;
+            this.positions[s] = s;
+            this.index.put(word, s);
+            this.size++;
+            this.siftUp(s);
+        } else {
+            int s = this.heap[0];
+            if (estimate > this.counters[s]) {
+                this.index.remove(this.words[s]);
+                this.words[s] = word;
+                this.counters[s]++;
+                this.index.put(word, s);
+                this.siftDown(0);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of words counted.
+     *
+     * @return the number of calls to add
+     */
+    public long total() {
+        return this.total;
+    }
+
+    /**
+     * Returns the number of words monitored.
+     *
+     * @return the number of words monitored
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns an upper bound of the count of {@code word}: the smaller of its
+     * counter, if it is monitored, and its sketch estimate.
+     *
+     * @param word
+     *            the word
+     * @return the estimated count of word
+     * @requires word is not null
+     */
+    public long estimate(String word) {
+        assert word != null : "Violation of: word is not null";
+
+        long h1 = mix(word.hashCode());
+        long h2 = mix(h1 * GOLDEN) | 1;
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < this.depth; row++) {
+            estimate = Math.min(estimate, this.sketch[this.cell(h1, h2, row)]);
+        }
+        Integer slot = this.index.get(word);
+        if (slot != null) {
+            estimate = Math.min(estimate, this.counters[slot]);
+        }
+        return estimate;
+    }
+
+    /**
+     * Calls {@code action} once with each monitored word and its estimated
+     * count (at most {@code Integer.MAX_VALUE}), in no particular order.
+     *
+     * @param action
+     *            the action to call
+     */
+    public void forEach(ObjIntConsumer<? super String> action) {
+        for (int s = 0; s < this.size; s++) {
+            long count = Math.min(Integer.MAX_VALUE,
+                    this.estimate(this.words[s]));
+            action.accept(this.words[s], (int) count);
+        }
+    }
+
+}
@@ -0,0 +1,480 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.function.IntPredicate;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Word counter reading its input as bytes: files are read through
+ * {@code FileChannel.map}, and every byte is classified by a 256-entry table
+ * as a separator or as the lower-case character it stands for. A word made of
+ * ASCII characters is hashed while it is scanned and looked up by comparing
+ * the stored words against the bytes themselves, so a {@code String} is only
+ * built the first time a word is seen. Words containing other bytes are
+ * decoded with the default charset and lower-cased as a {@code String}.
+ *
+ * <p>
+ * The input must be in a charset that encodes ASCII as itself and never uses
+ * bytes below 128 for anything else (see {@code supportsDefaultCharset}).
+ *
+ * @convention <pre>
+ * |$this.words| = |$this.counts| = |$this.hashes|  and
+ * [|$this.words| is a power of 2]  and
+ * $this.size <= $this.growThreshold < |$this.words|  and
+ * $this.size = [number of i such that $this.words[i] /= null]  and
+ * for all i where $this.words[i] /= null
+ *   ($this.hashes[i] = spread($this.words[i].hashCode())  and
+ *    [every slot from home($this.hashes[i]) up to i, wrapping around, holds
+ *     a non-null word])
+ * </pre>
+ * @correspondence <pre>
+ * this = {(w, n) where (there exists i
+ *            ($this.words[i] = w  and  $this.counts[i] = n))}
+ * </pre>
+ */
+public final class MappedTokenizer {
+
+    /**
+     * Class of a byte that separates words.
+     */
+    private static final int SEPARATOR = -1;
+
+    /**
+     * Class of a byte whose word must be decoded and lower-cased as a
+     * {@code String}.
+     */
+    private static final int DECODE = -2;
+
+    /**
+     * Largest number of bytes of a file mapped at once.
+     */
+    private static final long SEGMENT_SIZE = 1L << 30;
+
+    /**
+     * Default number of slots of the table.
+     */
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    /**
+     * Largest number of slots the table will grow to.
+     */
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    /**
+     * The table grows when more than this fraction of its slots are used.
+     */
+    private static final double MAX_LOAD_FACTOR = 0.5;
+
+    /**
+     * Class of each byte value: {@code SEPARATOR}, {@code DECODE}, or the
+     * lower-case character the byte stands for.
+     */
+    private final int[] classes;
+
+    /**
+     * Charset used to decode words that are not plain ASCII.
+     */
+    private final Charset charset;
+
+    /**
+     * Words, indexed by slot ({@code null} for an empty slot).
+     */
+    private String[] words;
+
+    /**
+     * Counts, indexed by slot.
+     */
+    private int[] counts;
+
+    /**
+     * Spread hash codes of the words, indexed by slot.
+     */
+    private int[] hashes;
+
+    /**
+     * Number of words.
+     */
+    private int size;
+
+    /**
+     * Size at which the table is doubled.
+     */
+    private int growThreshold;
+
+    /**
+     * Buffer for the bytes of a word being decoded.
+     */
+    private byte[] scratch;
+
+    /**
+     * Returns {@code h} with its high bits folded into its low bits.
+     *
+     * @param h
+     *            the hash code to spread
+     * @return the spread hash code
+     */
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Creates the arrays for a table of {@code capacity} slots.
+     *
+     * @param capacity
+     *            the number of slots
+     * @requires [capacity is a power of 2]  and  capacity >= 2
+     * @ensures this = {}  and  |$this.words| = capacity
+     */
+    private void createNewRep(int capacity) {
+        this.words = new String[capacity];
+        this.counts = new int[capacity];
+        this.hashes = new int[capacity];
+        this.size = 0;
+        this.growThreshold = Math.min(capacity - 1,
+                (int) (capacity * MAX_LOAD_FACTOR));
+    }
+
+    /**
+     * Doubles the number of slots, reinserting every word using its cached
+     * hash code.
+     *
+     * @ensures |$this.words| = 2 * |#$this.words|  and  this = #this
+     */
+    private void grow() {
+        String[] oldWords = this.words;
+        int[] oldCounts = this.counts;
+        int[] oldHashes = this.hashes;
+        int oldSize = this.size;
+        this.createNewRep(2 * oldWords.length);
+        int mask = this.words.length - 1;
+        for (int i = 0; i < oldWords.length; i++) {
+            if (oldWords[i] != null) {
+                int j = oldHashes[i] & mask;
+                while (this.words[j] != null) {
+                    j = (j + 1) & mask;
+                }
+                this.words[j] = oldWords[i];
+                this.counts[j] = oldCounts[i];
+                this.hashes[j] = oldHashes[i];
+            }
+        }
+        this.size = oldSize;
+    }
+
+    /**
+     * Stores a new word with count 1 in the empty slot {@code i}.
+     *
+     * @param i
+     *            the empty slot
+     * @param word
+     *            the word
+     * @param hash
+     *            the spread hash code of {@code word}
+     * @requires $this.words[i] = null  and  word is not in DOMAIN(this)
+     */
+    private void insertAt(int i, String word, int hash) {
+        this.words[i] = word;
+        this.counts[i] = 1;
+        this.hashes[i] = hash;
+        this.size++;
+        if (this.size > this.growThreshold
+                && this.words.length < MAX_CAPACITY) {
+            this.grow();
+        }
+    }
+
+    /**
+     * Reports whether {@code word} is the lower-cased ASCII word in bytes
+     * {@code [from, to)} of {@code buffer}.
+     *
+     * @param word
+     *            the stored word
+     * @param buffer
+     *            the input
+     * @param from
+     *            the first byte of the word
+     * @param to
+     *            the byte after the word
+     * @return true iff word has the characters the bytes stand for
+     */
+    private boolean matches(String word, ByteBuffer buffer, int from, int to) {
+        if (word.length() != to - from) {
+            return false;
+        }
+        int j = 0;
+        while (j < word.length() && word.charAt(j) == this.classes[buffer
+                .get(from + j) & 0xFF]) {
+            j++;
+        }
+        return j == word.length();
+    }
+
+    /**
+     * Counts the lower-cased ASCII word in bytes {@code [from, to)} of
+     * {@code buffer}, whose {@code String} hash code is {@code h}.
+     *
+     * @param buffer
+     *            the input
+     * @param from
+     *            the first byte of the word
+     * @param to
+     *            the byte after the word
+     * @param h
+     *            the hash code of the lower-cased word
+     * @updates this
+     */
+    private void incrementAscii(ByteBuffer buffer, int from, int to, int h) {
+        int hash = spread(h);
+        int mask = this.words.length - 1;
+        int i = hash & mask;
+        String w = this.words[i];
+        while (w != null) {
+            if (this.hashes[i] == hash && this.matches(w, buffer, from, to)) {
+                this.counts[i]++;
+                return;
+            }
+            i = (i + 1) & mask;
+            w = this.words[i];
+        }
+        char[] chars = new char[to - from];
+        for (int j = 0; j < chars.length; j++) {
+            chars[j] = (char) this.classes[buffer.get(from + j) & 0xFF];
+        }
+        this.insertAt(i, new String(chars), hash);
+    }
+
+    /**
+     * Counts the word in bytes {@code [from, to)} of {@code buffer} after
+     * decoding and lower-casing it.
+     *
+     * @param buffer
+     *            the input
+     * @param from
+     *            the first byte of the word
+     * @param to
+     *            the byte after the word
+     * @updates this
+     */
+    private void incrementDecoded(ByteBuffer buffer, int from, int to) {
+        int n = to - from;
+        if (this.scratch.length < n) {
+            this.scratch = new byte[Math.max(n, 2 * this.scratch.length)];
+        }
+        for (int j = 0; j < n; j++) {
+            this.scratch[j] = buffer.get(from + j);
+        }
+        String word = new String(this.scratch, 0, n, this.charset)
+                .toLowerCase();
+        int hash = spread(word.hashCode());
+        int mask = this.words.length - 1;
+        int i = hash & mask;
+        String w = this.words[i];
+        while (w != null) {
+            if (this.hashes[i] == hash && w.equals(word)) {
+                this.counts[i]++;
+                return;
+            }
+            i = (i + 1) & mask;
+            w = this.words[i];
+        }
+        this.insertAt(i, word, hash);
+    }
+
+    /**
+     * Counts the words in bytes {@code [from, to)} of {@code buffer}. Unless
+     * {@code last}, a word running up to {@code to} may continue past it and is
+     * left uncounted.
+     *
+     * @param buffer
+     *            the input
+     * @param from
+     *            the first byte to scan
+     * @param to
+     *            the byte after the last to scan
+     * @param last
+     *            whether the input ends at {@code to}
+     * @return the first byte not consumed: the start of the unfinished word,
+     *         or {@code to}
+     * @updates this
+     */
+    private int scan(ByteBuffer buffer, int from, int to, boolean last) {
+        int i = from;
+        while (i < to) {
+            int c = this.classes[buffer.get(i) & 0xFF];
+            if (c == SEPARATOR) {
+                i++;
+            } else {
+                int start = i;
+                int h = 0;
+                boolean decode = false;
+                while (c != SEPARATOR) {
+                    if (c == DECODE) {
+                        decode = true;
+                    } else {
+                        h = 31 * h + c;
+                    }
+                    i++;
+                    c = SEPARATOR;
+                    if (i < to) {
+                        c = this.classes[buffer.get(i) & 0xFF];
+                    }
+                }
+                if (i == to && !last) {
+                    return start;
+                }
+                if (decode) {
+                    this.incrementDecoded(buffer, start, i);
+                } else {
+                    this.incrementAscii(buffer, start, i, h);
+                }
+            }
+        }
+        return to;
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param isWordChar
+     *            tells whether an ASCII character is part of words
+     * @param nonAsciiInWords
+     *            whether characters outside ASCII are part of words (if not,
+     *            they separate words)
+     */
+    public MappedTokenizer(IntPredicate isWordChar, boolean nonAsciiInWords) {
+        this.classes = new int[256];
+        for (int c = 0; c < 128; c++) {
+            if (!isWordChar.test(c)) {
+                this.classes[c] = SEPARATOR;
+            } else {
+                String lower = String.valueOf((char) c).toLowerCase();
+                if (lower.length() == 1 && lower.charAt(0) < 128) {
+                    this.classes[c] = lower.charAt(0);
+                } else {
+                    this.classes[c] = DECODE;
+                }
+            }
+        }
+        for (int c = 128; c < 256; c++) {
+            if (nonAsciiInWords) {
+                this.classes[c] = DECODE;
+            } else {
+                this.classes[c] = SEPARATOR;
+            }
+        }
+        this.charset = Charset.defaultCharset();
+        this.scratch = new byte[64];
+        this.createNewRep(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Reports whether files in the default charset can be read by a
+     * {@code MappedTokenizer}: true for UTF-8 and for single-byte charsets
+     * that encode ASCII as itself.
+     *
+     * @return true iff the default charset is supported
+     */
+    public static boolean supportsDefaultCharset() {
+        Charset charset = Charset.defaultCharset();
+        if (charset.equals(StandardCharsets.UTF_8)) {
+            return true;
+        }
+        if (charset.newEncoder().maxBytesPerChar() != 1.0f) {
+            return false;
+        }
+        char[] ascii = new char[128];
+        for (int c = 0; c < ascii.length; c++) {
+            ascii[c] = (char) c;
+        }
+        String s = new String(ascii);
+        return new String(s.getBytes(charset), StandardCharsets.ISO_8859_1)
+                .equals(s);
+    }
+
+    /**
+     * Counts the words of {@code file}.
+     *
+     * @param file
+     *            the input file
+     * @throws IOException
+     *             if the file cannot be read
+     * @updates this
+     */
+    public void count(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            long length = channel.size();
+            long pos = 0;
+            while (pos < length) {
+                long end = Math.min(length, pos + SEGMENT_SIZE);
+                ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+                        pos, end - pos);
+                int done = this.scan(buffer, 0, buffer.limit(), end == length);
+                if (done == 0) {
+                    /*
+                     * One word fills the whole segment: count it in pieces.
+                     */
+                    done = this.scan(buffer, 0, buffer.limit(), true);
+                }
+                pos += done;
+            }
+        }
+    }
+
+    /**
+     * Counts the words of the bytes from the position to the limit of
+     * {@code buffer}, taking the limit as the end of the input.
+     *
+     * @param buffer
+     *            the input
+     * @updates this
+     */
+    public void count(ByteBuffer buffer) {
+        this.scan(buffer, buffer.position(), buffer.limit(), true);
+    }
+
+    /**
+     * Counts the words of the bytes from the position to the limit of
+     * {@code buffer} that are followed by a separator, leaving a word that
+     * runs up to the limit uncounted since more of it may follow.
+     *
+     * @param buffer
+     *            the input
+     * @return the number of bytes consumed: up to the start of the unfinished
+     *         word, or to the limit
+     * @updates this
+     */
+    public int countComplete(ByteBuffer buffer) {
+        return this.scan(buffer, buffer.position(), buffer.limit(), false)
+                - buffer.position();
+    }
+
+    /**
+     * Returns the number of distinct words counted.
+     *
+     * @return |this|
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Calls {@code action} once with each (word, count) pair of {@code this},
+     * in no particular order.
+     *
+     * @param action
+     *            the action to call
+     */
+    public void forEach(ObjIntConsumer<? super String> action) {
+        for (int i = 0; i < this.words.length; i++) {
+            if (this.words[i] != null) {
+                action.accept(this.words[i], this.counts[i]);
+            }
+        }
+    }
+
+}
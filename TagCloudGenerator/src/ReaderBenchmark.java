@@ -0,0 +1,237 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import components.simplereader.SimpleReader;
+import components.simplereader.SimpleReader1L;
+import components.simplewriter.SimpleWriter;
+import components.simplewriter.SimpleWriter1L;
+
+/**
+ * Throughput benchmark for the word scanner of {@code TagCloudGenerator}
+ * against the scanner it replaced, which built each word with
+ * {@code word += character; word = word.toLowerCase();}. Each corpus is read
+ * into memory once, and each scanner counts its words into an {@code IntMap}
+ * a number of times after some warm-up rounds, so that the JIT has compiled
+ * the code under test and the file system is not measured; the mean time per
+ * character and the throughput are reported.
+ *
+ * <p>
+ * Usage: {@code java ReaderBenchmark [rounds [corpus...]]}; the corpora
+ * default to the sample texts in {@code data}.
+ *
+ * @author Tingyang Xie and Yunzhou Chen
+ *
+ */
+public final class ReaderBenchmark {
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private ReaderBenchmark() {
+    }
+
+    /**
+     * Default number of measured rounds.
+     */
+    private static final int DEFAULT_ROUNDS = 50;
+
+    /**
+     * Number of unmeasured warm-up rounds before the measured ones.
+     */
+    private static final int WARMUP_ROUNDS = 10;
+
+    /**
+     * Corpora measured unless others are given.
+     */
+    private static final String[] DEFAULT_CORPORA = {"data/Alice.txt",
+        "data/importance.txt" };
+
+    /**
+     * Initial size of the word buffer of the new scanner.
+     */
+    private static final int WORD_BUFFER_SIZE = 64;
+
+    /**
+     * Nanoseconds per second.
+     */
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    /**
+     * Characters per megabyte, counting one byte per character.
+     */
+    private static final double CHARS_PER_MEGABYTE = 1 << 20;
+
+    /**
+     * Destination for results computed by the timed code, so the JIT cannot
+     * remove that code as dead.
+     */
+    private static volatile long sink;
+
+    /**
+     * The scanner replaced in {@code TagCloudGenerator}, kept as the baseline:
+     * passes each word of {@code string}, lower-cased, to {@code counts}.
+     *
+     * @param string
+     *            the line
+     * @param counts
+     *            called with each word
+     */
+    private static void quadraticLineWords(String string,
+            Consumer<String> counts) {
+        int i = 0;
+        String word = "";
+        while (i < string.length()) {
+            char character = string.charAt(i);
+            int num = character;
+            if ((num > TagCloudGenerator.BOTTOM
+                    && num < TagCloudGenerator.L_MIDDLE)
+                    || (num > TagCloudGenerator.T_MIDDLE
+                            && num <= TagCloudGenerator.TOP)) {
+                word += character;
+                word = word.toLowerCase();
+            } else {
+                if (word.length() > 0) {
+                    counts.accept(word);
+                }
+                word = "";
+            }
+            int l = string.length();
+            if (((num > TagCloudGenerator.T_MIDDLE
+                    && num <= TagCloudGenerator.TOP)
+                    || (num > TagCloudGenerator.BOTTOM
+                            && num < TagCloudGenerator.L_MIDDLE))
+                    && i == l - 1) {
+                counts.accept(word);
+                word = "";
+            }
+            i++;
+        }
+    }
+
+    /**
+     * Reads the lines of the file named {@code fileName}.
+     *
+     * @param fileName
+     *            the name of the file
+     * @return the lines of the file
+     */
+    private static List<String> lines(String fileName) {
+        List<String> lines = new ArrayList<>();
+        SimpleReader in = new SimpleReader1L(fileName);
+        while (!in.atEOS()) {
+            lines.add(in.nextLine());
+        }
+        in.close();
+        return lines;
+    }
+
+    /**
+     * Counts the words of {@code lines} with the baseline scanner.
+     *
+     * @param lines
+     *            the corpus
+     * @return the counts
+     */
+    private static IntMap<String> countQuadratic(List<String> lines) {
+        IntMap<String> counts = new IntMap<>();
+        for (String line : lines) {
+            quadraticLineWords(line, counts::increment);
+        }
+        return counts;
+    }
+
+    /**
+     * Counts the words of {@code lines} with the scanner of
+     * {@code TagCloudGenerator}.
+     *
+     * @param lines
+     *            the corpus
+     * @return the counts
+     */
+    private static IntMap<String> countLinear(List<String> lines) {
+        IntMap<String> counts = new IntMap<>();
+        char[] buffer = new char[WORD_BUFFER_SIZE];
+        for (String line : lines) {
+            buffer = TagCloudGenerator.lineWords(line, buffer,
+                    counts::increment);
+        }
+        return counts;
+    }
+
+    /**
+     * Returns a checksum of {@code counts} that does not depend on the order
+     * of its words.
+     *
+     * @param counts
+     *            the counts
+     * @return the checksum
+     */
+    private static long checksum(IntMap<String> counts) {
+        long[] sum = {counts.size() };
+        counts.forEach((word, count) -> sum[0] += word.hashCode() * count);
+        return sum[0];
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args
+     *            optionally the number of measured rounds, then the corpora
+     */
+    public static void main(String[] args) {
+        int rounds = DEFAULT_ROUNDS;
+        String[] corpora = DEFAULT_CORPORA;
+        if (args.length > 0) {
+            rounds = Integer.parseInt(args[0]);
+        }
+        if (args.length > 1) {
+            corpora = new String[args.length - 1];
+            System.arraycopy(args, 1, corpora, 0, corpora.length);
+        }
+        SimpleWriter out = new SimpleWriter1L();
+
+        out.println("Reader benchmark: " + WARMUP_ROUNDS + " warm-up + "
+                + rounds + " measured rounds");
+        out.println(String.format("%-24s %-10s %10s %10s", "corpus",
+                "scanner", "ns/char", "MB/s"));
+        for (String corpus : corpora) {
+            List<String> lines = lines(corpus);
+            long chars = 0;
+            for (String line : lines) {
+                chars += line.length() + 1;
+            }
+            if (checksum(countQuadratic(lines)) != checksum(
+                    countLinear(lines))) {
+                out.println(corpus + ": the scanners disagree");
+            }
+            for (int scanner = 0; scanner < 2; scanner++) {
+                long elapsed = 0;
+                for (int r = 0; r < WARMUP_ROUNDS + rounds; r++) {
+                    long start = System.nanoTime();
+                    IntMap<String> counts;
+                    if (scanner == 0) {
+                        counts = countQuadratic(lines);
+                    } else {
+                        counts = countLinear(lines);
+                    }
+                    if (r >= WARMUP_ROUNDS) {
+                        elapsed += System.nanoTime() - start;
+                    }
+                    sink += counts.size();
+                }
+                double seconds = elapsed / NANOS_PER_SECOND / rounds;
+                String name = "quadratic";
+                if (scanner == 1) {
+                    name = "linear";
+                }
+                out.println(String.format("%-24s %-10s %10.2f %10.1f", corpus,
+                        name, (double) elapsed / rounds / chars,
+                        chars / CHARS_PER_MEGABYTE / seconds));
+            }
+        }
+        out.println("checksum " + sink);
+        out.close();
+    }
+
+}
@@ -0,0 +1,234 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import components.simplewriter.SimpleWriter;
+import components.simplewriter.SimpleWriter1L;
+
+/**
+ * This program generates the tag clouds of many files, each with one or more
+ * numbers of words, in one run and without asking the user anything. The
+ * files are processed concurrently on a fixed pool of threads, so a whole
+ * batch is processed in one JVM instead of one JVM per tag cloud. Each file is
+ * counted and ranked once, for its largest number of words, and all its tag
+ * clouds are made from that ranking.
+ *
+ * <p>
+ * The tag cloud of the top n words of the file dir/name.ext is written to
+ * output/n_words_in_name.html, where output is "data" unless given. A file
+ * name of "-" stands for standard input, whose tag clouds are named
+ * n_words_in_stdin.html. Two tag clouds may not have the same name, as with
+ * the files a/log.txt and b/log.md. The name of each tag cloud is printed in
+ * the order of the arguments, and errors are printed to standard error. The
+ * exit status is 2 if the arguments are wrong, 1 if any file failed, and 0
+ * otherwise.
+ *
+ * <p>
+ * Usage: {@code java TagCloudBatch [-epsilon e] [-delta d] [-threads t]
+ * [-output dir] n[,n...] file...}
+ *
+ * @author Tingyang Xie and Yunzhou Chen
+ *
+ */
+public final class TagCloudBatch {
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private TagCloudBatch() {
+    }
+
+    /**
+     * Directory of the tag clouds, unless given.
+     */
+    private static final String DEFAULT_OUTPUT = "data";
+
+    /**
+     * Exit status when a file failed.
+     */
+    private static final int FAILED = 1;
+
+    /**
+     * Exit status when the arguments are wrong.
+     */
+    private static final int USAGE_ERROR = 2;
+
+    /**
+     * Name of the tag clouds of standard input.
+     */
+    private static final String STANDARD_INPUT_NAME = "stdin";
+
+    /**
+     * Returns the name of the tag cloud of the {@code number} most frequent
+     * words of the file named {@code fileName}, in the directory
+     * {@code output}.
+     *
+     * @param output
+     *            the directory of the tag clouds
+     * @param fileName
+     *            the name of the input file
+     * @param number
+     *            the number of the words of the tag cloud
+     * @requires output is not null && fileName is not null
+     * @ensures <pre>
+     * pageName = output/number_words_in_[name of fileName without its
+     *   directory and extension].html
+     * </pre>
+     * @return the name of the tag cloud
+     */
+    private static String pageName(String output, String fileName,
+            int number) {
+        assert output != null : "Violation of: output is not null";
+        assert fileName != null : "Violation of: fileName is not null";
+        String name = STANDARD_INPUT_NAME;
+        if (!fileName.equals(TagCloudGenerator.STANDARD_INPUT)) {
+            name = new File(fileName).getName();
+            int dot = name.lastIndexOf('.');
+            if (dot > 0) {
+                name = name.substring(0, dot);
+            }
+        }
+        return output + "/" + number + "_words_in_" + name + ".html";
+    }
+
+    /**
+     * Prints {@code message} and how to use the program to standard error, and
+     * exits with status {@code USAGE_ERROR}.
+     *
+     * @param out
+     *            the output stream, closed before exiting
+     * @param message
+     *            what is wrong with the arguments
+     */
+    private static void usage(SimpleWriter out, String message) {
+        out.close();
+        System.err.println(message);
+        System.err.println("Usage: java TagCloudBatch [-epsilon e] [-delta d]"
+                + " [-threads t] [-output dir] n[,n...] file...");
+        System.exit(USAGE_ERROR);
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args
+     *            the command line arguments: the options, the numbers of words,
+     *            and the names of the files
+     */
+    public static void main(String[] args) {
+        SimpleWriter out = new SimpleWriter1L();
+
+        double epsilon = 0;
+        double delta = TagCloudGenerator.DEFAULT_DELTA;
+        int threads = Runtime.getRuntime().availableProcessors();
+        String output = DEFAULT_OUTPUT;
+        int i = 0;
+        try {
+            while (i + 1 < args.length && args[i].startsWith("-")
+                    && args[i].length() > 1) {
+                if (args[i].equals("-epsilon")) {
+                    epsilon = Double.parseDouble(args[i + 1]);
+                } else if (args[i].equals("-delta")) {
+                    delta = Double.parseDouble(args[i + 1]);
+                } else if (args[i].equals("-threads")) {
+                    threads = Integer.parseInt(args[i + 1]);
+                } else if (args[i].equals("-output")) {
+                    output = args[i + 1];
+                } else {
+                    usage(out, "Unknown option " + args[i]);
+                }
+                i += 2;
+            }
+        } catch (NumberFormatException e) {
+            usage(out, "e, d and t must be numbers");
+        }
+        if (epsilon < 0 || epsilon >= 1 || delta <= 0 || delta >= 1) {
+            usage(out, "e and d must be between 0 and 1");
+        }
+        if (threads <= 0) {
+            usage(out, "t must be a positive integer");
+        }
+        if (args.length - i < 2) {
+            usage(out, "n and at least one file are needed");
+        }
+        String[] list = args[i].split(",");
+        int[] numbers = new int[list.length];
+        try {
+            for (int j = 0; j < list.length; j++) {
+                numbers[j] = Integer.parseInt(list[j].trim());
+                if (numbers[j] <= 0) {
+                    usage(out, "n must be a positive integer");
+                }
+            }
+        } catch (NumberFormatException e) {
+            usage(out, "n must be a positive integer");
+        }
+        int standardInputs = 0;
+        for (int j = i + 1; j < args.length; j++) {
+            if (args[j].equals(TagCloudGenerator.STANDARD_INPUT)) {
+                standardInputs++;
+            }
+        }
+        if (standardInputs > 1) {
+            usage(out, "Standard input can only be read once");
+        }
+
+        List<String[]> pages = new ArrayList<>();
+        Map<String, String> fileOfPage = new HashMap<>();
+        for (int j = i + 1; j < args.length; j++) {
+            String[] names = new String[numbers.length];
+            for (int k = 0; k < numbers.length; k++) {
+                names[k] = pageName(output, args[j], numbers[k]);
+                String other = fileOfPage.put(names[k], args[j]);
+                if (other != null) {
+                    usage(out, other + " and " + args[j]
+                            + " would both be written to " + names[k]);
+                }
+            }
+            pages.add(names);
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<?>> results = new ArrayList<>();
+        final double e = epsilon;
+        final double d = delta;
+        for (int j = i + 1; j < args.length; j++) {
+            String fileName = args[j];
+            String[] names = pages.get(j - i - 1);
+            results.add(pool.submit(() -> TagCloudGenerator.generate(fileName,
+                    names, numbers, e, d)));
+        }
+        pool.shutdown();
+
+        boolean failed = false;
+        for (int j = 0; j < results.size(); j++) {
+            try {
+                results.get(j).get();
+                for (String page : pages.get(j)) {
+                    out.println(page);
+                }
+            } catch (ExecutionException x) {
+                System.err.println(
+                        args[i + 1 + j] + " failed: " + x.getCause());
+                failed = true;
+            } catch (InterruptedException x) {
+                Thread.currentThread().interrupt();
+                System.err.println("Interrupted");
+                failed = true;
+                pool.shutdownNow();
+                j = results.size();
+            }
+        }
+        out.close();
+        if (failed) {
+            System.exit(FAILED);
+        }
+    }
+
+}
@@ -1,4 +1,9 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
 
 import components.map.Map;
 import components.map.Map1L;
@@ -65,6 +70,106 @@ public final class TagCloudGenerator {
      * lowercase numbers of top number of the ASCII table.
      */
     public static final int TOP = 123;
+    /**
+     * probability of the approximate counts exceeding their error, unless
+     * given.
+     */
+    public static final double DEFAULT_DELTA = 0.01;
+    /**
+     * input file name standing for standard input.
+     */
+    public static final String STANDARD_INPUT = "-";
+    /**
+     * initial size of the buffer for the letters of a word.
+     */
+    private static final int WORD_BUFFER_SIZE = 64;
+
+    /**
+     * Lower-case letter for each ASCII character that can be part of a word,
+     * and 0 for the others.
+     */
+    private static final char[] LOWER = lowerCaseTable();
+
+    /**
+     * Builds the table of lower-case letters of ASCII characters.
+     *
+     * @return the table, indexed by character
+     * @ensures for every ASCII character c, lowerCaseTable[c] is c lower-cased
+     *          if c is between BOTTOM and L_MIDDLE or T_MIDDLE and TOP, and 0
+     *          otherwise
+     */
+    private static char[] lowerCaseTable() {
+        char[] table = new char[128];
+        for (int num = 0; num < table.length; num++) {
+            if ((num > BOTTOM && num < L_MIDDLE)
+                    || (num > T_MIDDLE && num <= TOP)) {
+                table[num] = String.valueOf((char) num).toLowerCase()
+                        .charAt(0);
+            }
+        }
+        return table;
+    }
+
+    /**
+     * This method passes each word of {@code line}, lower-cased, to
+     * {@code counts}, in one pass, collecting the letters of each word in
+     * {@code buffer}.
+     *
+     * @param line
+     *            the line
+     * @param buffer
+     *            space for the letters of a word
+     * @param counts
+     *            called with each word
+     * @requires line is not null && buffer is not null && |buffer| > 0
+     * @ensures all words from line will be passed to counts, in order
+     * @return buffer, or a larger copy if a word did not fit
+     */
+    static char[] lineWords(String line, char[] buffer,
+            Consumer<String> counts) {
+        char[] word = buffer;
+        int length = 0;
+        for (int i = 0; i < line.length(); i++) {
+            char character = line.charAt(i);
+            char lower = 0;
+            if (character < LOWER.length) {
+                lower = LOWER[character];
+            }
+            if (lower != 0) {
+                if (length == word.length) {
+                    word = Arrays.copyOf(word, 2 * length);
+                }
+                word[length] = lower;
+                length++;
+            } else if (length > 0) {
+                counts.accept(new String(word, 0, length));
+                length = 0;
+            }
+        }
+        if (length > 0) {
+            counts.accept(new String(word, 0, length));
+        }
+        return word;
+    }
+
+    /**
+     * This method passes each word of the user's given file, lower-cased, to
+     * {@code counts}. The file will not be changed.
+     *
+     * @param in
+     *            an SimpleReader file
+     * @param counts
+     *            called with each word
+     * @requires in is not null
+     * @ensures all words from in will be passed to counts, in order
+     */
+    private static void words(SimpleReader in, Consumer<String> counts) {
+        assert in != null : "Violation of: in is not null";
+        char[] buffer = new char[WORD_BUFFER_SIZE];
+        while (!in.atEOS()) {
+            buffer = lineWords(in.nextLine(), buffer, counts);
+        }
+    }
 
     /**
      * This method creates a map the words of the user's given file and,
@@ -79,47 +184,69 @@ public final class TagCloudGenerator {
      */
     private static Map<String, Integer> reader(SimpleReader in) {
         assert in != null : "Violation of: in is not null";
+        IntMap<String> counts = new IntMap<String>();
+        words(in, counts::increment);
+
         Map<String, Integer> words = new Map1L<String, Integer>();
-        String string;
-        while (!in.atEOS()) {
-            string = in.nextLine();
-            int i = 0;
-            String word = "";
-            while (i < string.length()) {
-                char character = string.charAt(i);
-                int num = character;
-                if ((num > BOTTOM && num < L_MIDDLE)
-                        || (num > T_MIDDLE && num <= TOP)) {
-                    word += character;
-                    word = word.toLowerCase();
-                } else {
-                    if (!words.hasKey(word)) {
-                        words.add(word, 1);
-                    } else {
-                        int count = words.value(word);
-                        words.replaceValue(word, count + 1);
-                    }
-                    word = "";
-                }
-                int l = string.length();
-                if (((num > T_MIDDLE && num <= TOP)
-                        || (num > BOTTOM && num < L_MIDDLE)) && i == l - 1) {
-                    if (!words.hasKey(word)) {
-                        words.add(word, 1);
-                    } else {
-                        int count = words.value(word);
-                        words.replaceValue(word, count + 1);
-                    }
-                    word = "";
-                }
-                i++;
-            }
-        }
+        counts.forEach(words::add);
+        return words;
+    }
 
-        if (words.hasKey("")) {
-            words.remove("");
-        }
+    /**
+     * This method creates a map of the most frequent words of the user's given
+     * file and their approximate counts, using a Count-Min Sketch and a
+     * Space-Saving table whose size does not depend on the number of distinct
+     * words. The file will not be changed.
+     *
+     * @param in
+     *            an SimpleReader file
+     * @param number
+     *            the number of the words that you want to output
+     * @param epsilon
+     *            the error of the counts, as a fraction of the number of words
+     * @param delta
+     *            the probability of a larger error
+     * @requires in is not null && number >= 0 && 0 < epsilon < 1 && 0 < delta
+     *           < 1
+     * @ensures the number most frequent words of in will appear once, with
+     *          counts at least their own and at most epsilon times the number
+     *          of words more, with probability 1 - delta
+     * @return Map<String, Integer> of words of the file and their counts
+     */
+    private static Map<String, Integer> approximateReader(SimpleReader in,
+            int number, double epsilon, double delta) {
+        assert in != null : "Violation of: in is not null";
+        HeavyHitters hitters = new HeavyHitters(
+                HeavyHitters.capacityFor(number, epsilon), epsilon, delta);
+        words(in, hitters::add);
+
+        Map<String, Integer> words = new Map1L<String, Integer>();
+        hitters.forEach(words::add);
+        return words;
+    }
+
+    /**
+     * Same as {@code reader}, but reads the file named {@code fileName} as
+     * mapped bytes with a {@code MappedTokenizer}.
+     *
+     * @param fileName
+     *            the name of the input file
+     * @requires fileName is not null
+     * @ensures all words from the file will appear once
+     * @return Map<String, Integer> of words of the file and their counts
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    private static Map<String, Integer> mappedReader(String fileName)
+            throws IOException {
+        assert fileName != null : "Violation of: fileName is not null";
+        MappedTokenizer tokenizer = new MappedTokenizer(
+                c -> (c > BOTTOM && c < L_MIDDLE) || (c > T_MIDDLE && c <= TOP),
+                false);
+        tokenizer.count(new File(fileName));
 
+        Map<String, Integer> words = new Map1L<String, Integer>();
+        tokenizer.forEach(words::add);
         return words;
     }
 
@@ -204,6 +331,81 @@ public final class TagCloudGenerator {
         return counts;
     }
 
+    /**
+     * Selects the {@code number} most frequent words with a {@code TopK} heap
+     * instead of sorting all of them, in O(|words| log number) time.
+     *
+     * @param words
+     *            map of all of the words and their counts
+     * @param number
+     *            the number of the words that you want to output
+     * @requires words is not null && number >= 0
+     * @ensures the min(number, |words|) pairs of words with the largest values
+     *          will be returned, and words will be cleared
+     * @return SortingMachine<Map.Pair<String, Integer>> of the top value
+     *         Map.Pairs, in insertion mode
+     */
+    public static SortingMachine<Map.Pair<String, Integer>> topCounts(
+            Map<String, Integer> words, int number) {
+        assert words != null : "Violation of: words is not null";
+        assert number >= 0 : "Violation of: number >= 0";
+        return firstCounts(rankCounts(words, number), number);
+    }
+
+    /**
+     * Ranks the {@code number} most frequent words with a {@code TopK} heap,
+     * most frequent first. The first n pairs of this ranking are the ranking
+     * of the n most frequent words, so one ranking serves every n up to
+     * {@code number}.
+     *
+     * @param words
+     *            map of all of the words and their counts
+     * @param number
+     *            the number of the words to rank
+     * @requires words is not null && number >= 0
+     * @ensures the min(number, |words|) pairs of words with the largest values
+     *          will be returned in decreasing order by their values, and words
+     *          will be cleared
+     * @return List<Map.Pair<String, Integer>> of the top value Map.Pairs
+     */
+    public static List<Map.Pair<String, Integer>> rankCounts(
+            Map<String, Integer> words, int number) {
+        assert words != null : "Violation of: words is not null";
+        assert number >= 0 : "Violation of: number >= 0";
+        TopK<Map.Pair<String, Integer>> top = new TopK<>(number, new order2());
+        for (Map.Pair<String, Integer> each : words) {
+            top.offer(each);
+        }
+        words.clear();
+        return top.toList();
+    }
+
+    /**
+     * Returns the first {@code number} pairs of a ranking made by
+     * {@code rankCounts}.
+     *
+     * @param ranked
+     *            the ranking of the words
+     * @param number
+     *            the number of the words that you want to output
+     * @requires ranked is not null && number >= 0
+     * @ensures the first min(number, |ranked|) pairs of ranked will be
+     *          returned, and ranked will not be changed
+     * @return SortingMachine<Map.Pair<String, Integer>> of the top value
+     *         Map.Pairs, in insertion mode
+     */
+    public static SortingMachine<Map.Pair<String, Integer>> firstCounts(
+            List<Map.Pair<String, Integer>> ranked, int number) {
+        assert ranked != null : "Violation of: ranked is not null";
+        assert number >= 0 : "Violation of: number >= 0";
+        SortingMachine<Map.Pair<String, Integer>> counts;
+        counts = new SortingMachine1L<>(new order2());
+        for (int i = 0; i < number && i < ranked.size(); i++) {
+            counts.add(ranked.get(i));
+        }
+        return counts;
+    }
+
     /**
      * It creates a map the words of the user's given file and, correspondingly,
      * the number of times each word is used.
@@ -265,16 +467,152 @@ public final class TagCloudGenerator {
         out.println("</html>");
     }
 
+    /**
+     * Generates the tag cloud of the {@code number} most frequent words of the
+     * file named {@code fileName}, or of standard input if it is
+     * {@code STANDARD_INPUT}, into the file named {@code outName}, without
+     * asking the user anything. It uses no shared state, so several tag clouds
+     * can be generated at once on different threads.
+     *
+     * @param fileName
+     *            the name of the input file
+     * @param outName
+     *            the name of the HTML file
+     * @param number
+     *            the number of the words that you want to output
+     * @param epsilon
+     *            the error of approximate counts, or 0 to count exactly
+     * @param delta
+     *            the probability of a larger error
+     * @requires fileName is not null && outName is not null && number > 0 &&
+     *           0 <= epsilon < 1 && 0 < delta < 1
+     * @ensures an HTML page of the tag cloud will be generated
+     */
+    public static void generate(String fileName, String outName, int number,
+            double epsilon, double delta) {
+        generate(fileName, new String[] {outName}, new int[] {number},
+                epsilon, delta);
+    }
+
+    /**
+     * Generates the tag clouds of the {@code numbers[i]} most frequent words of
+     * the file named {@code fileName}, or of standard input if it is
+     * {@code STANDARD_INPUT}, into the files named {@code outNames[i]},
+     * without asking the user anything. The words are counted and ranked once,
+     * for the largest number, and every tag cloud is made from that ranking.
+     * If {@code epsilon} is 0, each tag cloud is the same as the one made by
+     * {@code generate} with its number alone; otherwise the counts are
+     * estimated with a capacity chosen for the largest number, so a smaller
+     * tag cloud may differ from the one made for its number alone. It uses no
+     * shared state, so several files can be processed at once on different
+     * threads.
+     *
+     * @param fileName
+     *            the name of the input file
+     * @param outNames
+     *            the names of the HTML files
+     * @param numbers
+     *            the numbers of the words that you want to output
+     * @param epsilon
+     *            the error of approximate counts, or 0 to count exactly
+     * @param delta
+     *            the probability of a larger error
+     * @requires fileName is not null && |outNames| = |numbers| && every
+     *           number > 0 && 0 <= epsilon < 1 && 0 < delta < 1
+     * @ensures an HTML page of each tag cloud will be generated
+     */
+    public static void generate(String fileName, String[] outNames,
+            int[] numbers, double epsilon, double delta) {
+        assert fileName != null : "Violation of: fileName is not null";
+        assert outNames != null : "Violation of: outNames is not null";
+        assert numbers != null : "Violation of: numbers is not null";
+        assert outNames.length == numbers
+                .length : "Violation of: |outNames| = |numbers|";
+        int most = 0;
+        for (int number : numbers) {
+            assert number > 0 : "Violation of: every number > 0";
+            most = Math.max(most, number);
+        }
+        Map<String, Integer> words = null;
+        boolean isFile = !fileName.equals(STANDARD_INPUT);
+        if (epsilon == 0 && isFile
+                && MappedTokenizer.supportsDefaultCharset()) {
+            try {
+                words = mappedReader(fileName);
+            } catch (IOException e) {
+                words = null;
+            }
+        }
+        if (words == null) {
+            SimpleReader file;
+            if (isFile) {
+                file = new SimpleReader1L(fileName);
+            } else {
+                file = new SimpleReader1L();
+            }
+            if (epsilon > 0) {
+                words = approximateReader(file, most, epsilon, delta);
+            } else {
+                words = reader(file);
+            }
+            file.close();
+        }
+        List<Map.Pair<String, Integer>> ranked = rankCounts(words, most);
+        for (int i = 0; i < numbers.length; i++) {
+            SortingMachine<Map.Pair<String, Integer>> res = firstCounts(ranked,
+                    numbers[i]);
+            SimpleWriter fileout = new SimpleWriter1L(outNames[i]);
+            if (res.size() > 0) {
+                res = SortByAlph(res);
+            }
+            output(res, fileout, fileName, numbers[i]);
+            fileout.close();
+        }
+    }
+
     /**
      * Main method.
      *
      * @param args
-     *            the command line arguments
+     *            the command line arguments: optionally "-epsilon" e, to count
+     *            approximately with error e times the number of words, and
+     *            "-delta" d, the probability of a larger error
      */
     public static void main(String[] args) {
         SimpleReader in = new SimpleReader1L();
         SimpleWriter out = new SimpleWriter1L();
 
+        double epsilon = 0;
+        double delta = DEFAULT_DELTA;
+        String error = null;
+        try {
+            for (int i = 0; error == null && i < args.length; i += 2) {
+                if (!args[i].equals("-epsilon") && !args[i].equals("-delta")) {
+                    error = "Unknown option " + args[i];
+                } else if (i + 1 == args.length) {
+                    error = args[i] + " needs a value";
+                } else if (args[i].equals("-epsilon")) {
+                    epsilon = Double.parseDouble(args[i + 1]);
+                } else {
+                    delta = Double.parseDouble(args[i + 1]);
+                }
+            }
+        } catch (NumberFormatException e) {
+            error = "epsilon and delta must be numbers";
+        }
+        if (error == null
+                && (epsilon < 0 || epsilon >= 1 || delta <= 0 || delta >= 1)) {
+            error = "epsilon and delta must be between 0 and 1";
+        }
+        if (error != null) {
+            out.println(error);
+            out.println("Usage: java TagCloudGenerator"
+                    + " [-epsilon e] [-delta d]");
+            in.close();
+            out.close();
+            return;
+        }
+
         out.println("Cloud Tag Generator");
         out.print("Please input file name: ");
         String fileName = in.nextLine();
@@ -288,7 +626,6 @@ public final class TagCloudGenerator {
                 }
             }
         }
-        SimpleReader file = new SimpleReader1L(fileName);
         out.println();
         out.print("Please input the number of words you want to search ");
         int num = in.nextInteger();
@@ -297,19 +634,8 @@ public final class TagCloudGenerator {
             out.print("You should enter an positive integer. Try again ");
             num = in.nextInteger();
         }
-        Map<String, Integer> words = reader(file);
-        SortingMachine res = countSort(words);
-        SimpleWriter fileout = new SimpleWriter1L(
-                "data/" + num + "_words_in_" + name + ".html");
-        if (res.size() == 0) {
-            output(res, fileout, fileName, num);
-        } else {
-
-            res = Sample(res, num);
-            res = SortByAlph(res);
-
-            output(res, fileout, fileName, num);
-        }
+        generate(fileName, "data/" + num + "_words_in_" + name + ".html", num,
+                epsilon, delta);
         in.close();
         out.close();
     }
@@ -0,0 +1,301 @@
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Hash map from keys to {@code int} values, for counting. Values are stored
+ * unboxed in an open-addressing table, and {@code increment} finds or inserts
+ * a key with a single probe sequence, so counting an already-seen key
+ * allocates nothing.
+ *
+ * @param <K>
+ *            type of keys
+ * @convention <pre>
+ * |$this.keys| = |$this.values| = |$this.hashes|  and
+ * [|$this.keys| is a power of 2]  and
+ * $this.size <= $this.growThreshold < |$this.keys|  and
+ * $this.size = [number of i such that $this.keys[i] /= null]  and
+ * for all i where $this.keys[i] /= null
+ *   ($this.hashes[i] = spread($this.keys[i].hashCode())  and
+ *    [every slot from home($this.hashes[i]) up to i, wrapping around, holds
+ *     a non-null key])
+ * </pre>
+ * @correspondence <pre>
+ * this = {(k, v) where (there exists i
+ *            ($this.keys[i] = k  and  $this.values[i] = v))}
+ * </pre>
+ */
+public final class IntMap<K> {
+
+    /**
+     * Default number of slots of the table.
+     */
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    /**
+     * Largest number of slots the table will grow to.
+     */
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    /**
+     * The table grows when more than this fraction of its slots are used.
+     */
+    private static final double MAX_LOAD_FACTOR = 0.5;
+
+    /**
+     * Keys, indexed by slot ({@code null} for an empty slot).
+     */
+    private Object[] keys;
+
+    /**
+     * Counts, indexed by slot.
+     */
+    private int[] values;
+
+    /**
+     * Spread hash codes of the keys, indexed by slot.
+     */
+    private int[] hashes;
+
+    /**
+     * Number of keys.
+     */
+    private int size;
+
+    /**
+     * Size at which the table is doubled.
+     */
+    private int growThreshold;
+
+    /**
+     * Returns {@code h} with its high bits folded into its low bits.
+     *
+     * @param h
+     *            the hash code to spread
+     * @return the spread hash code
+     */
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Creates the arrays for a table of {@code capacity} slots.
+     *
+     * @param capacity
+     *            the number of slots
+     * @requires [capacity is a power of 2]  and  capacity >= 2
+     * @ensures this = {}  and  |$this.keys| = capacity
+     */
+    private void createNewRep(int capacity) {
+        this.keys = new Object[capacity];
+        this.values = new int[capacity];
+        this.hashes = new int[capacity];
+        this.size = 0;
+        this.growThreshold = Math.min(capacity - 1,
+                (int) (capacity * MAX_LOAD_FACTOR));
+    }
+
+    /**
+     * Doubles the number of slots, reinserting every key using its cached
+     * hash code.
+     *
+     * @ensures |$this.keys| = 2 * |#$this.keys|  and  this = #this
+     */
+    private void grow() {
+        Object[] oldKeys = this.keys;
+        int[] oldValues = this.values;
+        int[] oldHashes = this.hashes;
+        int oldSize = this.size;
+        this.createNewRep(2 * oldKeys.length);
+        int mask = this.keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int j = oldHashes[i] & mask;
+                while (this.keys[j] != null) {
+                    j = (j + 1) & mask;
+                }
+                this.keys[j] = oldKeys[i];
+                this.values[j] = oldValues[i];
+                this.hashes[j] = oldHashes[i];
+            }
+        }
+        this.size = oldSize;
+    }
+
+    /**
+     * Returns the slot holding {@code key}, or, if {@code key} is absent,
+     * {@code -(slot + 1)} for the empty slot where it would be inserted.
+     *
+     * @param key
+     *            the key to look for
+     * @param hash
+     *            the spread hash code of {@code key}
+     * @return the slot of {@code key}, or the encoded insertion slot
+     */
+    private int find(Object key, int hash) {
+        int mask = this.keys.length - 1;
+        int i = hash & mask;
+        Object k = this.keys[i];
+        while (k != null) {
+            if (this.hashes[i] == hash && (k == key || k.equals(key))) {
+                return i;
+            }
+            i = (i + 1) & mask;
+            k = this.keys[i];
+        }
+        return -(i + 1);
+    }
+
+    /**
+     * Stores a new key in the empty slot {@code i}.
+     *
+     * @param i
+     *            the empty slot found by {@code find}
+     * @param key
+     *            the key
+     * @param hash
+     *            the spread hash code of {@code key}
+     * @param value
+     *            the value
+     * @requires $this.keys[i] = null  and  key is not in DOMAIN(this)
+     */
+    private void insertAt(int i, Object key, int hash, int value) {
+        this.keys[i] = key;
+        this.values[i] = value;
+        this.hashes[i] = hash;
+        this.size++;
+        if (this.size > this.growThreshold
+                && this.keys.length < MAX_CAPACITY) {
+            this.grow();
+        }
+    }
+
+    /**
+     * No-argument constructor.
+     */
+    public IntMap() {
+        this.createNewRep(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Adds {@code key} with count {@code value}.
+     *
+     * @param key
+     *            the key
+     * @param value
+     *            the count
+     * @requires key is not null  and  key is not in DOMAIN(this)
+     * @ensures this = #this union {(key, value)}
+     */
+    public void add(K key, int value) {
+        assert key != null : "Violation of: key is not null";
+
+        int hash = spread(key.hashCode());
+        int i = this.find(key, hash);
+        assert i < 0 : "Violation of: key is not in DOMAIN(this)";
+        this.insertAt(-(i + 1), key, hash, value);
+    }
+
+    /**
+     * Adds one to the count of {@code key}, adding {@code key} with count 1 if
+     * it is not already in {@code this}.
+     *
+     * @param key
+     *            the key
+     * @return the new count of {@code key}
+     * @requires key is not null
+     * @ensures <pre>
+     * if key is in DOMAIN(#this)
+     * then this = (#this \ {(key, #this(key))}) union {(key, #this(key) + 1)}
+     * else this = #this union {(key, 1)}
+     * </pre>
+     */
+    public int increment(K key) {
+        return this.increment(key, 1);
+    }
+
+    /**
+     * Adds {@code amount} to the count of {@code key}, adding {@code key} with
+     * count {@code amount} if it is not already in {@code this}.
+     *
+     * @param key
+     *            the key
+     * @param amount
+     *            the amount to add
+     * @return the new count of {@code key}
+     * @requires key is not null
+     * @ensures <pre>
+     * if key is in DOMAIN(#this)
+     * then this = (#this \ {(key, #this(key))}) union
+     *             {(key, #this(key) + amount)}
+     * else this = #this union {(key, amount)}
+     * </pre>
+     */
+    public int increment(K key, int amount) {
+        assert key != null : "Violation of: key is not null";
+
+        int hash = spread(key.hashCode());
+        int i = this.find(key, hash);
+        if (i >= 0) {
+            this.values[i] += amount;
+            return this.values[i];
+        }
+        this.insertAt(-(i + 1), key, hash, amount);
+        return amount;
+    }
+
+    /**
+     * Reports whether {@code key} is in {@code this}.
+     *
+     * @param key
+     *            the key
+     * @return true iff key is in DOMAIN(this)
+     * @requires key is not null
+     */
+    public boolean hasKey(K key) {
+        assert key != null : "Violation of: key is not null";
+
+        return this.find(key, spread(key.hashCode())) >= 0;
+    }
+
+    /**
+     * Returns the count of {@code key}.
+     *
+     * @param key
+     *            the key
+     * @return the count of {@code key}
+     * @requires key is in DOMAIN(this)
+     */
+    public int value(K key) {
+        assert key != null : "Violation of: key is not null";
+
+        int i = this.find(key, spread(key.hashCode()));
+        assert i >= 0 : "Violation of: key is in DOMAIN(this)";
+        return this.values[i];
+    }
+
+    /**
+     * Returns the number of keys in {@code this}.
+     *
+     * @return |this|
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Calls {@code action} once with each (key, count) pair of {@code this}, in
+     * no particular order.
+     *
+     * @param action
+     *            the action to call
+     * @requires action does not modify this
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(ObjIntConsumer<? super K> action) {
+        for (int i = 0; i < this.keys.length; i++) {
+            if (this.keys[i] != null) {
+                action.accept((K) this.keys[i], this.values[i]);
+            }
+        }
+    }
+
+}
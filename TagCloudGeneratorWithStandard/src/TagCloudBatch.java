@@ -0,0 +1,216 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Non-interactive tag cloud generator: makes the tag clouds of many input
+ * files, each with one or more numbers of words, in one run, without asking
+ * the user anything. The input files are processed concurrently on a fixed
+ * pool of threads, so a scheduler can process a whole batch in one warmed-up
+ * JVM. Each input file is counted and ranked once, for its largest number of
+ * words, and all its clouds are made from that ranking.
+ *
+ * The cloud of the top n words of input dir/name.ext is written to
+ * output/n_words_in_name.html, where output is "data" unless given. An input
+ * of "-" is read from standard input, and its clouds are named
+ * n_words_in_stdin.html. Two clouds may not have the same name, as with
+ * inputs a/log.txt and b/log.md. The name of each cloud is printed in the
+ * order of the arguments; errors are printed to standard error. The exit
+ * status is 2 if the arguments are wrong, 1 if any input failed, and 0
+ * otherwise.
+ *
+ * Usage: TagCloudBatch [-epsilon e] [-delta d] [-threads t] [-output dir]
+ * counts[,counts...] input...
+ *
+ * @author Yunzhou Chen/Tingyang Xie
+ *
+ */
+public final class TagCloudBatch {
+
+    private TagCloudBatch() {
+
+    }
+
+    /**
+     * directory of the clouds, unless given
+     */
+    static final String DEFAULT_OUTPUT = "data";
+    /**
+     * exit status when an input failed
+     */
+    static final int FAILED = 1;
+    /**
+     * exit status when the arguments are wrong
+     */
+    static final int USAGE_ERROR = 2;
+    /**
+     * name of the clouds of standard input
+     */
+    static final String STANDARD_INPUT_NAME = "stdin";
+
+    /**
+     * the name of the cloud of the top counts words of input
+     *
+     * @param input
+     *            the input file name, or TagCloudGenerator.STANDARD_INPUT
+     * @param counts
+     *            how many words the cloud shows
+     * @return the name of the html file, without its directory
+     */
+    static String pageName(String input, int counts) {
+        String name = STANDARD_INPUT_NAME;
+        if (!input.equals(TagCloudGenerator.STANDARD_INPUT)) {
+            name = new File(input).getName();
+            int dot = name.lastIndexOf('.');
+            if (dot > 0) {
+                name = name.substring(0, dot);
+            }
+        }
+        return counts + "_words_in_" + name + ".html";
+    }
+
+    /**
+     * print what is wrong with the arguments and how to use the program, then
+     * exit with status USAGE_ERROR
+     *
+     * @param message
+     *            what is wrong with the arguments
+     */
+    private static void usage(String message) {
+        System.err.println(message);
+        System.err.println("Usage: TagCloudBatch [-epsilon e] [-delta d]"
+                + " [-threads t] [-output dir] counts[,counts...] input...");
+        System.exit(USAGE_ERROR);
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args
+     *            the options, the numbers of words, and the input files
+     */
+    public static void main(String[] args) {
+        double epsilon = 0;
+        double delta = TagCloudGenerator.DEFAULT_DELTA;
+        int threads = Runtime.getRuntime().availableProcessors();
+        File output = new File(DEFAULT_OUTPUT);
+        int i = 0;
+        try {
+            while (i + 1 < args.length && args[i].startsWith("-")
+                    && args[i].length() > 1) {
+                if (args[i].equals("-epsilon")) {
+                    epsilon = Double.parseDouble(args[i + 1]);
+                } else if (args[i].equals("-delta")) {
+                    delta = Double.parseDouble(args[i + 1]);
+                } else if (args[i].equals("-threads")) {
+                    threads = Integer.parseInt(args[i + 1]);
+                } else if (args[i].equals("-output")) {
+                    output = new File(args[i + 1]);
+                } else {
+                    usage("Unknown option " + args[i]);
+                }
+                i += 2;
+            }
+        } catch (NumberFormatException e) {
+            usage("epsilon, delta and threads must be numbers");
+        }
+        if (epsilon < 0 || epsilon >= 1 || delta <= 0 || delta >= 1) {
+            usage("epsilon and delta must be between 0 and 1");
+        }
+        if (threads <= 0) {
+            usage("threads must be greater than 0");
+        }
+        if (args.length - i < 2) {
+            usage("counts and at least one input are needed");
+        }
+        String[] list = args[i].split(",");
+        int[] counts = new int[list.length];
+        try {
+            for (int j = 0; j < list.length; j++) {
+                counts[j] = Integer.parseInt(list[j].trim());
+                if (counts[j] <= 0) {
+                    usage("counts must be greater than 0");
+                }
+            }
+        } catch (NumberFormatException e) {
+            usage("counts must be numbers");
+        }
+        int standardInputs = 0;
+        for (int j = i + 1; j < args.length; j++) {
+            if (args[j].equals(TagCloudGenerator.STANDARD_INPUT)) {
+                standardInputs++;
+            }
+        }
+        if (standardInputs > 1) {
+            usage("standard input can only be read once");
+        }
+
+        /*
+         * name every cloud, refusing two clouds with the same name, since
+         * they would be written at the same time
+         */
+        List<String[]> pages = new ArrayList<>();
+        Map<String, String> inputOfPage = new HashMap<>();
+        for (int j = i + 1; j < args.length; j++) {
+            String[] names = new String[counts.length];
+            for (int k = 0; k < counts.length; k++) {
+                names[k] = new File(output, pageName(args[j], counts[k]))
+                        .getPath();
+                String other = inputOfPage.put(names[k], args[j]);
+                if (other != null) {
+                    usage(other + " and " + args[j] + " would both be written"
+                            + " to " + names[k]);
+                }
+            }
+            pages.add(names);
+        }
+
+        /*
+         * generate the clouds of every input on the pool, then report them in
+         * order
+         */
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<?>> results = new ArrayList<>();
+        final double e = epsilon;
+        final double d = delta;
+        for (int j = i + 1; j < args.length; j++) {
+            String input = args[j];
+            String[] names = pages.get(j - i - 1);
+            results.add(pool.submit(() -> {
+                TagCloudGenerator.generate(input, names, counts, e, d);
+                return null;
+            }));
+        }
+        pool.shutdown();
+
+        boolean failed = false;
+        for (int j = 0; j < results.size(); j++) {
+            try {
+                results.get(j).get();
+                for (String page : pages.get(j)) {
+                    System.out.println(page);
+                }
+            } catch (ExecutionException x) {
+                System.err.println("Error generating the clouds of "
+                        + args[i + 1 + j] + ": " + x.getCause());
+                failed = true;
+            } catch (InterruptedException x) {
+                Thread.currentThread().interrupt();
+                System.err.println("Interrupted");
+                failed = true;
+                pool.shutdownNow();
+                j = results.size();
+            }
+        }
+        if (failed) {
+            System.exit(FAILED);
+        }
+    }
+
+}
@@ -0,0 +1,392 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tag cloud generator following a growing input file, such as a log.
+ *
+ * Every poll, the bytes appended since the last processed offset are counted
+ * and added to the running counts, and the counts and offset are saved to a
+ * checkpoint file, so a restarted daemon resumes where it stopped. The HTML
+ * page is rewritten only when the top words or their font sizes change. If
+ * the input becomes shorter than the offset, or is replaced by another file
+ * of the same name (its file key or creation time, saved in the checkpoint,
+ * changes), it is counted again from the start.
+ *
+ * Usage: TagCloudDaemon input output counts [checkpoint [pollMillis]]
+ *
+ * @author Yunzhou Chen/Tingyang Xie
+ *
+ */
+public final class TagCloudDaemon {
+
+    /**
+     * milliseconds between polls, unless given
+     */
+    static final long DEFAULT_POLL_MILLIS = 1000;
+    /**
+     * first int of a checkpoint file
+     */
+    static final int CHECKPOINT_MAGIC = 0x54434350;
+    /**
+     * version of the checkpoint format
+     */
+    static final int CHECKPOINT_VERSION = 2;
+    /**
+     * version of the checkpoint format without the identity of the input
+     */
+    static final int CHECKPOINT_VERSION_WITHOUT_IDENTITY = 1;
+    /**
+     * largest number of bytes mapped at once
+     */
+    static final long SEGMENT_SIZE = 1L << 30;
+
+    /**
+     * the file followed
+     */
+    private final File input;
+    /**
+     * the HTML page
+     */
+    private final File output;
+    /**
+     * where the counts and offset are saved
+     */
+    private final File checkpoint;
+    /**
+     * how many words the page shows
+     */
+    private final int counts;
+    /**
+     * counts of the words before offset
+     */
+    private IntMap<String> words;
+    /**
+     * number of bytes of the input counted
+     */
+    private long offset;
+    /**
+     * font sizes of the words on the page, or null before it is written
+     */
+    private Map<String, Integer> shown;
+    /**
+     * identity of the input counted, or null if it is not known
+     */
+    private String identity;
+
+    /**
+     * Constructor; resumes from the checkpoint if there is one.
+     *
+     * @param input
+     *            the file followed
+     * @param output
+     *            the HTML page
+     * @param checkpoint
+     *            where the counts and offset are saved
+     * @param counts
+     *            how many words the page shows
+     * @throws IOException
+     *             if the checkpoint cannot be read
+     */
+    TagCloudDaemon(File input, File output, File checkpoint, int counts)
+            throws IOException {
+        this.input = input;
+        this.output = output;
+        this.checkpoint = checkpoint;
+        this.counts = counts;
+        this.words = new IntMap<>();
+        this.offset = 0;
+        this.shown = null;
+        this.identity = null;
+        if (checkpoint.exists()) {
+            this.loadCheckpoint();
+        }
+    }
+
+    /**
+     * read the counts and offset from the checkpoint
+     *
+     * @throws IOException
+     */
+    private void loadCheckpoint() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(this.checkpoint)))) {
+            if (in.readInt() != CHECKPOINT_MAGIC) {
+                throw new IOException(
+                        "Not a tag cloud checkpoint: " + this.checkpoint);
+            }
+            int version = in.readInt();
+            if (version != CHECKPOINT_VERSION
+                    && version != CHECKPOINT_VERSION_WITHOUT_IDENTITY) {
+                throw new IOException(
+                        "Not a tag cloud checkpoint: " + this.checkpoint);
+            }
+            IntMap<String> loaded = new IntMap<>();
+            long loadedOffset = in.readLong();
+            String loadedIdentity = null;
+            if (version == CHECKPOINT_VERSION) {
+                loadedIdentity = in.readUTF();
+                if (loadedIdentity.isEmpty()) {
+                    loadedIdentity = null;
+                }
+            }
+            int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                byte[] word = new byte[in.readInt()];
+                in.readFully(word);
+                loaded.add(new String(word, StandardCharsets.UTF_8),
+                        in.readInt());
+            }
+            this.words = loaded;
+            this.offset = loadedOffset;
+            this.identity = loadedIdentity;
+        }
+    }
+
+    /**
+     * write the counts and offset to the checkpoint, replacing it only once
+     * the new one is complete
+     *
+     * @throws IOException
+     */
+    private void saveCheckpoint() throws IOException {
+        File temp = new File(this.checkpoint.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(CHECKPOINT_MAGIC);
+            out.writeInt(CHECKPOINT_VERSION);
+            out.writeLong(this.offset);
+            if (this.identity == null) {
+                out.writeUTF("");
+            } else {
+                out.writeUTF(this.identity);
+            }
+            out.writeInt(this.words.size());
+            IOException[] failure = new IOException[1];
+            this.words.forEach((word, count) -> {
+                if (failure[0] == null) {
+                    try {
+                        byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+                        out.writeInt(bytes.length);
+                        out.write(bytes);
+                        out.writeInt(count);
+                    } catch (IOException e) {
+                        failure[0] = e;
+                    }
+                }
+            });
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+        }
+        replace(temp, this.checkpoint);
+    }
+
+    /**
+     * move {@code from} onto {@code to}, atomically if the file system can
+     *
+     * @param from
+     * @param to
+     * @throws IOException
+     */
+    private static void replace(File from, File to) throws IOException {
+        try {
+            Files.move(from.toPath(), to.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(from.toPath(), to.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * the identity of a file, which changes when the file is replaced by
+     * another of the same name, as when a log is rotated: its file key (such
+     * as its device and inode), or its creation time if it has none
+     *
+     * @param file
+     * @return the identity of file
+     * @throws IOException
+     */
+    private static String identity(File file) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file.toPath(),
+                BasicFileAttributes.class);
+        Object key = attributes.fileKey();
+        if (key != null) {
+            return key.toString();
+        }
+        return "created " + attributes.creationTime().toMillis();
+    }
+
+    /**
+     * count the words appended to the input since the last update, up to the
+     * last separator, and save the checkpoint
+     *
+     * @return whether the counts changed: a word was counted, or the input
+     *         was replaced and counting started over
+     * @throws IOException
+     */
+    boolean update() throws IOException {
+        long start = this.offset;
+        IntMap<String> counted = this.words;
+        long position = this.offset;
+        String identity = identity(this.input);
+        MappedTokenizer tokenizer = new MappedTokenizer(
+                c -> TagCloudGenerator.Seperators.indexOf(c) == -1, true);
+        try (FileChannel channel = FileChannel.open(this.input.toPath(),
+                StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length < position || (this.identity != null
+                    && !this.identity.equals(identity))) {
+                counted = new IntMap<>();
+                position = 0;
+                start = -1;
+            }
+            boolean more = position < length;
+            while (more) {
+                long size = Math.min(SEGMENT_SIZE, length - position);
+                ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+                        position, size);
+                int done = tokenizer.countComplete(buffer);
+                if (done == 0 && size == SEGMENT_SIZE) {
+                    /*
+                     * one word fills the whole segment: count it in pieces
+                     */
+                    tokenizer.count(buffer);
+                    done = buffer.limit();
+                }
+                position += done;
+                more = done > 0 && position < length;
+            }
+        }
+        /*
+         * only now that every segment has been counted do the counts, offset
+         * and identity move on together, so a failure leaves them as they were
+         */
+        tokenizer.forEach(counted::increment);
+        boolean changed = tokenizer.size() > 0 || counted != this.words;
+        this.words = counted;
+        this.offset = position;
+        if (!identity.equals(this.identity)) {
+            this.identity = identity;
+            start = -1;
+        }
+        if (this.offset != start) {
+            this.saveCheckpoint();
+        }
+        return changed;
+    }
+
+    /**
+     * rewrite the page if its words or their font sizes have changed
+     *
+     * @return whether the page was written
+     * @throws IOException
+     */
+    boolean refresh() throws IOException {
+        Map<String, Integer> map = new HashMap<>(2 * this.words.size());
+        this.words.forEach(map::put);
+        int n = Math.min(this.counts, map.size());
+        Map<String, Integer> top = TagCloudGenerator.getTopWords(map, n);
+        Map<String, Integer> fonts = TagCloudGenerator.getMapwithFontSize(top);
+        if (fonts.equals(this.shown)) {
+            return false;
+        }
+        File temp = new File(this.output.getPath() + ".tmp");
+        try (BufferedWriter writer = new BufferedWriter(
+                new FileWriter(temp))) {
+            TagCloudGenerator.writeTagCloud(top, fonts, writer,
+                    this.output.getPath(), n);
+        }
+        replace(temp, this.output);
+        this.shown = fonts;
+        return true;
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args
+     *            input, output, counts, and optionally checkpoint and
+     *            pollMillis
+     */
+    public static void main(String[] args) {
+        if (args.length < 3 || args.length > 5) {
+            System.err.println("Usage: TagCloudDaemon input output counts"
+                    + " [checkpoint [pollMillis]]");
+            return;
+        }
+        if (!MappedTokenizer.supportsDefaultCharset()) {
+            System.err.println("Default charset is not supported: use UTF-8");
+            return;
+        }
+        int counts;
+        long poll = DEFAULT_POLL_MILLIS;
+        try {
+            counts = Integer.parseInt(args[2]);
+            if (args.length == 5) {
+                poll = Long.parseLong(args[4]);
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("counts and pollMillis must be numbers");
+            return;
+        }
+        if (counts <= 0 || poll <= 0) {
+            System.err.println("counts and pollMillis must be greater than 0");
+            return;
+        }
+        File checkpoint = new File(args[1] + ".checkpoint");
+        if (args.length >= 4) {
+            checkpoint = new File(args[3]);
+        }
+
+        TagCloudDaemon daemon;
+        try {
+            daemon = new TagCloudDaemon(new File(args[0]), new File(args[1]),
+                    checkpoint, counts);
+        } catch (IOException e) {
+            System.err.println("Error Reading checkpoint: " + e.getMessage());
+            return;
+        }
+        /*
+         * poll until interrupted, ranking again only when the counts changed
+         * (or no page has been written yet), so an idle input costs no more
+         * than checking its length; errors such as the input being briefly
+         * missing while it is rotated are reported and retried
+         */
+        boolean running = true;
+        while (running) {
+            try {
+                if (daemon.update() || daemon.shown == null) {
+                    daemon.refresh();
+                }
+            } catch (IOException e) {
+                System.err.println("Update failed: " + e.getMessage());
+            }
+            try {
+                Thread.sleep(poll);
+            } catch (InterruptedException e) {
+                running = false;
+            }
+        }
+    }
+
+}
@@ -1,8 +1,16 @@
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -10,6 +18,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
 
 /**
  * Tag Cloud Generator with Standard Java Components
@@ -24,14 +35,6 @@ public final class TagCloudGenerator {
 
     }
 
-    /**
-     * max number of appearance of a word
-     */
-    static int maxValue = Integer.MIN_VALUE;
-    /**
-     * min number of appearance of a word
-     */
-    static int minValue = Integer.MAX_VALUE;
     /**
      * seperators in string.
      */
@@ -45,6 +48,31 @@ public final class TagCloudGenerator {
      * min size of font
      */
     static final int MIN_FONT_SIZE = 15;
+    /**
+     * input files at least this many bytes long are counted in parallel
+     */
+    static final long PARALLEL_THRESHOLD = 8L << 20;
+    /**
+     * smallest number of bytes counted by one parallel task
+     */
+    static final long MIN_CHUNK_SIZE = 1L << 20;
+    /**
+     * largest number of bytes counted by one parallel task
+     */
+    static final long MAX_CHUNK_SIZE = 32L << 20;
+    /**
+     * number of bytes read at a time when looking for a chunk boundary
+     */
+    static final int SCAN_BUFFER_SIZE = 4096;
+    /**
+     * probability of the approximate counts exceeding their error, unless
+     * given
+     */
+    static final double DEFAULT_DELTA = 0.01;
+    /**
+     * input file name standing for standard input
+     */
+    static final String STANDARD_INPUT = "-";
 
     /**
      *
@@ -78,54 +106,298 @@ public final class TagCloudGenerator {
         }
     }
 
+    /**
+     * count the words of one line of input
+     *
+     * @param str
+     *            the line, without its line terminator
+     * @param counts
+     *            called with each word of the line
+     */
+    private static void countLine(String str, Consumer<String> counts) {
+        str = str.toLowerCase();
+        StringBuilder string = new StringBuilder();
+
+        for (int i = 0; i < str.length(); i++) {
+            if (Seperators.indexOf(str.charAt(i)) == -1) {
+                string.append(str.charAt(i));
+            }
+            if (string.length() > 0 && (Seperators.indexOf(str.charAt(i)) != -1
+                    || i == str.length() - 1)) {
+
+                counts.accept(string.toString());
+                string = new StringBuilder();
+            }
+        }
+    }
+
+    /**
+     * copy the counts into a HashMap
+     *
+     * @param counts
+     * @return a map contains record string and this string counts.
+     */
+    private static Map<String, Integer> toMap(IntMap<String> counts) {
+        Map<String, Integer> map = new HashMap<>(2 * counts.size());
+        counts.forEach(map::put);
+        return map;
+    }
+
     /**
      * use a map to record and count all the words
      *
      * @param in
      * @return a map contains record string and this string counts.
+     * @throws IOException
      */
-    private static Map<String, Integer> getMap(BufferedReader in) {
-        Map<String, Integer> map = new HashMap<>();
+    private static Map<String, Integer> getMap(BufferedReader in)
+            throws IOException {
+        IntMap<String> counts = new IntMap<>();
+
+        String str = in.readLine();
+        while (str != null) {
+            countLine(str, counts::increment);
+            str = in.readLine();
+        }
 
-        try {
-            String str = in.readLine();
-            while (str != null) {
-
-                str = str.toLowerCase();
-                StringBuilder string = new StringBuilder();
-
-                for (int i = 0; i < str.length(); i++) {
-                    if (Seperators.indexOf(str.charAt(i)) == -1) {
-                        string.append(str.charAt(i));
-                    }
-                    if (string.length() > 0
-                            && (Seperators.indexOf(str.charAt(i)) != -1
-                                    || i == str.length() - 1)) {
-
-                        if (!map.containsKey(string.toString())) {
-                            map.put(string.toString(), 1);
-                        } else {
-                            map.put(string.toString(),
-                                    map.get(string.toString()) + 1);
-                        }
-                        string = new StringBuilder();
-                    }
+        return toMap(counts);
+
+    }
+
+    /**
+     * use a Count-Min Sketch and a Space-Saving table to record the most
+     * frequent words and their approximate counts, in memory that does not
+     * grow with the number of distinct words
+     *
+     * @param in
+     * @param counts
+     *            how many words the user want to use
+     * @param epsilon
+     *            error of the counts, as a fraction of the number of words
+     * @param delta
+     *            probability of the error being larger
+     * @return a map contains the most frequent strings and their counts.
+     * @throws IOException
+     */
+    private static Map<String, Integer> getMapApproximate(BufferedReader in,
+            int counts, double epsilon, double delta) throws IOException {
+        HeavyHitters hitters = new HeavyHitters(
+                HeavyHitters.capacityFor(counts, epsilon), epsilon, delta);
+
+        String str = in.readLine();
+        while (str != null) {
+            countLine(str, hitters::add);
+            str = in.readLine();
+        }
+
+        Map<String, Integer> map = new HashMap<>(2 * hitters.size());
+        hitters.forEach(map::put);
+        return map;
+
+    }
+
+    /**
+     * a tokenizer splitting words at the separators
+     *
+     * @return a new tokenizer
+     */
+    private static MappedTokenizer newTokenizer() {
+        return new MappedTokenizer(c -> Seperators.indexOf(c) == -1, true);
+    }
+
+    /**
+     * use a map to record and count all the words, reading the file as
+     * mapped bytes
+     *
+     * @param file
+     *            the input file
+     * @return a map contains record string and this string counts.
+     * @throws IOException
+     */
+    private static Map<String, Integer> getMapMapped(File file)
+            throws IOException {
+        MappedTokenizer tokenizer = newTokenizer();
+
+        tokenizer.count(file);
+
+        Map<String, Integer> map = new HashMap<>(2 * tokenizer.size());
+        tokenizer.forEach(map::put);
+        return map;
+
+    }
+
+    /**
+     * the first chunk boundary at or after {@code from}: the position just
+     * after the next line feed, or, if the next {@code MAX_CHUNK_SIZE} bytes
+     * hold no line feed, just after the first separator among them.
+     *
+     * @param channel
+     *            the input file
+     * @param from
+     *            where to start looking
+     * @param length
+     *            the length of the file
+     * @return the boundary, or length if there is none
+     * @throws IOException
+     */
+    private static long nextBoundary(FileChannel channel, long from,
+            long length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        long separator = -1;
+        long pos = from;
+        while (pos < length) {
+            buffer.clear();
+            int n = channel.read(buffer, pos);
+            if (n < 0) {
+                break;
+            }
+            for (int i = 0; i < n; i++) {
+                byte b = buffer.get(i);
+                if (b == '\n') {
+                    return pos + i + 1;
+                }
+                if (separator < 0 && b >= 0
+                        && Seperators.indexOf((char) b) != -1) {
+                    separator = pos + i + 1;
                 }
-                str = in.readLine();
             }
+            pos += n;
+            if (separator >= 0 && pos - from >= MAX_CHUNK_SIZE) {
+                return separator;
+            }
+        }
+        return length;
+    }
 
-        } catch (IOException e) {
-            System.err.println("Input stream has error");
-            System.exit(0);
-        } catch (Exception e) {
-            System.err.println("Method getMap has a bug");
+    /**
+     * count the words of the bytes {@code [start, end)} of a file, which
+     * begin and end on a separator boundary
+     *
+     * @param channel
+     *            the input file
+     * @param start
+     * @param end
+     * @return the counts of the words of the chunk
+     * @throws IOException
+     */
+    private static IntMap<String> countChunk(FileChannel channel, long start,
+            long end) throws IOException {
+        ByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                end - start);
+        MappedTokenizer tokenizer = newTokenizer();
+        tokenizer.count(bytes);
+        IntMap<String> counts = new IntMap<>();
+        tokenizer.forEach(counts::add);
+        return counts;
+    }
+
+    /**
+     * Fork-join task counting the words of a run of chunks: it counts one
+     * chunk into its own map, or splits the run in two and merges the
+     * smaller half's counts into the larger's.
+     */
+    private static final class CountTask
+            extends RecursiveTask<IntMap<String>> {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * the input file
+         */
+        private final FileChannel channel;
+        /**
+         * the chunk boundaries of the whole file
+         */
+        private final long[] boundaries;
+        /**
+         * first chunk of the run
+         */
+        private final int lo;
+        /**
+         * chunk after the last of the run
+         */
+        private final int hi;
+
+        CountTask(FileChannel channel, long[] boundaries, int lo, int hi) {
+            this.channel = channel;
+            this.boundaries = boundaries;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected IntMap<String> compute() {
+            if (this.hi - this.lo == 1) {
+                try {
+                    return countChunk(this.channel, this.boundaries[this.lo],
+                            this.boundaries[this.hi]);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            int mid = (this.lo + this.hi) >>> 1;
+            CountTask left = new CountTask(this.channel, this.boundaries,
+                    this.lo, mid);
+            left.fork();
+            IntMap<String> big = new CountTask(this.channel, this.boundaries,
+                    mid, this.hi).compute();
+            IntMap<String> small = left.join();
+            if (small.size() > big.size()) {
+                IntMap<String> t = small;
+                small = big;
+                big = t;
+            }
+            small.forEach(big::increment);
+            return big;
         }
-        return map;
 
     }
 
     /**
-     * counts in sorted by the comparator a map to record the max and min counts
+     * use a map to record and count all the words, counting byte ranges of
+     * the file on a fork-join pool, one map per range, and merging the maps
+     *
+     * @param file
+     *            the input file
+     * @return a map contains record string and this string counts.
+     * @throws IOException
+     */
+    private static Map<String, Integer> getMapParallel(File file)
+            throws IOException {
+        IntMap<String> counts = new IntMap<>();
+
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            long length = channel.size();
+            long chunkSize = Math.max(MIN_CHUNK_SIZE, Math.min(MAX_CHUNK_SIZE,
+                    length / (4L * ForkJoinPool.getCommonPoolParallelism())));
+            List<Long> cuts = new ArrayList<>();
+            long cut = 0;
+            while (cut < length) {
+                cuts.add(cut);
+                cut = nextBoundary(channel, Math.min(length, cut + chunkSize),
+                        length);
+            }
+            cuts.add(length);
+            long[] boundaries = new long[cuts.size()];
+            for (int i = 0; i < boundaries.length; i++) {
+                boundaries[i] = cuts.get(i);
+            }
+            if (boundaries.length > 1) {
+                counts = ForkJoinPool.commonPool().invoke(new CountTask(channel,
+                        boundaries, 0, boundaries.length - 1));
+            }
+
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        return toMap(counts);
+
+    }
+
+    /**
+     * counts in sorted by the comparator a map
      *
      * @param count
      * @param sortingMachine
@@ -137,14 +409,7 @@ public final class TagCloudGenerator {
         Map<String, Integer> HashMap = new HashMap<>();
 
         for (int i = 0; i < counts; i++) {
-            Map.Entry<String, Integer> pair = sortingMachine.remove(0);
-
-            if (pair.getValue() < minValue) {
-                minValue = pair.getValue();
-            }
-            if (pair.getValue() > maxValue) {
-                maxValue = pair.getValue();
-            }
+            Map.Entry<String, Integer> pair = sortingMachine.get(i);
 
             HashMap.put(pair.getKey(), pair.getValue());
         }
@@ -166,47 +431,50 @@ public final class TagCloudGenerator {
      *            map contains String and corresponding font size.
      *
      * @clear alphabeticalsort
+     * @throws IOException
      *
      */
     private static void generateHTML(
             List<Map.Entry<String, Integer>> alphabeticalsort,
             BufferedWriter writer, String fileName, int counts,
-            Map<String, Integer> map) {
-        try {
-
-            writer.write("<html><head><title>" + "Top " + counts + " words in "
-                    + fileName
-                    + "</title><link rel=\"stylesheet\" type=\"text/css\""
-                    + " href=\"data/tagcloud.css\">" + "</head><body>" + "\n");
-            writer.write("<h2>" + "Top " + counts + " words in " + fileName
-                    + "</h2>" + "\n");
-            writer.write("<hr/>" + "\n");
-            writer.write("<div class = \"cdiv\"><p class = \" cbox\">" + "\n");
-            while (alphabeticalsort.size() > 0) {
-                Map.Entry<String, Integer> pair = alphabeticalsort.remove(0);
-                writer.write("<span style=\"cursor:default\" class=\"f"
-                        + map.get(pair.getKey()) + "\" title=\"count:"
-                        + pair.getValue() + "\">" + pair.getKey() + "</span> ");
-            }
-            writer.write("</p></div></body></html>" + "\n");
-        } catch (IOException e) {
-            System.err.println("generate HTML unsuccessfully.");
-            System.exit(1);
-
+            Map<String, Integer> map) throws IOException {
+        writer.write("<html><head><title>" + "Top " + counts + " words in "
+                + fileName
+                + "</title><link rel=\"stylesheet\" type=\"text/css\""
+                + " href=\"data/tagcloud.css\">" + "</head><body>" + "\n");
+        writer.write("<h2>" + "Top " + counts + " words in " + fileName
+                + "</h2>" + "\n");
+        writer.write("<hr/>" + "\n");
+        writer.write("<div class = \"cdiv\"><p class = \" cbox\">" + "\n");
+        while (alphabeticalsort.size() > 0) {
+            Map.Entry<String, Integer> pair = alphabeticalsort.remove(0);
+            writer.write("<span style=\"cursor:default\" class=\"f"
+                    + map.get(pair.getKey()) + "\" title=\"count:"
+                    + pair.getValue() + "\">" + pair.getKey() + "</span> ");
         }
+        writer.write("</p></div></body></html>" + "\n");
     }
 
     /**
-     * a map to record font-size and its word
+     * a map to record font-size and its word, scaled by the max and min counts
+     * of the words in the map
      *
-     * @param alphabeticalsort
+     * @param map
+     *            the words to display and their counts
      * @return a map with font size
      */
-    private static Map<String, Integer> getMapwithFontSize(
+    static Map<String, Integer> getMapwithFontSize(
             Map<String, Integer> map) {
 
         Map<String, Integer> HashMap = new HashMap<>();
 
+        int maxValue = Integer.MIN_VALUE;
+        int minValue = Integer.MAX_VALUE;
+        for (int value : map.values()) {
+            maxValue = Math.max(maxValue, value);
+            minValue = Math.min(minValue, value);
+        }
+
         for (Map.Entry<String, Integer> cur : map.entrySet()) {
 
             int font_size = MIN_FONT_SIZE;
@@ -222,12 +490,236 @@ public final class TagCloudGenerator {
         return HashMap;
     }
 
+    /**
+     * rank the most frequent words, most frequent first; the first n of the
+     * ranking of the top counts words are the ranking of the top n words, so
+     * one ranking serves every n up to counts
+     *
+     * @param map
+     *            all the words and their counts
+     * @param counts
+     *            how many words to rank
+     * @return the min(counts, map.size()) most frequent words and counts,
+     *         sorted by the counts
+     */
+    static List<Map.Entry<String, Integer>> rankWords(
+            Map<String, Integer> map, int counts) {
+
+        /*
+         * Use a TopK heap to select the most frequent words, sorted by the
+         * counts
+         */
+
+        TopK<Map.Entry<String, Integer>> top = new TopK<>(counts,
+                new CountComparator());
+        Set<Map.Entry<String, Integer>> entrySet = map.entrySet();
+        for (Map.Entry<String, Integer> pair : entrySet) {
+            top.offer(pair);
+        }
+        return top.toList();
+    }
+
+    /**
+     * select the most frequent words
+     *
+     * @param map
+     *            all the words and their counts
+     * @param counts
+     *            how many words to select, at most map.size()
+     * @return a map that contains the most frequent words and counts.
+     */
+    static Map<String, Integer> getTopWords(Map<String, Integer> map,
+            int counts) {
+        List<Map.Entry<String, Integer>> countWordsort = rankWords(map, counts);
+
+        return getMapWithFrequentWords(counts, countWordsort);
+    }
+
+    /**
+     * sort the words in alphabetical order and write the tag cloud
+     *
+     * @param sortedMapByCounts
+     *            the words to display and their counts
+     * @param wordwithFontSize
+     *            the words to display and their font sizes
+     * @param writer
+     *            writer to generate html.
+     * @param fileName
+     *            name shown in the title
+     * @param counts
+     *            how many words the user want to use
+     * @throws IOException
+     */
+    static void writeTagCloud(Map<String, Integer> sortedMapByCounts,
+            Map<String, Integer> wordwithFontSize, BufferedWriter writer,
+            String fileName, int counts) throws IOException {
+        List<Map.Entry<String, Integer>> alphabeticalsort = new ArrayList<>();
+
+        for (Map.Entry<String, Integer> pair : sortedMapByCounts.entrySet()) {
+            alphabeticalsort.add(pair);
+        }
+        alphabeticalsort.sort(new AlphabeticalComparator());
+
+        generateHTML(alphabeticalsort, writer, fileName, counts,
+                wordwithFontSize);
+    }
+
+    /**
+     * count the words of the input the way that suits it: approximately with
+     * getMapApproximate if epsilon is given, by lines with getMap if the input
+     * is not a file or its charset cannot be read as bytes, in parallel with
+     * getMapParallel if the file is large, and as mapped bytes with
+     * getMapMapped otherwise
+     *
+     * @param file
+     *            the input file, or null if the input is not a file
+     * @param in
+     *            the input, as lines
+     * @param counts
+     *            how many words the user want to use
+     * @param epsilon
+     *            error of approximate counts, or 0 to count exactly
+     * @param delta
+     *            probability of the error being larger
+     * @return a map contains record string and this string counts.
+     * @throws IOException
+     */
+    static Map<String, Integer> countWords(File file, BufferedReader in,
+            int counts, double epsilon, double delta) throws IOException {
+        Map<String, Integer> map;
+        if (epsilon > 0) {
+            map = getMapApproximate(in, counts, epsilon, delta);
+        } else if (file == null || !MappedTokenizer.supportsDefaultCharset()) {
+            map = getMap(in);
+        } else if (file.length() >= PARALLEL_THRESHOLD) {
+            map = getMapParallel(file);
+        } else {
+            map = getMapMapped(file);
+        }
+        return map;
+    }
+
+    /**
+     * generate the tag cloud of the most frequent words of one input file
+     * without asking the user anything; uses no shared state, so several may
+     * run at once
+     *
+     * @param input
+     *            the input file name, or STANDARD_INPUT
+     * @param output
+     *            the html file name
+     * @param counts
+     *            how many words the user want to use
+     * @param epsilon
+     *            error of approximate counts, or 0 to count exactly
+     * @param delta
+     *            probability of the error being larger
+     * @throws IOException
+     */
+    static void generate(String input, String output, int counts,
+            double epsilon, double delta) throws IOException {
+        generate(input, new String[] {output}, new int[] {counts}, epsilon,
+                delta);
+    }
+
+    /**
+     * generate several tag clouds of one input file, of different numbers of
+     * words, from one count of its words and one ranking of them, without
+     * asking the user anything; uses no shared state, so several may run at
+     * once. When counting exactly (epsilon is 0), each cloud is the same as
+     * the one generated for its counts alone; with approximate counts, the
+     * capacity is chosen for the largest counts, so a smaller cloud may
+     * differ from the one generated for its counts alone
+     *
+     * @param input
+     *            the input file name, or STANDARD_INPUT
+     * @param outputs
+     *            the html file names, one for each entry of counts
+     * @param counts
+     *            how many words each tag cloud shows
+     * @param epsilon
+     *            error of approximate counts, or 0 to count exactly
+     * @param delta
+     *            probability of the error being larger
+     * @throws IOException
+     */
+    static void generate(String input, String[] outputs, int[] counts,
+            double epsilon, double delta) throws IOException {
+        int most = 0;
+        for (int n : counts) {
+            most = Math.max(most, n);
+        }
+
+        Map<String, Integer> map;
+        if (input.equals(STANDARD_INPUT)) {
+            BufferedReader in = new BufferedReader(
+                    new InputStreamReader(System.in));
+            map = countWords(null, in, most, epsilon, delta);
+        } else {
+            try (BufferedReader in = new BufferedReader(
+                    new FileReader(input))) {
+                map = countWords(new File(input), in, most, epsilon, delta);
+            }
+        }
+
+        /*
+         * rank the words once, for the largest count; each tag cloud shows
+         * the first words of the ranking
+         */
+        List<Map.Entry<String, Integer>> ranked = rankWords(map,
+                Math.min(most, map.size()));
+        for (int i = 0; i < counts.length; i++) {
+            int n = Math.min(counts[i], ranked.size());
+            Map<String, Integer> sortedMapByCounts = getMapWithFrequentWords(n,
+                    ranked);
+            Map<String, Integer> wordwithFontSize = getMapwithFontSize(
+                    sortedMapByCounts);
+            try (BufferedWriter writer = new BufferedWriter(
+                    new FileWriter(outputs[i]))) {
+                writeTagCloud(sortedMapByCounts, wordwithFontSize, writer,
+                        outputs[i], n);
+            }
+        }
+    }
+
     /**
      * Main method.
      *
      * @param args
+     *            optionally "-epsilon" e, to count approximately with error
+     *            e times the number of words, and "-delta" d, the
+     *            probability of a larger error
      */
     public static void main(String[] args) {
+        double epsilon = 0;
+        double delta = DEFAULT_DELTA;
+        String error = null;
+        try {
+            for (int i = 0; error == null && i < args.length; i += 2) {
+                if (!args[i].equals("-epsilon") && !args[i].equals("-delta")) {
+                    error = "Unknown option " + args[i];
+                } else if (i + 1 == args.length) {
+                    error = args[i] + " needs a value";
+                } else if (args[i].equals("-epsilon")) {
+                    epsilon = Double.parseDouble(args[i + 1]);
+                } else {
+                    delta = Double.parseDouble(args[i + 1]);
+                }
+            }
+        } catch (NumberFormatException e) {
+            error = "epsilon and delta must be numbers";
+        }
+        if (error == null
+                && (epsilon < 0 || epsilon >= 1 || delta <= 0 || delta >= 1)) {
+            error = "epsilon and delta must be between 0 and 1";
+        }
+        if (error != null) {
+            System.err.println(error);
+            System.err.println(
+                    "Usage: TagCloudGenerator [-epsilon e] [-delta d]");
+            return;
+        }
+
         /**
          * Initialize the program. To read the input file, record the name of
          * output fileName and how many words user want to display in tagcloud.
@@ -238,25 +730,16 @@ public final class TagCloudGenerator {
         System.out.print("Please input the fileName:");
 
         String nameToRead = in.nextLine();
-        BufferedReader reader = null;
-
-        try {
-
-            reader = new BufferedReader(new FileReader(nameToRead));
 
-        } catch (IOException e) {
+        if (!Files.isReadable(Paths.get(nameToRead))) {
 
             System.err.println("Error Reading File, needed right name:");
             return;
 
         }
-        /*
-         * Create the output file with IOException
-         */
 
         System.out.print("Please input the output fileName: ");
         String StorefileName = in.nextLine();
-        BufferedWriter writer = null;
 
         while (StorefileName.equals(nameToRead)) {
             System.out.print(
@@ -264,15 +747,6 @@ public final class TagCloudGenerator {
             StorefileName = in.nextLine();
         }
 
-        try {
-
-            writer = new BufferedWriter(new FileWriter(StorefileName));
-
-        } catch (IOException e) {
-
-            System.err.println("Error Creating File");
-            return;
-        }
         /*
          * use number of words in the input file to generate TagCloud
          */
@@ -290,79 +764,20 @@ public final class TagCloudGenerator {
         }
 
         /*
-         * use getMap method to record the word in input file and its count, use
-         * sorting machine to sort word by its counts.
-         */
-
-        Map<String, Integer> map = getMap(reader);
-
-        if (counts > map.size()) {
-            counts = map.size();
-        }
-
-        /*
-         * Use ArrayList to sort the words by the counts
-         */
-
-        List<Map.Entry<String, Integer>> countWordsort = new ArrayList<>();
-        Set<Map.Entry<String, Integer>> entrySet = map.entrySet();
-        for (Map.Entry<String, Integer> pair : entrySet) {
-            countWordsort.add(pair);
-        }
-        countWordsort.sort(new CountComparator());
-
-        /*
-         * get a map that contains words that needed to be displayed in tagcloud
-         * html and its counts.
-         */
-        Map<String, Integer> sortedMapByCounts = getMapWithFrequentWords(counts,
-                countWordsort);
-
-        /*
-         * get a map that contains words and its font size.
-         */
-        Map<String, Integer> wordwithFontSize = getMapwithFontSize(
-                sortedMapByCounts);
-
-        /*
-         * sort the words in alphabetical order.
+         * use generate method to record the word in input file and its count
+         * and write the tag cloud: large files are counted in parallel by
+         * getMapParallel, others as mapped bytes by getMapMapped; getMap reads
+         * lines for charsets the tokenizer cannot read. With -epsilon,
+         * getMapApproximate counts in fixed memory.
          */
-        List<Map.Entry<String, Integer>> alphabeticalsort = new ArrayList<>();
-
-        for (Map.Entry<String, Integer> pair : sortedMapByCounts.entrySet()) {
-            alphabeticalsort.add(pair);
-        }
-        alphabeticalsort.sort(new AlphabeticalComparator());
-
-        /**
-         * make html.
-         */
-
-        generateHTML(alphabeticalsort, writer, StorefileName, counts,
-                wordwithFontSize);
-
-        /*
-         * close the bufferedWriter
-         */
-        if (writer != null) {
-            try {
-                writer.close();
-            } catch (IOException e) {
-                System.err.println("Fail to close the writer");
-            }
 
+        try {
+            generate(nameToRead, StorefileName, counts, epsilon, delta);
+        } catch (IOException e) {
+            System.err.println("generate HTML unsuccessfully.");
+            System.exit(1);
         }
-        /*
-         * close the bufferedReader
-         */
 
-        if (reader != null) {
-            try {
-                reader.close();
-            } catch (IOException e) {
-                System.err.println("Fail to close the reader");
-            }
-        }
         /*
          * close scanner
          */
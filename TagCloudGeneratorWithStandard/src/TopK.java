@@ -0,0 +1,224 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Selector of the first {@code k} items offered, in the order of a
+ * {@code Comparator}, without sorting all of them. The items kept are held in
+ * a binary heap whose root is the last of them in order, so each item offered
+ * is compared with the root and, if it comes before it, replaces it at a cost
+ * of O(log k). Items the comparator finds equal are ordered by when they were
+ * offered, earlier first, so the items selected are those a stable sort of all
+ * the items would put first.
+ *
+ * @param <T>
+ *            type of items
+ * @convention <pre>
+ * 0 <= $this.size <= $this.k  and
+ * |$this.heap| = |$this.arrivals| >= $this.size  and
+ * [for every 0 < i < $this.size, item i does not come after item (i - 1) / 2,
+ *  in the order of $this.order, then of $this.arrivals]
+ * </pre>
+ * @correspondence <pre>
+ * this = [the first $this.k of the items offered, in the order of $this.order
+ *         then of arrival]
+ * </pre>
+ */
+public final class TopK<T> {
+
+    /**
+     * Number of items to select.
+     */
+    private final int k;
+
+    /**
+     * The order of the items.
+     */
+    private final Comparator<? super T> order;
+
+    /**
+     * The items kept, as a heap with the last in order at the root.
+     */
+    private Object[] heap;
+
+    /**
+     * Arrival number of each item of the heap.
+     */
+    private long[] arrivals;
+
+    /**
+     * Number of items kept.
+     */
+    private int size;
+
+    /**
+     * Number of items offered.
+     */
+    private long offered;
+
+    /**
+     * Reports whether heap item {@code i} comes after heap item {@code j}.
+     *
+     * @param i
+     *            an index in the heap
+     * @param j
+     *            an index in the heap
+     * @return true iff item i comes after item j
+     */
+    @SuppressWarnings("unchecked")
+    private boolean after(int i, int j) {
+        int c = this.order.compare((T) this.heap[i], (T) this.heap[j]);
+        return c > 0 || (c == 0 && this.arrivals[i] > this.arrivals[j]);
+    }
+
+    /**
+     * Exchanges heap items {@code i} and {@code j}.
+     *
+     * @param i
+     *            an index in the heap
+     * @param j
+     *            an index in the heap
+     */
+    private void swap(int i, int j) {
+        Object item = this.heap[i];
+        this.heap[i] = this.heap[j];
+        this.heap[j] = item;
+        long arrival = this.arrivals[i];
+        this.arrivals[i] = this.arrivals[j];
+        this.arrivals[j] = arrival;
+    }
+
+    /**
+     * Moves heap item {@code i} up until its parent comes after it.
+     *
+     * @param i
+     *            an index in the heap
+     */
+    private void siftUp(int i) {
+        int child = i;
+        while (child > 0 && this.after(child, (child - 1) / 2)) {
+            this.swap(child, (child - 1) / 2);
+            child = (child - 1) / 2;
+        }
+    }
+
+    /**
+     * Moves heap item {@code i} down until neither child comes after it.
+     *
+     * @param i
+     *            an index in the heap
+     */
+    private void siftDown(int i) {
+        int parent = i;
+        int child = 2 * parent + 1;
+        while (child < this.size) {
+            if (child + 1 < this.size && this.after(child + 1, child)) {
+                child++;
+            }
+            if (this.after(child, parent)) {
+                this.swap(child, parent);
+                parent = child;
+                child = 2 * parent + 1;
+            } else {
+                child = this.size;
+            }
+        }
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param k
+     *            the number of items to select
+     * @param order
+     *            the order of the items
+     * @requires k >= 0
+     */
+    public TopK(int k, Comparator<? super T> order) {
+        assert k >= 0 : "Violation of: k >= 0";
+        assert order != null : "Violation of: order is not null";
+
+        this.k = k;
+        this.order = order;
+        int capacity = Math.min(k, 1024);
+        this.heap = new Object[capacity];
+        this.arrivals = new long[capacity];
+        this.size = 0;
+        this.offered = 0;
+    }
+
+    /**
+     * Offers {@code item} for selection.
+     *
+     * @param item
+     *            the item
+     * @updates this
+     */
+    public void offer(T item) {
+        long arrival = this.offered;
+        this.offered++;
+        if (this.size < this.k) {
+            if (this.size == this.heap.length) {
+                int capacity = (int) Math.min(this.k, 2L * this.size);
+                Object[] newHeap = new Object[capacity];
+                long[] newArrivals = new long[capacity];
+                System.arraycopy(this.heap, 0, newHeap, 0, this.size);
+                System.arraycopy(this.arrivals, 0, newArrivals, 0, this.size);
+                this.heap = newHeap;
+                this.arrivals = newArrivals;
+            }
+            this.heap[this.size] = item;
+            this.arrivals[this.size] = arrival;
+            this.size++;
+            this.siftUp(this.size - 1);
+        } else if (this.k > 0) {
+            @SuppressWarnings("unchecked")
+            T root = (T) this.heap[0];
+            if (this.order.compare(item, root) < 0) {
+                this.heap[0] = item;
+                this.arrivals[0] = arrival;
+                this.siftDown(0);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of items selected so far: the smaller of {@code k}
+     * and the number of items offered.
+     *
+     * @return the number of items selected
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns the items selected, first in order first.
+     *
+     * @return the items selected, in order
+     */
+    @SuppressWarnings("unchecked")
+    public List<T> toList() {
+        Object[] items = new Object[this.size];
+        long[] arrived = new long[this.size];
+        System.arraycopy(this.heap, 0, items, 0, this.size);
+        System.arraycopy(this.arrivals, 0, arrived, 0, this.size);
+        List<Integer> indexes = new ArrayList<>(this.size);
+        for (int i = 0; i < this.size; i++) {
+            indexes.add(i);
+        }
+        indexes.sort((i, j) -> {
+            int c = this.order.compare((T) items[i], (T) items[j]);
+            if (c == 0) {
+                c = Long.compare(arrived[i], arrived[j]);
+            }
+            return c;
+        });
+        List<T> result = new ArrayList<>(this.size);
+        for (int i : indexes) {
+            result.add((T) items[i]);
+        }
+        return result;
+    }
+
+}